@@ -0,0 +1,284 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.batch;
+
+import org.mmarini.genesis.model3.Matrix;
+import org.mmarini.genesis.model3.PhaseProfiler;
+import org.mmarini.genesis.model3.SimEngine;
+import org.mmarini.genesis.model3.SimPhase;
+import org.mmarini.genesis.model3.SimStatus;
+import org.mmarini.genesis.model3.SplitRandom;
+import org.mmarini.genesis.yaml.Loader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+import static org.mmarini.yaml.Utils.fromFile;
+
+/**
+ * Headless batch runner.
+ * <p>
+ * Runs the simulation loaded from the configuration file with a fixed time interval
+ * for a number of steps or until the extinction of individuals as fast as possible
+ * reporting the throughput and writing the periodic outputs in a csv file.
+ * </p>
+ * <pre>
+ * BatchRunner [--config file] [--steps n] [--dt seconds] [--report n] [--output file] [--seed n] [--until-extinction]
+ * </pre>
+ */
+public class BatchRunner {
+    public static final String DEFAULT_CONFIG = "config.yml";
+    public static final int DEFAULT_STEPS = 1000;
+    public static final double DEFAULT_DT = 0.1;
+    public static final int DEFAULT_REPORT = 100;
+    private static final Logger logger = LoggerFactory.getLogger(BatchRunner.class);
+    private static final double NANOS_PER_SEC = 1e9;
+    private static final double NANOS_PER_MILLIS = 1e6;
+    private static final String USAGE = "Usage: BatchRunner [--config file] [--steps n] [--dt seconds] [--report n]"
+            + " [--output file] [--seed n] [--until-extinction]";
+
+    /**
+     * Returns the batch runner configured by the command line arguments
+     *
+     * @param args the arguments
+     */
+    public static BatchRunner create(final String[] args) {
+        String config = DEFAULT_CONFIG;
+        int steps = DEFAULT_STEPS;
+        double dt = DEFAULT_DT;
+        int report = DEFAULT_REPORT;
+        String output = null;
+        Long seed = null;
+        boolean untilExtinction = false;
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if ("--until-extinction".equals(arg)) {
+                untilExtinction = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException(format("Missing value of %s", arg));
+            }
+            final String value = args[++i];
+            try {
+                switch (arg) {
+                    case "--config":
+                        config = value;
+                        break;
+                    case "--steps":
+                        steps = Integer.parseInt(value);
+                        break;
+                    case "--dt":
+                        dt = Double.parseDouble(value);
+                        break;
+                    case "--report":
+                        report = Integer.parseInt(value);
+                        break;
+                    case "--output":
+                        output = value;
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    default:
+                        throw new IllegalArgumentException(format("Unknown argument %s", arg));
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException(format("Invalid value of %s (%s)", arg, value));
+            }
+        }
+        if (steps < 0) {
+            throw new IllegalArgumentException(format("steps must be not negative (%d)", steps));
+        }
+        if (!(dt > 0)) {
+            throw new IllegalArgumentException(format("dt must be positive (%s)", dt));
+        }
+        if (report <= 0) {
+            throw new IllegalArgumentException(format("report must be positive (%d)", report));
+        }
+        return new BatchRunner(config, steps, dt, report, output,
+                seed != null ? SplitRandom.create(seed) : SplitRandom.create(), untilExtinction);
+    }
+
+    /**
+     * @param args the arguments
+     */
+    public static void main(String[] args) {
+        final BatchRunner runner;
+        try {
+            runner = create(args);
+        } catch (IllegalArgumentException e) {
+            logger.error(e.getMessage());
+            logger.error(USAGE);
+            System.exit(1);
+            return;
+        }
+        try {
+            runner.run();
+        } catch (IOException e) {
+            logger.error(e.getMessage(), e);
+            System.exit(1);
+        }
+    }
+
+    private final String config;
+    private final int steps;
+    private final double dt;
+    private final int report;
+    private final String output;
+    private final Random random;
+    private final boolean untilExtinction;
+
+    /**
+     * Creates the batch runner
+     *
+     * @param config          the configuration file
+     * @param steps           the maximum number of steps
+     * @param dt              the time interval of step
+     * @param report          the number of steps between reports
+     * @param output          the csv output file or null if none
+     * @param random          the random generator
+     * @param untilExtinction true if the simulation stops at the extinction of individuals
+     */
+    protected BatchRunner(final String config, final int steps, final double dt, final int report,
+                          final String output, final Random random, final boolean untilExtinction) {
+        this.config = requireNonNull(config);
+        this.steps = steps;
+        this.dt = dt;
+        this.report = report;
+        this.output = output;
+        this.random = requireNonNull(random);
+        this.untilExtinction = untilExtinction;
+    }
+
+    /**
+     * Returns the csv record of a status
+     *
+     * @param step   the step number
+     * @param status the status
+     * @param tps    the ticks per second
+     * @param itps   the individual ticks per second
+     */
+    private String record(final int step, final SimStatus status, final double tps, final double itps) {
+        final Matrix envResources = status.getResources();
+        final String resources = IntStream.range(0, envResources.getNumRows())
+                .mapToObj(i -> String.valueOf(envResources.viewRow(i).sumCols().get(0, 0)))
+                .collect(Collectors.joining(","));
+        final String populations = status.getPopulations().stream()
+                .map(pop -> String.valueOf(pop.getIndividualCount()))
+                .collect(Collectors.joining(","));
+        return format("%d,%s,%d,%s,%s,%s,%s", step, status.getT(), status.getIndividualCount(),
+                tps, itps, populations, resources);
+    }
+
+    /**
+     * Runs the batch
+     *
+     * @throws IOException in case of error
+     */
+    public void run() throws IOException {
+        final Loader loader = Loader.create(fromFile(config));
+        final PhaseProfiler profiler = PhaseProfiler.create();
+        final SimEngine engine = loader.createEngine().withProfiler(profiler);
+        final SimStatus status0 = loader.createStatus();
+        try (PrintWriter writer = output != null ? new PrintWriter(new FileWriter(output)) : null) {
+            if (writer != null) {
+                final List<String> names = loader.resourceNames();
+                final String populations = IntStream.range(0, status0.getPopulations().size())
+                        .mapToObj(i -> "population" + i)
+                        .collect(Collectors.joining(","));
+                writer.println(format("step,t,individuals,tps,itps,%s,%s", populations, String.join(",", names)));
+                writer.println(record(0, status0, 0, 0));
+            }
+            logger.info("Running {} steps of {} s ...", steps, dt);
+            final long start = System.nanoTime();
+            // The number of steps and individual ticks of the report interval
+            final long[] ticks = new long[2];
+            long totalIndividualTicks = 0;
+            int step = 0;
+            SimStatus status = status0;
+            while (step < steps) {
+                final int n = Math.min(report, steps - step);
+                final long intervalStart = System.nanoTime();
+                ticks[0] = 0;
+                ticks[1] = 0;
+                // The stop condition is tested once before each step, so it counts the processed steps and individuals
+                status = engine.run(status, dt, n, random, s -> {
+                    final int count = s.getIndividualCount();
+                    if (untilExtinction && count == 0) {
+                        return true;
+                    }
+                    ticks[0]++;
+                    ticks[1] += count;
+                    return false;
+                });
+                final int done = (int) ticks[0];
+                step += done;
+                totalIndividualTicks += ticks[1];
+                final double elapsed = (System.nanoTime() - intervalStart) / NANOS_PER_SEC;
+                final double tps = done / elapsed;
+                final double itps = ticks[1] / elapsed;
+                logger.info("step {}, t={}, individuals={}, {} ticks/s, {} individual ticks/s",
+                        step, format("%.3f", status.getT()), status.getIndividualCount(),
+                        format("%.1f", tps), format("%.1f", itps));
+                if (writer != null) {
+                    writer.println(record(step, status, tps, itps));
+                    writer.flush();
+                }
+                if (done < n) {
+                    logger.info("Individuals extinct at step {}", step);
+                    break;
+                }
+            }
+            final double elapsed = (System.nanoTime() - start) / NANOS_PER_SEC;
+            logger.info("Completed {} steps in {} s, {} ticks/s, {} individual ticks/s",
+                    step, format("%.3f", elapsed),
+                    format("%.1f", step / elapsed), format("%.1f", totalIndividualTicks / elapsed));
+            for (SimPhase phase : SimPhase.values()) {
+                final PhaseProfiler.Histogram histogram = profiler.getHistogram(phase);
+                if (histogram.getCount() > 0) {
+                    logger.info("{}: mean {} ms, p95 {} ms, max {} ms", phase,
+                            format("%.3f", histogram.getMean() / NANOS_PER_MILLIS),
+                            format("%.3f", histogram.getPercentile(0.95) / NANOS_PER_MILLIS),
+                            format("%.3f", histogram.getMax() / NANOS_PER_MILLIS));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,800 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.Arrays;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+
+import static java.lang.String.format;
+
+/**
+ * Matrix backed by a row-major array of doubles.
+ * The operations are computed by plain loops on the data array with
+ * specialized paths for row vectors (1 x n) which are the most common shape
+ * of individual properties in populations.
+ */
+public class ArrayMatrix implements Matrix {
+    /**
+     * Returns the matrix data as array matrix
+     *
+     * @param other the matrix
+     */
+    static ArrayMatrix asArray(Matrix matrix) {
+        final Matrix other = matrix.eval();
+        if (other instanceof ArrayMatrix) {
+            return (ArrayMatrix) other;
+        }
+        final int n = other.getNumRows();
+        final int m = other.getNumCols();
+        final double[] data = new double[n * m];
+        for (int i = 0, idx = 0; i < n; i++) {
+            for (int j = 0; j < m; j++, idx++) {
+                data[idx] = other.get(i, j);
+            }
+        }
+        return new ArrayMatrix(n, m, data);
+    }
+
+    private int numRows;
+    private int numCols;
+    private double[] data;
+
+    /**
+     * Creates the matrix
+     *
+     * @param numRows the number of rows
+     * @param numCols the number of columns
+     * @param data    the row-major data
+     */
+    public ArrayMatrix(int numRows, int numCols, double[] data) {
+        assert numRows >= 0 && numCols >= 0
+                : format("size %dx%d must be not negative", numRows, numCols);
+        assert data.length >= numRows * numCols
+                : format("data length %d < %dx%d", data.length, numRows, numCols);
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.data = data;
+    }
+
+    @Override
+    public Matrix add(Matrix other) {
+        assert numRows == other.getNumRows() && numCols == other.getNumCols()
+                : format("Matrix %dx%d != Matrix %dx%d",
+                numRows, numCols,
+                other.getNumRows(), other.getNumCols());
+        final double[] b = asArray(other).data;
+        final int size = size();
+        final double[] result = new double[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = data[i] + b[i];
+        }
+        return new ArrayMatrix(numRows, numCols, result);
+    }
+
+    @Override
+    public Matrix addi(double other) {
+        final int size = size();
+        for (int i = 0; i < size; i++) {
+            data[i] += other;
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix addi(Matrix other) {
+        final int n = other.getNumRows();
+        final int m = other.getNumCols();
+        if (n == 1 && m == 1) {
+            return addi(other.get(0, 0));
+        }
+        final double[] b = asArray(other).data;
+        if (n == 1) {
+            assert m == numCols
+                    : format("Invalid operation %dx%d + %dx%d", numRows, numCols, n, m);
+            for (int i = 0, idx = 0; i < numRows; i++) {
+                for (int j = 0; j < numCols; j++, idx++) {
+                    data[idx] += b[j];
+                }
+            }
+        } else if (m == 1) {
+            assert n == numRows
+                    : format("Invalid operation %dx%d + %dx%d", numRows, numCols, n, m);
+            for (int i = 0, idx = 0; i < numRows; i++) {
+                final double v = b[i];
+                for (int j = 0; j < numCols; j++, idx++) {
+                    data[idx] += v;
+                }
+            }
+        } else {
+            assert n == numRows && m == numCols
+                    : format("Invalid operation %dx%d + %dx%d", numRows, numCols, n, m);
+            final int size = size();
+            for (int i = 0; i < size; i++) {
+                data[i] += b[i];
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix appendColsi(Matrix other) {
+        assert other.getNumRows() == numRows
+                : format("cannot append columns %dx%d to %dx%d",
+                other.getNumRows(), other.getNumCols(),
+                numRows, numCols);
+        final double[] b = asArray(other).data;
+        final int m = other.getNumCols();
+        final int m1 = numCols + m;
+        final double[] data1 = data.length >= numRows * m1
+                ? data
+                : new double[numRows * Math.max(m1, numCols * 2)];
+        // Moves the rows from the last one so that no row is overwritten before being moved
+        for (int i = numRows - 1; i >= 0; i--) {
+            System.arraycopy(data, i * numCols, data1, i * m1, numCols);
+            System.arraycopy(b, i * m, data1, i * m1 + numCols, m);
+        }
+        data = data1;
+        numCols = m1;
+        return this;
+    }
+
+    @Override
+    public Matrix assign(Matrix other, int row, int col) {
+        final ArrayMatrix b = asArray(other);
+        for (int i = 0; i < b.numRows; i++) {
+            System.arraycopy(b.data, i * b.numCols, data, (row + i) * numCols + col, b.numCols);
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix assignColAsDouble(int col, DoubleIntToDoubleFunction f) {
+        for (int i = 0, idx = col; i < numRows; i++, idx += numCols) {
+            data[idx] = f.applyAsDouble(data[idx], i);
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix assignCols(Matrix other, int... cols) {
+        assert other.getNumRows() == numRows
+                : format("cannot insert columns %dx%d into %dx%d",
+                other.getNumRows(), other.getNumCols(),
+                numRows, numCols);
+        assert other.getNumCols() == cols.length
+                : format("Mismatched indexing %d columns of %dx%d map",
+                cols.length,
+                other.getNumRows(), other.getNumCols());
+        final double[] b = asArray(other).data;
+        final int m = cols.length;
+        if (numRows == 1) {
+            for (int j = 0; j < m; j++) {
+                data[cols[j]] = b[j];
+            }
+        } else {
+            for (int i = 0, idx = 0; i < numRows; i++) {
+                final int offset = i * numCols;
+                for (int j = 0; j < m; j++, idx++) {
+                    data[offset + cols[j]] = b[idx];
+                }
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix assignRowAsDouble(int row, DoubleIntToDoubleFunction f) {
+        for (int j = 0, idx = row * numCols; j < numCols; j++, idx++) {
+            data[idx] = f.applyAsDouble(data[idx], j);
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix assignRows(Matrix other, int... rows) {
+        assert other.getNumCols() == numCols
+                : format("cannot insert columns %dx%d into %dx%d",
+                other.getNumRows(), other.getNumCols(),
+                numRows, numCols);
+        assert other.getNumRows() == rows.length
+                : format("Mismatched indexing %d columns of %dx%d map",
+                rows.length,
+                other.getNumRows(), other.getNumCols());
+        final double[] b = asArray(other).data;
+        for (int i = 0; i < rows.length; i++) {
+            System.arraycopy(b, i * numCols, data, rows[i] * numCols, numCols);
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix cdfiRows() {
+        final Matrix sum = sumCols();
+        for (int i = 1; i < numRows; i++) {
+            for (int j = 0, idx = i * numCols; j < numCols; j++, idx++) {
+                data[idx] += data[idx - numCols];
+            }
+        }
+        return divi(sum);
+    }
+
+    @Override
+    public int[] cellsOf(DoublePredicate p) {
+        final int size = size();
+        final int[] result = new int[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (p.test(data[i])) {
+                result[count++] = i;
+            }
+        }
+        return count == size ? result : Arrays.copyOf(result, count);
+    }
+
+    @Override
+    public int[] choose(Matrix selector) {
+        assert selector.getNumRows() == 1
+                : format("selector %dx%d is not a row matrix ",
+                selector.getNumRows(), selector.getNumCols());
+        assert numCols == selector.getNumCols()
+                : format("selector %dx%d has different # columns than %dx%d",
+                selector.getNumRows(), selector.getNumCols(),
+                numRows, numCols);
+        final double[] s = asArray(selector).data;
+        final int[] result = new int[numCols];
+        for (int j = 0; j < numCols; j++) {
+            result[j] = numRows - 1;
+            final double v = s[j];
+            for (int i = 0, idx = j; i < numRows - 1; i++, idx += numCols) {
+                if (v < data[idx]) {
+                    result[j] = i;
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Matrix copy() {
+        return new ArrayMatrix(numRows, numCols, Arrays.copyOf(data, size()));
+    }
+
+    @Override
+    public Matrix createLike() {
+        return new ArrayMatrix(numRows, numCols, new double[size()]);
+    }
+
+    @Override
+    public Matrix divi(double value) {
+        final int size = size();
+        for (int i = 0; i < size; i++) {
+            data[i] /= value;
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix divi(Matrix other) {
+        final int n = other.getNumRows();
+        final int m = other.getNumCols();
+        if (n == 1 && m == 1) {
+            return divi(other.get(0, 0));
+        }
+        final double[] b = asArray(other).data;
+        if (n == 1) {
+            assert m == numCols
+                    : format("Invalid operation %dx%d / %dx%d", numRows, numCols, n, m);
+            for (int i = 0, idx = 0; i < numRows; i++) {
+                for (int j = 0; j < numCols; j++, idx++) {
+                    data[idx] /= b[j];
+                }
+            }
+        } else if (m == 1) {
+            assert n == numRows
+                    : format("Invalid operation %dx%d / %dx%d", numRows, numCols, n, m);
+            for (int i = 0, idx = 0; i < numRows; i++) {
+                final double v = b[i];
+                for (int j = 0; j < numCols; j++, idx++) {
+                    data[idx] /= v;
+                }
+            }
+        } else {
+            assert n == numRows && m == numCols
+                    : format("Invalid operation %dx%d / %dx%d", numRows, numCols, n, m);
+            final int size = size();
+            for (int i = 0; i < size; i++) {
+                data[i] /= b[i];
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix expi() {
+        final int size = size();
+        for (int i = 0; i < size; i++) {
+            data[i] = Math.exp(data[i]);
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix expm1i() {
+        final int size = size();
+        for (int i = 0; i < size; i++) {
+            data[i] = Math.expm1(data[i]);
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix extractCols(int... cols) {
+        final int m = cols.length;
+        final double[] result = new double[numRows * m];
+        if (numRows == 1) {
+            for (int j = 0; j < m; j++) {
+                result[j] = data[cols[j]];
+            }
+        } else {
+            for (int i = 0, idx = 0; i < numRows; i++) {
+                final int offset = i * numCols;
+                for (int j = 0; j < m; j++, idx++) {
+                    result[idx] = data[offset + cols[j]];
+                }
+            }
+        }
+        return new ArrayMatrix(numRows, m, result);
+    }
+
+    @Override
+    public Matrix extractColumn(int col) {
+        final double[] result = new double[numRows];
+        for (int i = 0, idx = col; i < numRows; i++, idx += numCols) {
+            result[i] = data[idx];
+        }
+        return new ArrayMatrix(numRows, 1, result);
+    }
+
+    @Override
+    public Matrix extractRow(int row) {
+        final int from = row * numCols;
+        return new ArrayMatrix(1, numCols, Arrays.copyOfRange(data, from, from + numCols));
+    }
+
+    @Override
+    public Matrix extractRows(int... rows) {
+        final int n = rows.length;
+        final double[] result = new double[n * numCols];
+        for (int i = 0; i < n; i++) {
+            System.arraycopy(data, rows[i] * numCols, result, i * numCols, numCols);
+        }
+        return new ArrayMatrix(n, numCols, result);
+    }
+
+    @Override
+    public double get(int row, int col) {
+        return data[row * numCols + col];
+    }
+
+    /**
+     * Returns the row-major data
+     */
+    double[] getData() {
+        return data;
+    }
+
+    @Override
+    public int getNumCols() {
+        return numCols;
+    }
+
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public Matrix insert(Matrix other, int row, int col) {
+        return assign(other, row, col);
+    }
+
+    @Override
+    public Matrix logi() {
+        final int size = size();
+        for (int i = 0; i < size; i++) {
+            data[i] = Math.log(data[i]);
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix lti() {
+        final int size = size();
+        for (int i = 0; i < size; i++) {
+            data[i] = data[i] < 0.0 ? 1.0 : 0.0;
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix mapi(DoubleUnaryOperator mapper) {
+        final int size = size();
+        for (int i = 0; i < size; i++) {
+            data[i] = mapper.applyAsDouble(data[i]);
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix mapi(int startRow, int endRow, int startCol, int endCol, DoubleUnaryOperator mapper) {
+        for (int i = startRow; i <= endRow; i++) {
+            for (int j = startCol, idx = i * numCols + startCol; j <= endCol; j++, idx++) {
+                data[idx] = mapper.applyAsDouble(data[idx]);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix mapiAsDouble(int startRow, int endRow, int startCol, int endCol, DoubleIntIntToDoubleFunction mapper) {
+        for (int i = startRow; i <= endRow; i++) {
+            for (int j = startCol, idx = i * numCols + startCol; j <= endCol; j++, idx++) {
+                data[idx] = mapper.applyAsDouble(data[idx], i, j);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix mapiColsAsDouble(DoubleIntIntIntToDoubleFunction mapper, int... cols) {
+        final int m = cols.length;
+        for (int i = 0; i < numRows; i++) {
+            final int offset = i * numCols;
+            for (int j = 0; j < m; j++) {
+                final int k = cols[j];
+                data[offset + k] = mapper.applyAsDouble(data[offset + k], i, j, k);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix mapiRowsAsDouble(DoubleIntIntIntToDoubleFunction mapper, int... rows) {
+        for (int i = 0; i < rows.length; i++) {
+            final int k = rows[i];
+            for (int j = 0, idx = k * numCols; j < numCols; j++, idx++) {
+                data[idx] = mapper.applyAsDouble(data[idx], i, j, k);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public double max() {
+        final int size = size();
+        double result = data[0];
+        for (int i = 1; i < size; i++) {
+            if (data[i] > result) {
+                result = data[i];
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Matrix maxi(double value) {
+        final int size = size();
+        for (int i = 0; i < size; i++) {
+            data[i] = Math.max(data[i], value);
+        }
+        return this;
+    }
+
+    @Override
+    public double min() {
+        final int size = size();
+        double result = data[0];
+        for (int i = 1; i < size; i++) {
+            if (data[i] < result) {
+                result = data[i];
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Matrix minCols() {
+        // Starts from the maximum value as the ejml implementation for matrices with no rows
+        final double[] result = new double[numCols];
+        Arrays.fill(result, Double.MAX_VALUE);
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0, idx = i * numCols; j < numCols; j++, idx++) {
+                if (data[idx] < result[j]) {
+                    result[j] = data[idx];
+                }
+            }
+        }
+        return new ArrayMatrix(1, numCols, result);
+    }
+
+    @Override
+    public Matrix mini(double value) {
+        final int size = size();
+        for (int i = 0; i < size; i++) {
+            data[i] = Math.min(data[i], value);
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix mini(Matrix other) {
+        assert numRows == other.getNumRows() && numCols == other.getNumCols()
+                : format("mini between different martrices %dx%d, %dx%d ",
+                numRows, numCols,
+                other.getNumRows(), other.getNumCols());
+        final double[] b = asArray(other).data;
+        final int size = size();
+        for (int i = 0; i < size; i++) {
+            data[i] = Math.min(data[i], b[i]);
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix muli(double other) {
+        final int size = size();
+        for (int i = 0; i < size; i++) {
+            data[i] *= other;
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix muli(Matrix other) {
+        final int n = other.getNumRows();
+        final int m = other.getNumCols();
+        if (n == 1 && m == 1) {
+            return muli(other.get(0, 0));
+        }
+        final double[] b = asArray(other).data;
+        if (n == 1) {
+            assert m == numCols
+                    : format("Invalid operation %dx%d * %dx%d", numRows, numCols, n, m);
+            for (int i = 0, idx = 0; i < numRows; i++) {
+                for (int j = 0; j < numCols; j++, idx++) {
+                    data[idx] *= b[j];
+                }
+            }
+        } else if (m == 1) {
+            assert n == numRows
+                    : format("Invalid operation %dx%d * %dx%d", numRows, numCols, n, m);
+            for (int i = 0, idx = 0; i < numRows; i++) {
+                final double v = b[i];
+                for (int j = 0; j < numCols; j++, idx++) {
+                    data[idx] *= v;
+                }
+            }
+        } else {
+            assert n == numRows && m == numCols
+                    : format("Invalid operation %dx%d * %dx%d", numRows, numCols, n, m);
+            final int size = size();
+            for (int i = 0; i < size; i++) {
+                data[i] *= b[i];
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix negi() {
+        final int size = size();
+        for (int i = 0; i < size; i++) {
+            data[i] = -data[i];
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix powi(double value) {
+        final int size = size();
+        for (int i = 0; i < size; i++) {
+            data[i] = Math.pow(data[i], value);
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix prod(Matrix other) {
+        assert numRows == 1 && other.getNumCols() == 1
+                || numCols == 1 && other.getNumRows() == 1
+                : format("External product %dx%d ^ %dx%d not allowed",
+                numRows, numCols,
+                other.getNumRows(), other.getNumCols());
+        final double[] b = asArray(other).data;
+        if (numRows == 1 && other.getNumCols() == 1) {
+            // result[i][j] = this[0][j] * other[i][0]
+            final int n = other.getNumRows();
+            final double[] result = new double[n * numCols];
+            for (int i = 0, idx = 0; i < n; i++) {
+                final double v = b[i];
+                for (int j = 0; j < numCols; j++, idx++) {
+                    result[idx] = data[j] * v;
+                }
+            }
+            return new ArrayMatrix(n, numCols, result);
+        } else {
+            // result[i][j] = other[0][j] * this[i][0]
+            final int m = other.getNumCols();
+            final double[] result = new double[numRows * m];
+            for (int i = 0, idx = 0; i < numRows; i++) {
+                final double v = data[i];
+                for (int j = 0; j < m; j++, idx++) {
+                    result[idx] = b[j] * v;
+                }
+            }
+            return new ArrayMatrix(numRows, m, result);
+        }
+    }
+
+    @Override
+    public Matrix retainColsi(int... cols) {
+        final int m = cols.length;
+        // The retained columns move backward so no column is overwritten before being moved
+        for (int i = 0, idx = 0; i < numRows; i++) {
+            final int offset = i * numCols;
+            for (int j = 0; j < m; j++, idx++) {
+                assert j == 0 || cols[j] > cols[j - 1]
+                        : format("columns must be increasing (%d <= %d)", cols[j], cols[j - 1]);
+                data[idx] = data[offset + cols[j]];
+            }
+        }
+        numCols = m;
+        return this;
+    }
+
+    @Override
+    public Matrix set(int row, int col, double value) {
+        data[row * numCols + col] = value;
+        return this;
+    }
+
+    /**
+     * Returns the number of elements
+     */
+    private int size() {
+        return numRows * numCols;
+    }
+
+    @Override
+    public Matrix softmaxi() {
+        expi();
+        final int size = size();
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += data[i];
+        }
+        return divi(sum);
+    }
+
+    @Override
+    public Matrix subi(double value) {
+        final int size = size();
+        for (int i = 0; i < size; i++) {
+            data[i] -= value;
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix subi(Matrix other) {
+        final int n = other.getNumRows();
+        final int m = other.getNumCols();
+        if (n == 1 && m == 1) {
+            return subi(other.get(0, 0));
+        }
+        final double[] b = asArray(other).data;
+        if (n == 1) {
+            assert m == numCols
+                    : format("Invalid operation %dx%d - %dx%d", numRows, numCols, n, m);
+            for (int i = 0, idx = 0; i < numRows; i++) {
+                for (int j = 0; j < numCols; j++, idx++) {
+                    data[idx] -= b[j];
+                }
+            }
+        } else if (m == 1) {
+            assert n == numRows
+                    : format("Invalid operation %dx%d - %dx%d", numRows, numCols, n, m);
+            for (int i = 0, idx = 0; i < numRows; i++) {
+                final double v = b[i];
+                for (int j = 0; j < numCols; j++, idx++) {
+                    data[idx] -= v;
+                }
+            }
+        } else {
+            assert n == numRows && m == numCols
+                    : format("Invalid operation %dx%d - %dx%d", numRows, numCols, n, m);
+            final int size = size();
+            for (int i = 0; i < size; i++) {
+                data[i] -= b[i];
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix sumCols() {
+        if (numRows == 1) {
+            return copy();
+        }
+        final double[] result = new double[numCols];
+        for (int i = 0, idx = 0; i < numRows; i++) {
+            for (int j = 0; j < numCols; j++, idx++) {
+                result[j] += data[idx];
+            }
+        }
+        return new ArrayMatrix(1, numCols, result);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder result = new StringBuilder(format("ArrayMatrix %dx%d", numRows, numCols));
+        for (int i = 0; i < numRows; i++) {
+            result.append('\n');
+            for (int j = 0; j < numCols; j++) {
+                result.append(format(" %11.4E", data[i * numCols + j]));
+            }
+        }
+        return result.toString();
+    }
+
+    @Override
+    public Matrix trasposei() {
+        if (numRows > 1 && numCols > 1) {
+            final double[] result = new double[size()];
+            for (int i = 0, idx = 0; i < numRows; i++) {
+                for (int j = 0; j < numCols; j++, idx++) {
+                    result[j * numRows + i] = data[idx];
+                }
+            }
+            data = result;
+        }
+        final int n = numRows;
+        numRows = numCols;
+        numCols = n;
+        return this;
+    }
+
+    @Override
+    public Matrix view(int startRow, int endRow, int startCol, int endCol, boolean writable) {
+        return MatrixView.create(data, numRows, numCols, startRow, endRow, startCol, endCol, writable);
+    }
+}
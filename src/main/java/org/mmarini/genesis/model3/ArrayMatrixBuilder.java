@@ -0,0 +1,144 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Builds matrices backed by plain arrays of doubles
+ */
+public class ArrayMatrixBuilder implements MatrixBuilder {
+
+    @Override
+    public Matrix hstack(Matrix... matrices) {
+        if (matrices.length == 0) {
+            return zeros(0, 0);
+        }
+        final int n = matrices[0].getNumRows();
+        for (Matrix mat : matrices) {
+            assert n == mat.getNumRows();
+        }
+        final int m = Arrays.stream(matrices)
+                .mapToInt(Matrix::getNumCols)
+                .sum();
+        final double[] data = new double[n * m];
+        int cols = 0;
+        for (Matrix mat : matrices) {
+            final ArrayMatrix src = ArrayMatrix.asArray(mat);
+            final int mi = src.getNumCols();
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(src.getData(), i * mi, data, i * m + cols, mi);
+            }
+            cols += mi;
+        }
+        return new ArrayMatrix(n, m, data);
+    }
+
+    @Override
+    public Matrix of(double[]... matrix) {
+        final int n = matrix.length;
+        final int m = n > 0 ? matrix[0].length : 0;
+        final double[] data = new double[n * m];
+        for (int i = 0; i < n; i++) {
+            assert matrix[i].length == m;
+            System.arraycopy(matrix[i], 0, data, i * m, m);
+        }
+        return new ArrayMatrix(n, m, data);
+    }
+
+    @Override
+    public Matrix of(double matrix) {
+        return new ArrayMatrix(1, 1, new double[]{matrix});
+    }
+
+    @Override
+    public Matrix of(double... vector) {
+        return new ArrayMatrix(vector.length, 1, Arrays.copyOf(vector, vector.length));
+    }
+
+    @Override
+    public Matrix ones(int numRows, int numCols) {
+        return values(numRows, numCols, 1);
+    }
+
+    @Override
+    public Matrix rand(int numRows, int numCols, Random random) {
+        final double[] data = new double[numRows * numCols];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextDouble();
+        }
+        return new ArrayMatrix(numRows, numCols, data);
+    }
+
+    @Override
+    public Matrix randn(int numRows, int numCols, Random random) {
+        final double[] data = new double[numRows * numCols];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = random.nextGaussian();
+        }
+        return new ArrayMatrix(numRows, numCols, data);
+    }
+
+    @Override
+    public Matrix values(int numRows, int numCols, double value) {
+        final double[] data = new double[numRows * numCols];
+        Arrays.fill(data, value);
+        return new ArrayMatrix(numRows, numCols, data);
+    }
+
+    @Override
+    public Matrix vstack(Matrix[] matrices) {
+        if (matrices.length == 0) {
+            return zeros(0, 0);
+        }
+        final int m = matrices[0].getNumCols();
+        for (Matrix mat : matrices) {
+            assert m == mat.getNumCols();
+        }
+        final int n = Arrays.stream(matrices)
+                .mapToInt(Matrix::getNumRows)
+                .sum();
+        final double[] data = new double[n * m];
+        int offset = 0;
+        for (Matrix mat : matrices) {
+            final ArrayMatrix src = ArrayMatrix.asArray(mat);
+            final int size = src.getNumRows() * m;
+            System.arraycopy(src.getData(), 0, data, offset, size);
+            offset += size;
+        }
+        return new ArrayMatrix(n, m, data);
+    }
+
+    @Override
+    public Matrix zeros(int numRows, int numCols) {
+        return new ArrayMatrix(numRows, numCols, new double[numRows * numCols]);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import io.reactivex.rxjava3.core.BackpressureOverflowStrategy;
+import io.reactivex.rxjava3.core.Flowable;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Backpressure strategy of the simulation flows.
+ * <p>
+ * The strategy is applied to the flows emitted by the simulation thread so that
+ * the slow subscribers never stall the simulation.
+ * </p>
+ */
+public class Backpressure {
+    private static final Backpressure DROP = new Backpressure(Kind.DROP, 0, 0);
+    private static final Backpressure LATEST = new Backpressure(Kind.LATEST, 0, 0);
+
+    /**
+     * Returns the strategy buffering up to a number of items and dropping the oldest ones
+     *
+     * @param capacity the buffer capacity
+     */
+    public static Backpressure buffer(int capacity) {
+        assert capacity > 0 : format("capacity must be positive (%d)", capacity);
+        return new Backpressure(Kind.BUFFER, capacity, 0);
+    }
+
+    /**
+     * Returns the strategy dropping the items not requested
+     */
+    public static Backpressure drop() {
+        return DROP;
+    }
+
+    /**
+     * Returns the strategy keeping the latest item not requested
+     */
+    public static Backpressure latest() {
+        return LATEST;
+    }
+
+    /**
+     * Returns the strategy emitting the latest item at each interval
+     *
+     * @param interval the sample interval
+     */
+    public static Backpressure sample(Duration interval) {
+        requireNonNull(interval);
+        assert !interval.isNegative() && !interval.isZero() : format("interval must be positive (%s)", interval);
+        return new Backpressure(Kind.SAMPLE, 0, interval.toNanos());
+    }
+
+    private final Kind kind;
+    private final int capacity;
+    private final long interval;
+
+    /**
+     * Creates the strategy
+     *
+     * @param kind     the kind of strategy
+     * @param capacity the buffer capacity
+     * @param interval the sample interval (ns)
+     */
+    protected Backpressure(Kind kind, int capacity, long interval) {
+        this.kind = kind;
+        this.capacity = capacity;
+        this.interval = interval;
+    }
+
+    /**
+     * Returns the flow with backpressure strategy
+     *
+     * @param source the source flow
+     * @param <T>    the item type
+     */
+    public <T> Flowable<T> apply(Flowable<T> source) {
+        switch (kind) {
+            case BUFFER:
+                return source.onBackpressureBuffer(capacity, () -> {
+                }, BackpressureOverflowStrategy.DROP_OLDEST);
+            case DROP:
+                return source.onBackpressureDrop();
+            case SAMPLE:
+                return source.sample(interval, TimeUnit.NANOSECONDS).onBackpressureLatest();
+            default:
+                return source.onBackpressureLatest();
+        }
+    }
+
+    private enum Kind {
+        BUFFER, DROP, LATEST, SAMPLE
+    }
+}
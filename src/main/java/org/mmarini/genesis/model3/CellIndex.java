@@ -0,0 +1,246 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.Arrays;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Index of the individuals by cell in compressed sparse row format.
+ * <p>
+ * The individuals of cell c are <code>getIndividual(k)</code> for k in range
+ * <code>getStart(c)</code> (inclusive), <code>getEnd(c)</code> (exclusive) in ascending order,
+ * so the reductions by cell are linear sweeps with the same summation order of a scatter
+ * of the individuals.
+ * The index is immutable, the indices of changed populations are derived by
+ * {@link #append(int[], int)} and {@link #select(int[], int)}.
+ * </p>
+ */
+public class CellIndex {
+
+    /**
+     * Returns the index of the individual locations by counting sort
+     *
+     * @param locations the individual locations
+     */
+    public static CellIndex create(final int[] locations) {
+        requireNonNull(locations);
+        int noCells = 0;
+        for (int location : locations) {
+            assert location >= 0 : format("location must be not negative (%d)", location);
+            noCells = Math.max(noCells, location + 1);
+        }
+        final int[] offsets = new int[noCells + 1];
+        for (int location : locations) {
+            offsets[location + 1]++;
+        }
+        for (int i = 0; i < noCells; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+        final int[] next = new int[noCells];
+        System.arraycopy(offsets, 0, next, 0, noCells);
+        final int[] individuals = new int[locations.length];
+        for (int j = 0; j < locations.length; j++) {
+            individuals[next[locations[j]]++] = j;
+        }
+        return new CellIndex(offsets, individuals);
+    }
+
+    private final int[] offsets;
+    private final int[] individuals;
+
+    /**
+     * Creates the index
+     *
+     * @param offsets     the offsets of cells in the individuals (noCells + 1)
+     * @param individuals the individual indices sorted by cell
+     */
+    protected CellIndex(final int[] offsets, final int[] individuals) {
+        this.offsets = offsets;
+        this.individuals = individuals;
+    }
+
+    /**
+     * Returns the index with appended individuals
+     *
+     * @param locations the locations of appended individuals
+     * @param first     the index of first appended individual
+     */
+    public CellIndex append(final int[] locations, final int first) {
+        assert first == individuals.length
+                : format("first appended individual must be %d (%d)", individuals.length, first);
+        if (locations.length == 0) {
+            return this;
+        }
+        final int noCells0 = getNoCells();
+        int noCells = noCells0;
+        for (int location : locations) {
+            noCells = Math.max(noCells, location + 1);
+        }
+        // Counts the appended individuals by cell
+        final int[] counts = new int[noCells];
+        for (int location : locations) {
+            counts[location]++;
+        }
+        final int[] offsets1 = new int[noCells + 1];
+        final int[] individuals1 = new int[individuals.length + locations.length];
+        final int[] next = new int[noCells];
+        for (int c = 0; c < noCells; c++) {
+            final int start = c < noCells0 ? offsets[c] : individuals.length;
+            final int end = c < noCells0 ? offsets[c + 1] : individuals.length;
+            final int size = end - start;
+            // The existing individuals precede the appended ones
+            System.arraycopy(individuals, start, individuals1, offsets1[c], size);
+            next[c] = offsets1[c] + size;
+            offsets1[c + 1] = offsets1[c] + size + counts[c];
+        }
+        for (int k = 0; k < locations.length; k++) {
+            individuals1[next[locations[k]]++] = first + k;
+        }
+        return new CellIndex(offsets1, individuals1);
+    }
+
+    /**
+     * Returns the result adding the column sums of the individual values by cell
+     *
+     * @param values the individual values (nr x ni)
+     * @param result the result (nr x nc)
+     */
+    public Matrix addByCell(final Matrix values, final Matrix result) {
+        assert values.getNumCols() == individuals.length
+                : format("values must have %d columns (%d)", individuals.length, values.getNumCols());
+        assert values.getNumRows() == result.getNumRows()
+                : format("values and result must have the same rows (%d != %d)", values.getNumRows(), result.getNumRows());
+        assert result.getNumCols() >= getNoCells()
+                : format("result must have at least %d columns (%d)", getNoCells(), result.getNumCols());
+        final int noRows = values.getNumRows();
+        final int noCells = getNoCells();
+        for (int i = 0; i < noRows; i++) {
+            for (int c = 0; c < noCells; c++) {
+                final int start = offsets[c];
+                final int end = offsets[c + 1];
+                if (start < end) {
+                    double acc = result.get(i, c);
+                    for (int k = start; k < end; k++) {
+                        acc += values.get(i, individuals[k]);
+                    }
+                    result.set(i, c, acc);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of individuals in a cell
+     *
+     * @param cell the cell
+     */
+    public int getCount(final int cell) {
+        return cell < getNoCells() ? offsets[cell + 1] - offsets[cell] : 0;
+    }
+
+    /**
+     * Returns the end position of the individuals of a cell (exclusive)
+     *
+     * @param cell the cell
+     */
+    public int getEnd(final int cell) {
+        return cell < getNoCells() ? offsets[cell + 1] : individuals.length;
+    }
+
+    /**
+     * Returns the individual at a position
+     *
+     * @param position the position
+     */
+    public int getIndividual(final int position) {
+        return individuals[position];
+    }
+
+    /**
+     * Returns the number of individuals
+     */
+    public int getIndividualCount() {
+        return individuals.length;
+    }
+
+    /**
+     * Returns the number of indexed cells (the maximum location + 1)
+     */
+    public int getNoCells() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * Returns the start position of the individuals of a cell
+     *
+     * @param cell the cell
+     */
+    public int getStart(final int cell) {
+        return cell < getNoCells() ? offsets[cell] : individuals.length;
+    }
+
+    /**
+     * Returns the index of the selected individuals
+     *
+     * @param selected the ascending indices of selected individuals
+     * @param n        the number of individuals
+     */
+    public CellIndex select(final int[] selected, final int n) {
+        assert n == individuals.length : format("number of individuals must be %d (%d)", individuals.length, n);
+        if (selected.length == n) {
+            return this;
+        }
+        // Maps the selected individuals to the new indices
+        final int[] map = new int[n];
+        Arrays.fill(map, -1);
+        for (int k = 0; k < selected.length; k++) {
+            assert k == 0 || selected[k] > selected[k - 1] : "selected individuals must be ascending";
+            map[selected[k]] = k;
+        }
+        final int noCells = getNoCells();
+        final int[] offsets1 = new int[noCells + 1];
+        final int[] individuals1 = new int[selected.length];
+        int m = 0;
+        for (int c = 0; c < noCells; c++) {
+            for (int k = offsets[c]; k < offsets[c + 1]; k++) {
+                final int j = map[individuals[k]];
+                if (j >= 0) {
+                    individuals1[m++] = j;
+                }
+            }
+            offsets1[c + 1] = m;
+        }
+        return new CellIndex(offsets1, individuals1);
+    }
+}
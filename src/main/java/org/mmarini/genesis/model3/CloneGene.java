@@ -146,7 +146,7 @@ public class CloneGene implements PIPGene {
                               final Topology topology,
                               final Random random) {
         // Computes the actual signal levels
-        final Matrix values = signals.copy().muli(levelRates).expi().muli(minLevels);
+        final Matrix values = signals.lazy().muli(levelRates).expi().muli(minLevels).eval();
         // Extracts the mass thresholds
         final Matrix massThs = values.extractRow(MASS_THRESHOLD_IDX);
         // Extracts the energy thresholds
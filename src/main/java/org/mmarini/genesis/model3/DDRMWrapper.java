@@ -29,12 +29,9 @@
 
 package org.mmarini.genesis.model3;
 
-import io.reactivex.rxjava3.functions.Function3;
-import io.reactivex.rxjava3.functions.Function4;
 import org.ejml.data.DMatrixRMaj;
 import org.ejml.dense.row.CommonOps_DDRM;
 
-import java.util.function.BiFunction;
 import java.util.function.DoublePredicate;
 import java.util.function.DoubleUnaryOperator;
 import java.util.stream.IntStream;
@@ -45,6 +42,27 @@ import static org.ejml.dense.row.CommonOps_DDRM.elementLog;
  *
  */
 public class DDRMWrapper implements Matrix {
+    /**
+     * Returns the EJML matrix of an evaluated matrix
+     *
+     * @param other the matrix
+     */
+    static DMatrixRMaj toDDRM(Matrix other) {
+        final Matrix matrix = other.eval();
+        if (matrix instanceof DDRMWrapper) {
+            return ((DDRMWrapper) matrix).matrix;
+        }
+        final int n = matrix.getNumRows();
+        final int m = matrix.getNumCols();
+        final DMatrixRMaj result = new DMatrixRMaj(n, m);
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                result.unsafe_set(i, j, matrix.get(i, j));
+            }
+        }
+        return result;
+    }
+
     private final DMatrixRMaj matrix;
 
     /**
@@ -61,7 +79,7 @@ public class DDRMWrapper implements Matrix {
                 : String.format("Matrix %dx%d != Matrix %dx%d",
                 matrix.getNumRows(), matrix.getNumCols(),
                 other.getNumRows(), other.getNumCols());
-        return new DDRMWrapper(CommonOps_DDRM.add(matrix, ((DDRMWrapper) other).get(), null));
+        return new DDRMWrapper(CommonOps_DDRM.add(matrix, toDDRM(other), null));
     }
 
     @Override
@@ -79,32 +97,58 @@ public class DDRMWrapper implements Matrix {
                         : String.format("Invalid operation %dx%d + %dx%d",
                         matrix.getNumRows(), matrix.getNumCols(),
                         other.getNumRows(), other.getNumCols());
-                return mapi((v, i, j) -> v + other.get(0, j));
+                return mapiAsDouble((v, i, j) -> v + other.get(0, j));
             }
         } else if (other.getNumCols() == 1) {
             assert other.getNumRows() == matrix.getNumRows()
                     : String.format("Invalid operation %dx%d + %dx%d",
                     matrix.getNumRows(), matrix.getNumCols(),
                     other.getNumRows(), other.getNumCols());
-            return mapi((v, i, j) -> v + other.get(i, 0));
+            return mapiAsDouble((v, i, j) -> v + other.get(i, 0));
         } else {
-            CommonOps_DDRM.addEquals(matrix, ((DDRMWrapper) other).get());
+            CommonOps_DDRM.addEquals(matrix, toDDRM(other));
             return this;
         }
     }
 
+    @Override
+    public Matrix appendColsi(Matrix other) {
+        final int n = matrix.getNumRows();
+        final int m = matrix.getNumCols();
+        final int m1 = m + other.getNumCols();
+        assert other.getNumRows() == n
+                : String.format("cannot append columns %dx%d to %dx%d",
+                other.getNumRows(), other.getNumCols(),
+                n, m);
+        final double[] data = matrix.getData();
+        final double[] data1 = data.length >= n * m1
+                ? data
+                : new double[n * Math.max(m1, m * 2)];
+        // Moves the rows from the last one so that no row is overwritten before being moved
+        for (int i = n - 1; i >= 0; i--) {
+            System.arraycopy(data, i * m, data1, i * m1, m);
+        }
+        matrix.setData(data1);
+        matrix.reshape(n, m1, false);
+        CommonOps_DDRM.insert(toDDRM(other), matrix, 0, m);
+        return this;
+    }
+
     @Override
     public Matrix assign(Matrix other, int row, int col) {
-        CommonOps_DDRM.extract(((DDRMWrapper) other).matrix, 0, other.getNumRows(), 0, other.getNumCols(), matrix, row, col);
+        CommonOps_DDRM.extract(toDDRM(other), 0, other.getNumRows(), 0, other.getNumCols(), matrix, row, col);
         return this;
     }
 
-    /**
-     * @param col the column
-     * @param f   the mapper
-     */
-    public Matrix assignCol(int col, BiFunction<Double, Integer, Double> f) {
-        return mapiCols((v, i, j, k) -> f.apply(v, i), col);
+    @Override
+    public Matrix assignColAsDouble(int col, DoubleIntToDoubleFunction f) {
+        final int n = matrix.getNumRows();
+        final int m = matrix.getNumCols();
+        final double[] data = matrix.getData();
+        for (int i = 0, idx = col; i < n; i++, idx += m) {
+            data[idx] = f.applyAsDouble(data[idx], i);
+        }
+        return this;
     }
 
     @Override
@@ -118,16 +162,18 @@ public class DDRMWrapper implements Matrix {
                 cols.length,
                 other.getNumRows(), other.getNumCols());
         int[] rows = IntStream.range(0, matrix.getNumRows()).toArray();
-        CommonOps_DDRM.insert(((DDRMWrapper) other).get(), matrix, rows, matrix.getNumRows(), cols, cols.length);
+        CommonOps_DDRM.insert(toDDRM(other), matrix, rows, matrix.getNumRows(), cols, cols.length);
         return this;
     }
 
-    /**
-     * @param row the row
-     * @param f   the mapper
-     */
-    public Matrix assignRow(int row, BiFunction<Double, Integer, Double> f) {
-        return mapiRows((v, i, j, k) -> f.apply(v, j), row);
+    @Override
+    public Matrix assignRowAsDouble(int row, DoubleIntToDoubleFunction f) {
+        final int m = matrix.getNumCols();
+        final double[] data = matrix.getData();
+        for (int j = 0, idx = row * m; j < m; j++, idx++) {
+            data[idx] = f.applyAsDouble(data[idx], j);
+        }
+        return this;
     }
 
     /**
@@ -144,7 +190,7 @@ public class DDRMWrapper implements Matrix {
                 rows.length,
                 other.getNumRows(), other.getNumCols());
         int[] cols = IntStream.range(0, matrix.getNumCols()).toArray();
-        CommonOps_DDRM.insert(((DDRMWrapper) other).get(), matrix, rows, rows.length, cols, matrix.getNumCols());
+        CommonOps_DDRM.insert(toDDRM(other), matrix, rows, rows.length, cols, matrix.getNumCols());
         return this;
     }
 
@@ -163,7 +209,7 @@ public class DDRMWrapper implements Matrix {
 
     @Override
     public int[] cellsOf(DoublePredicate p) {
-        return IntStream.range(0, matrix.getData().length)
+        return IntStream.range(0, matrix.getNumElements())
                 .filter(i -> p.test(matrix.get(i)))
                 .toArray();
     }
@@ -219,16 +265,16 @@ public class DDRMWrapper implements Matrix {
                         : String.format("Invalid operation %dx%d * %dx%d",
                         matrix.getNumRows(), matrix.getNumCols(),
                         other.getNumRows(), other.getNumCols());
-                return mapi((v, i, j) -> v / other.get(0, j));
+                return mapiAsDouble((v, i, j) -> v / other.get(0, j));
             }
         } else if (other.getNumCols() == 1) {
             assert other.getNumRows() == matrix.getNumRows()
                     : String.format("Invalid operation %dx%d * %dx%d",
                     matrix.getNumRows(), matrix.getNumCols(),
                     other.getNumRows(), other.getNumCols());
-            return mapi((v, i, j) -> v / other.get(i, 0));
+            return mapiAsDouble((v, i, j) -> v / other.get(i, 0));
         } else {
-            CommonOps_DDRM.elementDiv(matrix, ((DDRMWrapper) other).get());
+            CommonOps_DDRM.elementDiv(matrix, toDDRM(other));
             return this;
         }
     }
@@ -301,7 +347,7 @@ public class DDRMWrapper implements Matrix {
 
     @Override
     public Matrix insert(Matrix other, int row, int col) {
-        CommonOps_DDRM.insert(((DDRMWrapper) other).get(), matrix, row, col);
+        CommonOps_DDRM.insert(toDDRM(other), matrix, row, col);
         return this;
     }
 
@@ -321,19 +367,12 @@ public class DDRMWrapper implements Matrix {
         return this;
     }
 
-    /**
-     * @param f the mapper
-     */
-    public Matrix mapi(Function3<Double, Integer, Integer, Double> f) {
-        return mapi(0, matrix.getNumRows() - 1, 0, matrix.getNumCols() - 1, f);
-    }
-
     @Override
-    public Matrix mapi(int startRow, int endRow, int startCol, int endCol, Function3<Double, Integer, Integer, Double> mapper) {
+    public Matrix mapi(int startRow, int endRow, int startCol, int endCol, DoubleUnaryOperator mapper) {
         for (int i = startRow; i <= endRow; i++) {
             for (int j = startCol; j <= endCol; j++) {
                 try {
-                    double v = mapper.apply(matrix.get(i, j), i, j);
+                    double v = mapper.applyAsDouble(matrix.get(i, j));
                     matrix.set(i, j, v);
                 } catch (Throwable e) {
                     throw new IllegalArgumentException(e);
@@ -344,57 +383,42 @@ public class DDRMWrapper implements Matrix {
     }
 
     @Override
-    public Matrix mapi(int startRow, int endRow, int startCol, int endCol, DoubleUnaryOperator mapper) {
+    public Matrix mapiAsDouble(int startRow, int endRow, int startCol, int endCol, DoubleIntIntToDoubleFunction mapper) {
+        final int m = matrix.getNumCols();
+        final double[] data = matrix.getData();
         for (int i = startRow; i <= endRow; i++) {
-            for (int j = startCol; j <= endCol; j++) {
-                try {
-                    double v = mapper.applyAsDouble(matrix.get(i, j));
-                    matrix.set(i, j, v);
-                } catch (Throwable e) {
-                    throw new IllegalArgumentException(e);
-                }
+            for (int j = startCol, idx = i * m + startCol; j <= endCol; j++, idx++) {
+                data[idx] = mapper.applyAsDouble(data[idx], i, j);
             }
         }
         return this;
     }
 
-    /**
-     * @param mapper the mapper
-     * @param cols   the columns
-     */
-    public Matrix mapiCols(Function4<Double, Integer, Integer, Integer, Double> mapper, int... cols) {
-        int n = matrix.getNumRows();
-        int m = cols.length;
+    @Override
+    public Matrix mapiColsAsDouble(DoubleIntIntIntToDoubleFunction mapper, int... cols) {
+        final int n = matrix.getNumRows();
+        final int m = cols.length;
+        final int stride = matrix.getNumCols();
+        final double[] data = matrix.getData();
         for (int i = 0; i < n; i++) {
+            final int offset = i * stride;
             for (int j = 0; j < m; j++) {
-                try {
-                    int k = cols[j];
-                    double v = mapper.apply(matrix.get(i, k), i, j, k);
-                    matrix.set(i, k, v);
-                } catch (Throwable e) {
-                    throw new IllegalArgumentException(e);
-                }
+                final int k = cols[j];
+                data[offset + k] = mapper.applyAsDouble(data[offset + k], i, j, k);
             }
         }
         return this;
     }
 
-    /**
-     * @param mapper the mapper
-     * @param rows   the rows
-     */
-    public Matrix mapiRows(Function4<Double, Integer, Integer, Integer, Double> mapper, int... rows) {
-        int n = rows.length;
-        int m = matrix.getNumCols();
+    @Override
+    public Matrix mapiRowsAsDouble(DoubleIntIntIntToDoubleFunction mapper, int... rows) {
+        final int n = rows.length;
+        final int m = matrix.getNumCols();
+        final double[] data = matrix.getData();
         for (int i = 0; i < n; i++) {
-            int k = rows[i];
-            for (int j = 0; j < m; j++) {
-                try {
-                    double v = mapper.apply(matrix.get(k, j), i, j, k);
-                    matrix.set(k, j, v);
-                } catch (Throwable e) {
-                    throw new IllegalArgumentException(e);
-                }
+            final int k = rows[i];
+            for (int j = 0, idx = k * m; j < m; j++, idx++) {
+                data[idx] = mapper.applyAsDouble(data[idx], i, j, k);
             }
         }
         return this;
@@ -440,7 +464,7 @@ public class DDRMWrapper implements Matrix {
                 : String.format("mini between different martrices %dx%d, %dx%d ",
                 matrix.getNumRows(), matrix.getNumCols(),
                 other.getNumRows(), other.getNumCols());
-        return mapi((x, i, j) -> Math.min(x, other.get(i, j)));
+        return mapiAsDouble((x, i, j) -> Math.min(x, other.get(i, j)));
     }
 
     /**
@@ -463,16 +487,16 @@ public class DDRMWrapper implements Matrix {
                         : String.format("Invalid operation %dx%d * %dx%d",
                         matrix.getNumRows(), matrix.getNumCols(),
                         other.getNumRows(), other.getNumCols());
-                return mapi((v, i, j) -> v * other.get(0, j));
+                return mapiAsDouble((v, i, j) -> v * other.get(0, j));
             }
         } else if (other.getNumCols() == 1) {
             assert other.getNumRows() == matrix.getNumRows()
                     : String.format("Invalid operation %dx%d * %dx%d",
                     matrix.getNumRows(), matrix.getNumCols(),
                     other.getNumRows(), other.getNumCols());
-            return mapi((v, i, j) -> v * other.get(i, 0));
+            return mapiAsDouble((v, i, j) -> v * other.get(i, 0));
         } else {
-            CommonOps_DDRM.elementMult(matrix, ((DDRMWrapper) other).get());
+            CommonOps_DDRM.elementMult(matrix, toDDRM(other));
             return this;
         }
     }
@@ -527,6 +551,24 @@ public class DDRMWrapper implements Matrix {
         }
     }
 
+    @Override
+    public Matrix retainColsi(int... cols) {
+        final int n = matrix.getNumRows();
+        final int m = matrix.getNumCols();
+        final double[] data = matrix.getData();
+        // The retained columns move backward so no column is overwritten before being moved
+        for (int i = 0, idx = 0; i < n; i++) {
+            final int offset = i * m;
+            for (int j = 0; j < cols.length; j++, idx++) {
+                assert j == 0 || cols[j] > cols[j - 1]
+                        : String.format("columns must be increasing (%d <= %d)", cols[j], cols[j - 1]);
+                data[idx] = data[offset + cols[j]];
+            }
+        }
+        matrix.reshape(n, cols.length, false);
+        return this;
+    }
+
     /**
      * @param row   the row
      * @param col   the column
@@ -566,16 +608,16 @@ public class DDRMWrapper implements Matrix {
                         : String.format("Invalid operation %dx%d - %dx%d",
                         matrix.getNumRows(), matrix.getNumCols(),
                         other.getNumRows(), other.getNumCols());
-                return mapi((v, i, j) -> v - other.get(0, j));
+                return mapiAsDouble((v, i, j) -> v - other.get(0, j));
             }
         } else if (other.getNumCols() == 1) {
             assert other.getNumRows() == matrix.getNumRows()
                     : String.format("Invalid operation %dx%d - %dx%d",
                     matrix.getNumRows(), matrix.getNumCols(),
                     other.getNumRows(), other.getNumCols());
-            return mapi((v, i, j) -> v - other.get(i, 0));
+            return mapiAsDouble((v, i, j) -> v - other.get(i, 0));
         } else {
-            CommonOps_DDRM.subtractEquals(matrix, ((DDRMWrapper) other).get());
+            CommonOps_DDRM.subtractEquals(matrix, toDDRM(other));
             return this;
         }
     }
@@ -599,4 +641,10 @@ public class DDRMWrapper implements Matrix {
         CommonOps_DDRM.transpose(matrix);
         return this;
     }
+
+    @Override
+    public Matrix view(int startRow, int endRow, int startCol, int endCol, boolean writable) {
+        return MatrixView.create(matrix.getData(), matrix.getNumRows(), matrix.getNumCols(),
+                startRow, endRow, startCol, endCol, writable);
+    }
 }
@@ -48,7 +48,7 @@ public class DDRMWrapperBuilder implements MatrixBuilder {
         }
         final int n = matrices[0].getNumRows();
         for (Matrix mat : matrices) {
-            assert n == ((DDRMWrapper) mat).getMatrix().getNumRows();
+            assert n == mat.getNumRows();
         }
         final int m = Arrays.stream(matrices)
                 .mapToInt(Matrix::getNumCols)
@@ -106,7 +106,7 @@ public class DDRMWrapperBuilder implements MatrixBuilder {
         }
         final int m = matrices[0].getNumCols();
         for (Matrix mat : matrices) {
-            assert m == ((DDRMWrapper) mat).getMatrix().getNumCols();
+            assert m == mat.getNumCols();
         }
         final int n = Arrays.stream(matrices)
                 .mapToInt(Matrix::getNumRows)
@@ -0,0 +1,304 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compressed sparse row adjacency of the topology cells used to compute the diffusion flux.
+ * <p>
+ * The entries of cell c are the edges incident to c in the order of the edge list,
+ * each entry holds the from and to cells of the edge and the sign of the contribution
+ * (+1 if c is the from cell, -1 if c is the to cell).
+ * The flux of cell c for the resource i is
+ * <pre>
+ *     flux(i, c) = sum_k sign(k) (field(i, to(k)) - field(i, from(k))) alpha(i, from(k)) / scale
+ * </pre>
+ * accumulated in the edge order, so it is bit-identical to the sweep on the edge list.
+ * </p>
+ * <p>
+ * The flux of each cell is computed only by the owner of the cell, so the cells may be partitioned
+ * in bands computed in parallel on a fork join pool without synchronization and with results
+ * bit-identical to the serial computation.
+ * </p>
+ */
+public class DiffusionKernel {
+    /**
+     * Returns the diffusion kernel of a topology
+     *
+     * @param noCells the number of cells
+     * @param edges   the edges
+     * @param scale   the flux scale
+     */
+    public static DiffusionKernel create(int noCells, List<Edge> edges, double scale) {
+        requireNonNull(edges);
+        final int[] cellOffsets = new int[noCells + 1];
+        for (Edge edge : edges) {
+            cellOffsets[edge.getFrom() + 1]++;
+            cellOffsets[edge.getTo() + 1]++;
+        }
+        for (int i = 0; i < noCells; i++) {
+            cellOffsets[i + 1] += cellOffsets[i];
+        }
+        final int noEntries = cellOffsets[noCells];
+        final int[] fromCells = new int[noEntries];
+        final int[] toCells = new int[noEntries];
+        final double[] signs = new double[noEntries];
+        final int[] next = new int[noCells];
+        System.arraycopy(cellOffsets, 0, next, 0, noCells);
+        for (Edge edge : edges) {
+            final int from = edge.getFrom();
+            final int to = edge.getTo();
+            final int k0 = next[from]++;
+            fromCells[k0] = from;
+            toCells[k0] = to;
+            signs[k0] = 1;
+            final int k1 = next[to]++;
+            fromCells[k1] = from;
+            toCells[k1] = to;
+            signs[k1] = -1;
+        }
+        return new DiffusionKernel(cellOffsets, fromCells, toCells, signs, scale, null, new int[]{0, noCells});
+    }
+
+    private final int[] cellOffsets;
+    private final int[] fromCells;
+    private final int[] toCells;
+    private final double[] signs;
+    private final double scale;
+    private final ForkJoinPool pool;
+    private final int[] bandOffsets;
+
+    /**
+     * Creates the diffusion kernel
+     *
+     * @param cellOffsets the offsets of cell entries (noCells + 1)
+     * @param fromCells   the from cells of entries
+     * @param toCells     the to cells of entries
+     * @param signs       the signs of entries
+     * @param scale       the flux scale
+     * @param pool        the fork join pool or null for serial computation
+     * @param bandOffsets the first cell of each band and the number of cells (noBands + 1)
+     */
+    protected DiffusionKernel(int[] cellOffsets, int[] fromCells, int[] toCells, double[] signs, double scale,
+                              ForkJoinPool pool, int[] bandOffsets) {
+        this.cellOffsets = requireNonNull(cellOffsets);
+        this.fromCells = requireNonNull(fromCells);
+        this.toCells = requireNonNull(toCells);
+        this.signs = requireNonNull(signs);
+        this.scale = scale;
+        this.pool = pool;
+        this.bandOffsets = requireNonNull(bandOffsets);
+        assert bandOffsets.length >= 2
+                && bandOffsets[0] == 0
+                && bandOffsets[bandOffsets.length - 1] == cellOffsets.length - 1
+                : format("bands must cover the %d cells", cellOffsets.length - 1);
+        assert fromCells.length == cellOffsets[cellOffsets.length - 1]
+                && toCells.length == fromCells.length
+                && signs.length == fromCells.length
+                : format("entries must have %d elements (%d, %d, %d)",
+                cellOffsets[cellOffsets.length - 1],
+                fromCells.length, toCells.length, signs.length);
+    }
+
+    /**
+     * Returns the flux of a field (noResources x noCells)
+     *
+     * @param field the field (noResources x noCells)
+     * @param alpha the diffusion coefficients (noResources x noCells)
+     */
+    public Matrix flux(Matrix field, Matrix alpha) {
+        requireNonNull(field);
+        requireNonNull(alpha);
+        final int n = field.getNumRows();
+        final int m = field.getNumCols();
+        assert m == getNoCells()
+                : format("field must be n x %d (%d x %d)", getNoCells(), n, m);
+        assert alpha.getNumRows() == n && alpha.getNumCols() == m
+                : format("alpha must be %d x %d (%d x %d)", n, m, alpha.getNumRows(), alpha.getNumCols());
+        final Matrix fieldValues = field.eval();
+        final Matrix alphaValues = alpha.eval();
+        final Matrix result = Matrix.scratch(n, m);
+        final int noBands = getNoBands();
+        if (pool == null || noBands <= 1) {
+            flux(fieldValues, alphaValues, result, 0, m);
+        } else {
+            pool.invoke(new FluxTask(fieldValues, alphaValues, result, 0, noBands));
+        }
+        return result;
+    }
+
+    /**
+     * Computes the flux of a range of cells
+     *
+     * @param field    the field (noResources x noCells)
+     * @param alpha    the diffusion coefficients (noResources x noCells)
+     * @param result   the flux (noResources x noCells)
+     * @param fromCell the first cell
+     * @param toCell   the last cell (exclusive)
+     */
+    private void flux(Matrix field, Matrix alpha, Matrix result, int fromCell, int toCell) {
+        final int n = field.getNumRows();
+        for (int i = 0; i < n; i++) {
+            for (int c = fromCell; c < toCell; c++) {
+                double acc = 0;
+                for (int k = cellOffsets[c]; k < cellOffsets[c + 1]; k++) {
+                    final int from = fromCells[k];
+                    acc += signs[k] * (field.get(i, toCells[k]) - field.get(i, from)) * alpha.get(i, from);
+                }
+                result.set(i, c, acc / scale);
+            }
+        }
+    }
+
+    /**
+     * Returns the first cell of each band and the number of cells (noBands + 1)
+     */
+    public int[] getBandOffsets() {
+        return bandOffsets;
+    }
+
+    /**
+     * Returns the degree of a cell (number of incident edges)
+     *
+     * @param cell the cell index
+     */
+    public int getDegree(int cell) {
+        return cellOffsets[cell + 1] - cellOffsets[cell];
+    }
+
+    /**
+     * Returns the number of bands
+     */
+    public int getNoBands() {
+        return bandOffsets.length - 1;
+    }
+
+    /**
+     * Returns the number of entries
+     */
+    public int getNoEntries() {
+        return fromCells.length;
+    }
+
+    /**
+     * Returns the number of cells
+     */
+    public int getNoCells() {
+        return cellOffsets.length - 1;
+    }
+
+    /**
+     * Returns the flux scale
+     */
+    public double getScale() {
+        return scale;
+    }
+
+    /**
+     * Computes y = K x where K is the graph laplacian of the cells (degrees - adjacency)
+     * <pre>
+     *     y(c) = sum_n (x(c) - x(n))
+     * </pre>
+     * for each edge between c and n, so flux(i, c) = -alpha(i) (K field(i))(c) / scale
+     * when alpha is uniform on cells
+     *
+     * @param x the cell values (noCells)
+     * @param y the result (noCells)
+     */
+    public void laplacian(double[] x, double[] y) {
+        final int m = getNoCells();
+        for (int c = 0; c < m; c++) {
+            final double xc = x[c];
+            double acc = 0;
+            for (int k = cellOffsets[c]; k < cellOffsets[c + 1]; k++) {
+                final int other = fromCells[k] == c ? toCells[k] : fromCells[k];
+                acc += xc - x[other];
+            }
+            y[c] = acc;
+        }
+    }
+
+    /**
+     * Returns the kernel computing the flux of bands of cells in parallel
+     *
+     * @param pool        the fork join pool
+     * @param bandOffsets the first cell of each band and the number of cells (noBands + 1)
+     */
+    public DiffusionKernel parallel(ForkJoinPool pool, int[] bandOffsets) {
+        return new DiffusionKernel(cellOffsets, fromCells, toCells, signs, scale, requireNonNull(pool), bandOffsets);
+    }
+
+    /**
+     * Computes the flux of a range of bands splitting it in halves
+     */
+    private class FluxTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Matrix field;
+        private final Matrix alpha;
+        private final Matrix result;
+        private final int fromBand;
+        private final int toBand;
+
+        /**
+         * Creates the task
+         *
+         * @param field    the field (noResources x noCells)
+         * @param alpha    the diffusion coefficients (noResources x noCells)
+         * @param result   the flux (noResources x noCells)
+         * @param fromBand the first band
+         * @param toBand   the last band (exclusive)
+         */
+        FluxTask(Matrix field, Matrix alpha, Matrix result, int fromBand, int toBand) {
+            this.field = field;
+            this.alpha = alpha;
+            this.result = result;
+            this.fromBand = fromBand;
+            this.toBand = toBand;
+        }
+
+        @Override
+        protected void compute() {
+            if (toBand - fromBand <= 1) {
+                flux(field, alpha, result, bandOffsets[fromBand], bandOffsets[toBand]);
+            } else {
+                final int mid = (fromBand + toBand) >>> 1;
+                invokeAll(new FluxTask(field, alpha, result, fromBand, mid),
+                        new FluxTask(field, alpha, result, mid, toBand));
+            }
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import static java.lang.String.format;
+
+/**
+ * Integrates the diffusion of the environment resources over a time interval
+ */
+public interface DiffusionSolver {
+    /**
+     * The explicit forward Euler method
+     */
+    String EXPLICIT = "explicit";
+    /**
+     * The implicit backward Euler method
+     */
+    String BACKWARD_EULER = "backwardEuler";
+    /**
+     * The implicit Crank-Nicolson method
+     */
+    String CRANK_NICOLSON = "crankNicolson";
+    /**
+     * The default relative residual tolerance of implicit methods
+     */
+    double DEFAULT_TOLERANCE = 1e-9;
+    /**
+     * The default maximum number of iterations of implicit methods
+     */
+    int DEFAULT_MAX_ITERATIONS = 100;
+
+    /**
+     * Returns the diffusion solver of a method
+     *
+     * @param method        the method (explicit, backwardEuler, crankNicolson)
+     * @param topology      the topology
+     * @param diffusion     the diffusion coefficients (noResources x 1)
+     * @param tolerance     the relative residual tolerance of implicit methods
+     * @param maxIterations the maximum number of iterations of implicit methods
+     */
+    static DiffusionSolver create(String method, Topology topology, Matrix diffusion, double tolerance, int maxIterations) {
+        switch (method) {
+            case EXPLICIT:
+                return ExplicitDiffusion.create(topology, diffusion);
+            case BACKWARD_EULER:
+                return ImplicitDiffusion.create(topology.getDiffusionKernel(), diffusion, 1, tolerance, maxIterations);
+            case CRANK_NICOLSON:
+                return ImplicitDiffusion.create(topology.getDiffusionKernel(), diffusion, 0.5, tolerance, maxIterations);
+            default:
+                throw new IllegalArgumentException(format("Unknown diffusion method \"%s\"", method));
+        }
+    }
+
+    /**
+     * Returns the resources after the diffusion (changed in place)
+     *
+     * @param resources the environment resources (noResources x noCells)
+     * @param dt        the time interval
+     */
+    Matrix diffuse(Matrix resources, double dt);
+}
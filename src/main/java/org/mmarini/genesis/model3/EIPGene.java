@@ -41,7 +41,20 @@ public interface EIPGene {
      * @param areas        the areas of interchanges
      * @param masses       the molecular masses
      */
-    Population execute(Population population, Matrix signals, double dt, Matrix envResources, Matrix areas, Matrix masses);
+    default Population execute(Population population, Matrix signals, double dt, Matrix envResources, Matrix areas, Matrix masses) {
+        return execute(population, signals, dt, envResources, envResources, areas, masses);
+    }
+
+    /**
+     * @param population   the population
+     * @param signals      the gene index
+     * @param dt           the time interval
+     * @param envResources the environment resources read by the process
+     * @param envChanges   the environment resources changed by the process
+     * @param areas        the areas of interchanges
+     * @param masses       the molecular masses
+     */
+    Population execute(Population population, Matrix signals, double dt, Matrix envResources, Matrix envChanges, Matrix areas, Matrix masses);
 
     /**
      * Returns the number of signal of the gene
@@ -0,0 +1,297 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Single producer, multiple consumers ring buffer of events.
+ * <p>
+ * The producer publishes the events in preallocated slots and never waits for the consumers.
+ * Each subscription consumes the events in its own executor at its own rate by a delivery policy,
+ * a subscription lagging more than the ring capacity skips the overwritten events.
+ * </p>
+ *
+ * @param <T> the event type
+ */
+public class EventRing<T> {
+
+    /**
+     * Returns the ring buffer
+     *
+     * @param capacity the number of slots (power of 2)
+     * @param <T>      the event type
+     */
+    public static <T> EventRing<T> create(int capacity) {
+        assert capacity >= 2 && Integer.bitCount(capacity) == 1 :
+                format("capacity must be a power of 2 (%d)", capacity);
+        return new EventRing<>(capacity);
+    }
+
+    private final Object[] slots;
+    private final int mask;
+    private final AtomicLong cursor;
+    private final List<Subscription<T>> subscriptions;
+
+    /**
+     * Creates the ring buffer
+     *
+     * @param capacity the number of slots (power of 2)
+     */
+    protected EventRing(int capacity) {
+        this.slots = new Object[capacity];
+        this.mask = capacity - 1;
+        this.cursor = new AtomicLong(-1);
+        this.subscriptions = new CopyOnWriteArrayList<>();
+    }
+
+    /**
+     * Returns the number of slots
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Returns the sequence of last published event (-1 if none)
+     */
+    public long getCursor() {
+        return cursor.get();
+    }
+
+    /**
+     * Returns true if any subscription is active
+     */
+    public boolean hasSubscriptions() {
+        return !subscriptions.isEmpty();
+    }
+
+    /**
+     * Publishes an event and signals the subscriptions.
+     * <p>
+     * Must be called only by the producer thread.
+     * </p>
+     *
+     * @param event the event
+     */
+    public void publish(T event) {
+        requireNonNull(event);
+        long seq = cursor.get() + 1;
+        slots[(int) (seq & mask)] = event;
+        cursor.set(seq);
+        for (Subscription<T> subscription : subscriptions) {
+            subscription.signal();
+        }
+    }
+
+    /**
+     * Returns the subscription consuming the events
+     *
+     * @param policy   the delivery policy
+     * @param executor the executor of consumer
+     * @param consumer the consumer
+     */
+    public Subscription<T> subscribe(Policy policy, Executor executor, Consumer<T> consumer) {
+        Subscription<T> result = new Subscription<>(this, policy, executor, consumer, cursor.get() + 1);
+        subscriptions.add(result);
+        return result;
+    }
+
+    /**
+     * The delivery policy of a subscription
+     */
+    public static class Policy {
+        private static final Policy EVERY = new Policy(1, false);
+        private static final Policy LATEST = new Policy(1, true);
+
+        /**
+         * Returns the policy delivering every event
+         */
+        public static Policy every() {
+            return EVERY;
+        }
+
+        /**
+         * Returns the policy delivering an event every n events
+         *
+         * @param n the number of events
+         */
+        public static Policy everyNth(int n) {
+            assert n > 0 : format("n must be positive (%d)", n);
+            return n == 1 ? EVERY : new Policy(n, false);
+        }
+
+        /**
+         * Returns the policy delivering only the latest published event
+         */
+        public static Policy latest() {
+            return LATEST;
+        }
+
+        private final int stride;
+        private final boolean latest;
+
+        /**
+         * Creates the policy
+         *
+         * @param stride the number of events between deliveries
+         * @param latest true if only the latest events are delivered
+         */
+        protected Policy(int stride, boolean latest) {
+            this.stride = stride;
+            this.latest = latest;
+        }
+
+        /**
+         * Returns true if the event is delivered
+         *
+         * @param seq the event sequence
+         */
+        boolean accepts(long seq) {
+            return seq % stride == 0;
+        }
+
+        /**
+         * Returns true if only the latest event is delivered
+         */
+        public boolean isLatest() {
+            return latest;
+        }
+    }
+
+    /**
+     * A subscription to the events
+     *
+     * @param <T> the event type
+     */
+    public static class Subscription<T> {
+        private final EventRing<T> ring;
+        private final Policy policy;
+        private final Executor executor;
+        private final Consumer<T> consumer;
+        private final AtomicBoolean scheduled;
+        private volatile boolean cancelled;
+        private volatile long skipped;
+        private long next;
+
+        /**
+         * Creates the subscription
+         *
+         * @param ring     the ring buffer
+         * @param policy   the delivery policy
+         * @param executor the executor of consumer
+         * @param consumer the consumer
+         * @param next     the sequence of first event
+         */
+        protected Subscription(EventRing<T> ring, Policy policy, Executor executor, Consumer<T> consumer, long next) {
+            this.ring = requireNonNull(ring);
+            this.policy = requireNonNull(policy);
+            this.executor = requireNonNull(executor);
+            this.consumer = requireNonNull(consumer);
+            this.scheduled = new AtomicBoolean();
+            this.next = next;
+        }
+
+        /**
+         * Cancels the subscription
+         */
+        public void cancel() {
+            cancelled = true;
+            ring.subscriptions.remove(this);
+        }
+
+        /**
+         * Consumes the published events till the cursor.
+         * An error of the consumer is thrown to the executor and the following events are consumed
+         * at the next signal
+         */
+        @SuppressWarnings("unchecked")
+        private void drain() {
+            for (; ; ) {
+                try {
+                    long last = ring.cursor.get();
+                    while (!cancelled && next <= last) {
+                        // The slot next to the cursor may be under writing
+                        long first = policy.isLatest() ? last : Math.max(next, last - ring.mask + 1);
+                        skipped += first - next;
+                        T event = (T) ring.slots[(int) (first & ring.mask)];
+                        last = ring.cursor.get();
+                        if (last - first >= ring.mask) {
+                            // Overwritten by the producer while reading
+                            next = first;
+                            continue;
+                        }
+                        next = first + 1;
+                        if (policy.accepts(first)) {
+                            consumer.accept(event);
+                        }
+                    }
+                } finally {
+                    scheduled.set(false);
+                }
+                // Reschedules the events published after the last check
+                if (cancelled || ring.cursor.get() < next || !scheduled.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Returns the number of events skipped by the overrun or by the latest policy
+         */
+        public long getSkipped() {
+            return skipped;
+        }
+
+        /**
+         * Returns true if the subscription has been cancelled
+         */
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Schedules the drain of events if not already scheduled
+         */
+        void signal() {
+            if (!cancelled && scheduled.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+    }
+}
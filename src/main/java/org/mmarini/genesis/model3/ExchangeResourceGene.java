@@ -58,11 +58,11 @@ public class ExchangeResourceGene implements EIPGene {
                               final Matrix signals,
                               final double dt,
                               final Matrix envResources,
+                              final Matrix envChanges,
                               final Matrix areas,
                               final Matrix masses) {
-        final Matrix signals1 = signals.copy();
-        final Matrix qt = signals1.muli(logRates).expi().muli(minLevels);
-        return population.exchangeResources(dt, qt, envResources, areas, masses, rates);
+        final Matrix qt = signals.lazy().muli(logRates).expi().muli(minLevels);
+        return population.exchangeResources(dt, qt, envResources, envChanges, areas, masses, rates);
     }
 
     /**
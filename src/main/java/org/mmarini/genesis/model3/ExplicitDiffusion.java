@@ -0,0 +1,72 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import static java.util.Objects.requireNonNull;
+import static org.mmarini.genesis.model3.Matrix.ones;
+
+/**
+ * Explicit forward Euler diffusion
+ * <pre>
+ *     q(t + dt) = q(t) + flux(q(t)) dt
+ * </pre>
+ * It is stable only for small time intervals.
+ */
+public class ExplicitDiffusion implements DiffusionSolver {
+    /**
+     * Returns the explicit diffusion
+     *
+     * @param topology  the topology
+     * @param diffusion the diffusion coefficients (noResources x 1)
+     */
+    public static ExplicitDiffusion create(Topology topology, Matrix diffusion) {
+        return new ExplicitDiffusion(topology, ones(1, topology.getNoCells()).prod(diffusion));
+    }
+
+    private final Topology topology;
+    private final Matrix alphas;
+
+    /**
+     * Creates the explicit diffusion
+     *
+     * @param topology the topology
+     * @param alphas   the diffusion coefficients by cell (noResources x noCells)
+     */
+    protected ExplicitDiffusion(Topology topology, Matrix alphas) {
+        this.topology = requireNonNull(topology);
+        this.alphas = requireNonNull(alphas);
+    }
+
+    @Override
+    public Matrix diffuse(Matrix resources, double dt) {
+        final Matrix ds = SimEngine.differential(resources, dt, alphas, topology);
+        return resources.addi(ds);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * The fused species kernel walks each individual of a population once per pass
+ * applying the individual processes to the resources of the individual loaded in a local array
+ * instead of computing whole matrices for each process.
+ * The first pass maintains the individuals and tests their survival,
+ * the second pass applies the photo processes and the reaction processes
+ * when the total surface of individuals by cell is known.
+ * The results are the same of the maintain, survive, photo and reaction phases of the simulation engine.
+ */
+public class FusedSpeciesKernel {
+    /**
+     * Returns the fused species kernel
+     *
+     * @param molecularMasses the molecular masses (noResources x 1)
+     * @param energyRef       the energy reference index
+     */
+    public static FusedSpeciesKernel create(final Matrix molecularMasses, final int energyRef) {
+        return new FusedSpeciesKernel(molecularMasses, energyRef);
+    }
+
+    private final Matrix molecularMasses;
+    private final double[] masses;
+    private final int energyRef;
+
+    /**
+     * Creates the fused species kernel
+     *
+     * @param molecularMasses the molecular masses (noResources x 1)
+     * @param energyRef       the energy reference index
+     */
+    protected FusedSpeciesKernel(final Matrix molecularMasses, final int energyRef) {
+        this.molecularMasses = requireNonNull(molecularMasses);
+        this.energyRef = energyRef;
+        this.masses = new double[molecularMasses.getNumRows()];
+        for (int i = 0; i < masses.length; i++) {
+            masses[i] = molecularMasses.get(i, 0);
+        }
+        assert energyRef >= 0 && energyRef < masses.length
+                : String.format("energyRef must be in 0-%d range", masses.length);
+    }
+
+    /**
+     * Returns the mass of individual
+     *
+     * @param resources the resources of individual
+     */
+    private double mass(final double[] resources) {
+        double result = 0;
+        for (int i = 0; i < resources.length; i++) {
+            result += resources[i] * masses[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the population of surviving individuals after maintenance
+     * (see {@link Population#maintain(double, int, Matrix)} and {@link Population#survive(int, Matrix, Matrix)}).
+     * The resources of dead individuals are added to the environment changes
+     *
+     * @param population the population
+     * @param dt         the time interval
+     * @param envChanges the environment resources changes (noResources x noCells)
+     */
+    public Population maintainAndSurvive(final Population population, final double dt, final Matrix envChanges) {
+        final Matrix resources = population.getResources();
+        final Species species = population.getSpecies();
+        final int[] locations = population.getLocations();
+        final int noResources = resources.getNumRows();
+        final int n = resources.getNumCols();
+        final double rate = species.getBasalMetabolicRate();
+        final double survivingMass = species.getSurvivingMass();
+        final double[] individual = new double[noResources];
+        final int[] surviving = new int[n];
+        int noSurviving = 0;
+        for (int j = 0; j < n; j++) {
+            for (int i = 0; i < noResources; i++) {
+                individual[i] = resources.get(i, j);
+            }
+            // Consumes the basal metabolic energy
+            final double reqEnergy = mass(individual) * rate * dt;
+            final double energy = Math.max(individual[energyRef] - reqEnergy, 0);
+            individual[energyRef] = energy;
+            resources.set(energyRef, j, energy);
+            // Tests the survival
+            if (mass(individual) < survivingMass || energy <= 0) {
+                final int location = locations[j];
+                for (int i = 0; i < noResources; i++) {
+                    envChanges.set(i, location, envChanges.get(i, location) + individual[i]);
+                }
+            } else {
+                surviving[noSurviving++] = j;
+            }
+        }
+        population.invalidate();
+        return noSurviving == n
+                ? population
+                : population.retain(Arrays.copyOf(surviving, noSurviving));
+    }
+
+    /**
+     * Returns the population after the photo processes and the reaction processes
+     * (see {@link Population#processPhotos(double, Matrix, Matrix)} and {@link Population#processReactions(double)})
+     *
+     * @param population   the population
+     * @param dt           the time interval
+     * @param totalSurface the total surface of individuals by cell (1 x noCells)
+     */
+    public Population processPhotosAndReactions(final Population population, final double dt, final Matrix totalSurface) {
+        final List<? extends PhotoReactionProcess> photoProcesses = population.getSpecies().getPhotoProcesses();
+        final List<? extends ReactionProcess> reactionProcesses = population.getSpecies().getReactionProcesses();
+        final List<Matrix> photoTargetLevels = population.getPhotoTargetLevels();
+        final List<Matrix> reactionTargetLevels = population.getReactionTargetLevels();
+        final int noPhotos = photoProcesses.size();
+        final int noReactions = reactionProcesses.size();
+        if (noPhotos + noReactions == 0) {
+            return population;
+        }
+        final Matrix resources = population.getResources();
+        final int[] locations = population.getLocations();
+        final Matrix surfaces = noPhotos > 0 ? population.getIndividualSurface(molecularMasses) : null;
+        final int noResources = resources.getNumRows();
+        final int n = resources.getNumCols();
+        final double[] individual = new double[noResources];
+        for (int j = 0; j < n; j++) {
+            for (int i = 0; i < noResources; i++) {
+                individual[i] = resources.get(i, j);
+            }
+            if (noPhotos > 0) {
+                final double distribution = surfaces.get(0, j) / totalSurface.get(0, locations[j]);
+                for (int k = 0; k < noPhotos; k++) {
+                    photoProcesses.get(k).apply(individual, photoTargetLevels.get(k).get(0, j), dt, distribution);
+                }
+            }
+            for (int k = 0; k < noReactions; k++) {
+                reactionProcesses.get(k).apply(individual, reactionTargetLevels.get(k).get(0, j), dt);
+            }
+            for (int i = 0; i < noResources; i++) {
+                resources.set(i, j, individual[i]);
+            }
+        }
+        return population.invalidate();
+    }
+}
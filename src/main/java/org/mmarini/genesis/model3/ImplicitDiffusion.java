@@ -0,0 +1,199 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.Arrays;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Implicit theta-method diffusion solved by Jacobi preconditioned conjugate gradient.
+ * <p>
+ * For each resource i with diffusion coefficient D(i) the new levels are the solution of
+ * <pre>
+ *     (I + theta dt k K) q(t + dt) = (I - (1 - theta) dt k K) q(t)
+ * </pre>
+ * where K is the graph laplacian of the topology and k = D(i) / scale.
+ * theta = 1 is the backward Euler method (unconditionally stable and positive),
+ * theta = 0.5 is the Crank-Nicolson method (unconditionally stable, second order in time).
+ * The iteration stops when the residual is less than tolerance times the right hand side or
+ * after the maximum number of iterations, in that case the last approximation is used.
+ * </p>
+ */
+public class ImplicitDiffusion implements DiffusionSolver {
+    /**
+     * Returns the implicit diffusion
+     *
+     * @param kernel        the diffusion kernel
+     * @param diffusion     the diffusion coefficients (noResources x 1)
+     * @param theta         the implicit weight (0.5 Crank-Nicolson, 1 backward Euler)
+     * @param tolerance     the relative residual tolerance
+     * @param maxIterations the maximum number of iterations
+     */
+    public static ImplicitDiffusion create(DiffusionKernel kernel, Matrix diffusion, double theta, double tolerance, int maxIterations) {
+        return new ImplicitDiffusion(kernel, diffusion, theta, tolerance, maxIterations);
+    }
+
+    /**
+     * Returns the scalar product of two vectors
+     *
+     * @param a the first vector
+     * @param b the second vector
+     */
+    private static double dot(double[] a, double[] b) {
+        double result = 0;
+        for (int i = 0; i < a.length; i++) {
+            result += a[i] * b[i];
+        }
+        return result;
+    }
+
+    private final DiffusionKernel kernel;
+    private final Matrix diffusion;
+    private final double theta;
+    private final double tolerance;
+    private final int maxIterations;
+
+    /**
+     * Creates the implicit diffusion
+     *
+     * @param kernel        the diffusion kernel
+     * @param diffusion     the diffusion coefficients (noResources x 1)
+     * @param theta         the implicit weight (0.5 Crank-Nicolson, 1 backward Euler)
+     * @param tolerance     the relative residual tolerance
+     * @param maxIterations the maximum number of iterations
+     */
+    protected ImplicitDiffusion(DiffusionKernel kernel, Matrix diffusion, double theta, double tolerance, int maxIterations) {
+        this.kernel = requireNonNull(kernel);
+        this.diffusion = requireNonNull(diffusion);
+        this.theta = theta;
+        this.tolerance = tolerance;
+        this.maxIterations = maxIterations;
+        assert diffusion.getNumCols() == 1
+                : format("diffusion must be (n x 1) (%d x %d)", diffusion.getNumRows(), diffusion.getNumCols());
+        assert theta > 0 && theta <= 1
+                : format("theta must be in (0, 1] range (%g)", theta);
+        assert tolerance > 0
+                : format("tolerance must be positive (%g)", tolerance);
+        assert maxIterations > 0
+                : format("maxIterations must be positive (%d)", maxIterations);
+    }
+
+    @Override
+    public Matrix diffuse(Matrix resources, double dt) {
+        final int n = resources.getNumRows();
+        final int m = kernel.getNoCells();
+        assert n == diffusion.getNumRows() && resources.getNumCols() == m
+                : format("resources must be %d x %d (%d x %d)",
+                diffusion.getNumRows(), m, resources.getNumRows(), resources.getNumCols());
+        final double[] x = new double[m];
+        final double[] b = new double[m];
+        final double[] r = new double[m];
+        final double[] z = new double[m];
+        final double[] p = new double[m];
+        final double[] ap = new double[m];
+        for (int i = 0; i < n; i++) {
+            final double k = diffusion.get(i, 0) * dt / kernel.getScale();
+            if (k == 0) {
+                continue;
+            }
+            for (int c = 0; c < m; c++) {
+                x[c] = resources.get(i, c);
+            }
+            // Computes the right hand side b = (I - (1 - theta) dt k K) q
+            final double explicit = (1 - theta) * k;
+            if (explicit != 0) {
+                kernel.laplacian(x, b);
+                for (int c = 0; c < m; c++) {
+                    b[c] = x[c] - explicit * b[c];
+                }
+            } else {
+                System.arraycopy(x, 0, b, 0, m);
+            }
+            solve(theta * k, b, x, r, z, p, ap);
+            resources.assignRowAsDouble(i, (v, c) -> x[c]);
+        }
+        return resources;
+    }
+
+    /**
+     * Returns the number of iterations to solve (I + a K) x = b
+     * by Jacobi preconditioned conjugate gradient
+     *
+     * @param a  the laplacian factor
+     * @param b  the right hand side
+     * @param x  the initial approximation and the solution
+     * @param r  the residual buffer
+     * @param z  the preconditioned residual buffer
+     * @param p  the search direction buffer
+     * @param ap the product buffer
+     */
+    int solve(double a, double[] b, double[] x, double[] r, double[] z, double[] p, double[] ap) {
+        final int m = b.length;
+        final double bNorm = Math.sqrt(dot(b, b));
+        if (bNorm == 0) {
+            Arrays.fill(x, 0);
+            return 0;
+        }
+        final double threshold = tolerance * bNorm;
+        // r = b - A x
+        kernel.laplacian(x, ap);
+        for (int c = 0; c < m; c++) {
+            r[c] = b[c] - x[c] - a * ap[c];
+            z[c] = r[c] / (1 + a * kernel.getDegree(c));
+            p[c] = z[c];
+        }
+        double rz = dot(r, z);
+        for (int it = 0; it < maxIterations; it++) {
+            if (Math.sqrt(dot(r, r)) <= threshold) {
+                return it;
+            }
+            // ap = A p
+            kernel.laplacian(p, ap);
+            for (int c = 0; c < m; c++) {
+                ap[c] = p[c] + a * ap[c];
+            }
+            final double alpha = rz / dot(p, ap);
+            for (int c = 0; c < m; c++) {
+                x[c] += alpha * p[c];
+                r[c] -= alpha * ap[c];
+                z[c] = r[c] / (1 + a * kernel.getDegree(c));
+            }
+            final double rzNew = dot(r, z);
+            final double beta = rzNew / rz;
+            for (int c = 0; c < m; c++) {
+                p[c] = z[c] + beta * p[c];
+            }
+            rz = rzNew;
+        }
+        return maxIterations;
+    }
+}
@@ -0,0 +1,844 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.Arrays;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Lazy expression of element-wise operations on a source matrix.
+ * <p>
+ * The element-wise operations are recorded and evaluated block by block of rows
+ * when the value is required by a reduction, an extraction or by calling eval().
+ * Each operation is applied to the block by a loop specialised on the operation and
+ * on the operand shape over the backing arrays of the matrices.
+ * The reductions (min, max, minCols, sumCols) are computed directly from the fused
+ * values of each block without materializing the expression.
+ * The in-place expression writes the result in the source matrix, otherwise
+ * the result is written in a new matrix and the source is left unchanged.
+ * The source and the operand matrices must not be changed before the evaluation.
+ * </p>
+ */
+public class LazyMatrix implements Matrix {
+    private static final int ADD = 0;
+    private static final int SUB = 1;
+    private static final int MUL = 2;
+    private static final int DIV = 3;
+    private static final int MIN = 4;
+    private static final int MAX = 5;
+    private static final int POW = 6;
+    private static final int NEG = 7;
+    private static final int EXP = 8;
+    private static final int EXPM1 = 9;
+    private static final int LOG = 10;
+    private static final int LT = 11;
+    private static final int MAP = 12;
+
+    private static final int SCALAR = 0;
+    private static final int ROW = 1;
+    private static final int COLUMN = 2;
+    private static final int FULL = 3;
+
+    private static final int INITIAL_CAPACITY = 8;
+    private static final int BLOCK_SIZE = 1024;
+
+    /**
+     * Applies an operation between the values and an array of operands
+     *
+     * @param code    the operation code
+     * @param values  the values
+     * @param from    the index of the first value
+     * @param to      the index after the last value
+     * @param operand the operands
+     * @param delta   the offset of the operand index from the value index
+     */
+    private static void applyArray(int code, double[] values, int from, int to, double[] operand, int delta) {
+        switch (code) {
+            case ADD:
+                for (int i = from; i < to; i++) {
+                    values[i] += operand[i + delta];
+                }
+                break;
+            case SUB:
+                for (int i = from; i < to; i++) {
+                    values[i] -= operand[i + delta];
+                }
+                break;
+            case MUL:
+                for (int i = from; i < to; i++) {
+                    values[i] *= operand[i + delta];
+                }
+                break;
+            case DIV:
+                for (int i = from; i < to; i++) {
+                    values[i] /= operand[i + delta];
+                }
+                break;
+            case MIN:
+                for (int i = from; i < to; i++) {
+                    values[i] = Math.min(values[i], operand[i + delta]);
+                }
+                break;
+            default:
+                for (int i = from; i < to; i++) {
+                    values[i] = Math.max(values[i], operand[i + delta]);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Applies an operation between the values and a scalar operand
+     *
+     * @param code    the operation code
+     * @param values  the values
+     * @param from    the index of the first value
+     * @param to      the index after the last value
+     * @param operand the operand
+     */
+    private static void applyScalar(int code, double[] values, int from, int to, double operand) {
+        switch (code) {
+            case ADD:
+                for (int i = from; i < to; i++) {
+                    values[i] += operand;
+                }
+                break;
+            case SUB:
+                for (int i = from; i < to; i++) {
+                    values[i] -= operand;
+                }
+                break;
+            case MUL:
+                for (int i = from; i < to; i++) {
+                    values[i] *= operand;
+                }
+                break;
+            case DIV:
+                for (int i = from; i < to; i++) {
+                    values[i] /= operand;
+                }
+                break;
+            case MIN:
+                for (int i = from; i < to; i++) {
+                    values[i] = Math.min(values[i], operand);
+                }
+                break;
+            default:
+                for (int i = from; i < to; i++) {
+                    values[i] = Math.max(values[i], operand);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Returns the lazy expression of a matrix
+     *
+     * @param source  the source matrix
+     * @param inPlace true if the result is written in the source matrix
+     */
+    public static LazyMatrix create(Matrix source, boolean inPlace) {
+        return new LazyMatrix(source, inPlace);
+    }
+
+    /**
+     * Returns the row-major backing data of a matrix or null if the matrix has no backing array
+     *
+     * @param matrix the matrix
+     */
+    private static double[] dataOf(Matrix matrix) {
+        if (matrix instanceof ArrayMatrix) {
+            return ((ArrayMatrix) matrix).getData();
+        }
+        if (matrix instanceof DDRMWrapper) {
+            return ((DDRMWrapper) matrix).getMatrix().getData();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the row-major data of an operand matrix, copying the values if the matrix has no backing array
+     *
+     * @param matrix the operand matrix
+     */
+    private static double[] toData(Matrix matrix) {
+        final double[] data = dataOf(matrix);
+        if (data != null) {
+            return data;
+        }
+        final int n = matrix.getNumRows();
+        final int m = matrix.getNumCols();
+        final double[] result = new double[n * m];
+        for (int i = 0, idx = 0; i < n; i++) {
+            for (int j = 0; j < m; j++, idx++) {
+                result[idx] = matrix.get(i, j);
+            }
+        }
+        return result;
+    }
+
+    private Matrix source;
+    private boolean inPlace;
+    private int noOps;
+    private int[] codes;
+    private int[] modes;
+    private double[] scalars;
+    private double[][] operands;
+    private DoubleUnaryOperator[] mappers;
+
+    /**
+     * Creates the lazy expression
+     *
+     * @param source  the source matrix
+     * @param inPlace true if the result is written in the source matrix
+     */
+    protected LazyMatrix(Matrix source, boolean inPlace) {
+        this.source = requireNonNull(source).eval();
+        this.inPlace = inPlace;
+        this.codes = new int[INITIAL_CAPACITY];
+        this.modes = new int[INITIAL_CAPACITY];
+        this.scalars = new double[INITIAL_CAPACITY];
+        this.operands = new double[INITIAL_CAPACITY][];
+        this.mappers = new DoubleUnaryOperator[INITIAL_CAPACITY];
+    }
+
+    @Override
+    public Matrix add(Matrix other) {
+        return materialize().add(other);
+    }
+
+    @Override
+    public Matrix addi(double other) {
+        return push(ADD, other);
+    }
+
+    @Override
+    public Matrix addi(Matrix other) {
+        return push(ADD, other);
+    }
+
+    /**
+     * Applies the fused operations to the values of a block of rows
+     *
+     * @param values the row-major values of the block
+     * @param offset the index of the first value of the block
+     * @param row0   the first row of the block
+     * @param row1   the row after the last row of the block
+     */
+    private void apply(double[] values, int offset, int row0, int row1) {
+        final int m = getNumCols();
+        final int end = offset + (row1 - row0) * m;
+        for (int k = 0; k < noOps; k++) {
+            final int code = codes[k];
+            switch (code) {
+                case POW: {
+                    final double exp = scalars[k];
+                    for (int i = offset; i < end; i++) {
+                        values[i] = Math.pow(values[i], exp);
+                    }
+                    break;
+                }
+                case NEG:
+                    for (int i = offset; i < end; i++) {
+                        values[i] = -values[i];
+                    }
+                    break;
+                case EXP:
+                    for (int i = offset; i < end; i++) {
+                        values[i] = Math.exp(values[i]);
+                    }
+                    break;
+                case EXPM1:
+                    for (int i = offset; i < end; i++) {
+                        values[i] = Math.expm1(values[i]);
+                    }
+                    break;
+                case LOG:
+                    for (int i = offset; i < end; i++) {
+                        values[i] = Math.log(values[i]);
+                    }
+                    break;
+                case LT:
+                    for (int i = offset; i < end; i++) {
+                        values[i] = values[i] < 0.0 ? 1.0 : 0.0;
+                    }
+                    break;
+                case MAP: {
+                    final DoubleUnaryOperator mapper = mappers[k];
+                    for (int i = offset; i < end; i++) {
+                        values[i] = mapper.applyAsDouble(values[i]);
+                    }
+                    break;
+                }
+                default:
+                    switch (modes[k]) {
+                        case ROW:
+                            for (int from = offset; from < end; from += m) {
+                                applyArray(code, values, from, from + m, operands[k], -from);
+                            }
+                            break;
+                        case COLUMN:
+                            for (int i = row0, from = offset; i < row1; i++, from += m) {
+                                applyScalar(code, values, from, from + m, operands[k][i]);
+                            }
+                            break;
+                        case FULL:
+                            applyArray(code, values, offset, end, operands[k], row0 * m - offset);
+                            break;
+                        default:
+                            applyScalar(code, values, offset, end, scalars[k]);
+                            break;
+                    }
+                    break;
+            }
+        }
+    }
+
+    @Override
+    public Matrix appendColsi(Matrix other) {
+        materialize().appendColsi(other);
+        return this;
+    }
+
+    @Override
+    public Matrix assign(Matrix other, int row, int col) {
+        materialize().assign(other, row, col);
+        return this;
+    }
+
+    @Override
+    public Matrix assignColAsDouble(int col, DoubleIntToDoubleFunction f) {
+        materialize().assignColAsDouble(col, f);
+        return this;
+    }
+
+    @Override
+    public Matrix assignCols(Matrix other, int... cols) {
+        materialize().assignCols(other, cols);
+        return this;
+    }
+
+    @Override
+    public Matrix assignRowAsDouble(int row, DoubleIntToDoubleFunction f) {
+        materialize().assignRowAsDouble(row, f);
+        return this;
+    }
+
+    @Override
+    public Matrix assignRows(Matrix other, int... rows) {
+        materialize().assignRows(other, rows);
+        return this;
+    }
+
+    /**
+     * Returns the number of rows of a block
+     */
+    private int blockRows() {
+        return Math.max(1, BLOCK_SIZE / Math.max(1, getNumCols()));
+    }
+
+    @Override
+    public Matrix cdfiRows() {
+        materialize().cdfiRows();
+        return this;
+    }
+
+    @Override
+    public int[] cellsOf(DoublePredicate p) {
+        return materialize().cellsOf(p);
+    }
+
+    @Override
+    public int[] choose(Matrix selector) {
+        return materialize().choose(selector);
+    }
+
+    @Override
+    public Matrix copy() {
+        return materialize().copy();
+    }
+
+    @Override
+    public Matrix createLike() {
+        return source.createLike();
+    }
+
+    @Override
+    public Matrix divi(double value) {
+        return push(DIV, value);
+    }
+
+    @Override
+    public Matrix divi(Matrix other) {
+        return push(DIV, other);
+    }
+
+    @Override
+    public Matrix eval() {
+        return materialize();
+    }
+
+    @Override
+    public Matrix expi() {
+        return push(EXP, 0);
+    }
+
+    @Override
+    public Matrix expm1i() {
+        return push(EXPM1, 0);
+    }
+
+    @Override
+    public Matrix extractCols(int... cols) {
+        return materialize().extractCols(cols);
+    }
+
+    @Override
+    public Matrix extractColumn(int col) {
+        return materialize().extractColumn(col);
+    }
+
+    @Override
+    public Matrix extractRow(int row) {
+        return materialize().extractRow(row);
+    }
+
+    @Override
+    public Matrix extractRows(int... rows) {
+        return materialize().extractRows(rows);
+    }
+
+    @Override
+    public double get(int row, int col) {
+        return materialize().get(row, col);
+    }
+
+    @Override
+    public int getNumCols() {
+        return source.getNumCols();
+    }
+
+    /**
+     * Returns the number of pending operations
+     */
+    int getNumOps() {
+        return noOps;
+    }
+
+    @Override
+    public int getNumRows() {
+        return source.getNumRows();
+    }
+
+    @Override
+    public Matrix insert(Matrix other, int row, int col) {
+        materialize().insert(other, row, col);
+        return this;
+    }
+
+    /**
+     * Returns true if the data are the backing array of an operand
+     *
+     * @param data the data
+     */
+    private boolean isOperand(double[] data) {
+        for (int k = 0; k < noOps; k++) {
+            if (operands[k] == data) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Matrix lazyi() {
+        return this;
+    }
+
+    /**
+     * Returns the fused values of a block of rows
+     *
+     * @param buffer the buffer of the values
+     * @param row0   the first row of the block
+     * @param row1   the row after the last row of the block
+     */
+    private double[] load(double[] buffer, int row0, int row1) {
+        final int m = getNumCols();
+        final double[] data = dataOf(source);
+        if (data != null) {
+            System.arraycopy(data, row0 * m, buffer, 0, (row1 - row0) * m);
+        } else {
+            for (int i = row0, idx = 0; i < row1; i++) {
+                for (int j = 0; j < m; j++, idx++) {
+                    buffer[idx] = source.get(i, j);
+                }
+            }
+        }
+        apply(buffer, 0, row0, row1);
+        return buffer;
+    }
+
+    @Override
+    public Matrix logi() {
+        return push(LOG, 0);
+    }
+
+    @Override
+    public Matrix lti() {
+        return push(LT, 0);
+    }
+
+    @Override
+    public Matrix mapi(DoubleUnaryOperator mapper) {
+        requireNonNull(mapper);
+        push(MAP, 0);
+        mappers[noOps - 1] = mapper;
+        return this;
+    }
+
+    @Override
+    public Matrix mapi(int startRow, int endRow, int startCol, int endCol, DoubleUnaryOperator mapper) {
+        materialize().mapi(startRow, endRow, startCol, endCol, mapper);
+        return this;
+    }
+
+    @Override
+    public Matrix mapiAsDouble(int startRow, int endRow, int startCol, int endCol, DoubleIntIntToDoubleFunction mapper) {
+        materialize().mapiAsDouble(startRow, endRow, startCol, endCol, mapper);
+        return this;
+    }
+
+    @Override
+    public Matrix mapiColsAsDouble(DoubleIntIntIntToDoubleFunction mapper, int... cols) {
+        materialize().mapiColsAsDouble(mapper, cols);
+        return this;
+    }
+
+    @Override
+    public Matrix mapiRowsAsDouble(DoubleIntIntIntToDoubleFunction mapper, int... rows) {
+        materialize().mapiRowsAsDouble(mapper, rows);
+        return this;
+    }
+
+    /**
+     * Returns the matrix with all the pending operations applied
+     */
+    private Matrix materialize() {
+        if (!inPlace) {
+            final Matrix result = source.createLike();
+            store(result);
+            source = result;
+            inPlace = true;
+        } else if (noOps > 0) {
+            store(source);
+        }
+        Arrays.fill(operands, 0, noOps, null);
+        Arrays.fill(mappers, 0, noOps, null);
+        noOps = 0;
+        return source;
+    }
+
+    @Override
+    public double max() {
+        final int n = getNumRows();
+        final int m = getNumCols();
+        if (n * m == 0) {
+            return materialize().max();
+        }
+        final int rows = blockRows();
+        final double[] buffer = new double[Math.min(n, rows) * m];
+        double result = 0;
+        for (int row0 = 0; row0 < n; row0 += rows) {
+            final int row1 = Math.min(n, row0 + rows);
+            load(buffer, row0, row1);
+            if (row0 == 0) {
+                result = buffer[0];
+            }
+            final int size = (row1 - row0) * m;
+            for (int i = 0; i < size; i++) {
+                if (buffer[i] > result) {
+                    result = buffer[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Matrix maxi(double value) {
+        return push(MAX, value);
+    }
+
+    @Override
+    public double min() {
+        final int n = getNumRows();
+        final int m = getNumCols();
+        if (n * m == 0) {
+            return materialize().min();
+        }
+        final int rows = blockRows();
+        final double[] buffer = new double[Math.min(n, rows) * m];
+        double result = 0;
+        for (int row0 = 0; row0 < n; row0 += rows) {
+            final int row1 = Math.min(n, row0 + rows);
+            load(buffer, row0, row1);
+            if (row0 == 0) {
+                result = buffer[0];
+            }
+            final int size = (row1 - row0) * m;
+            for (int i = 0; i < size; i++) {
+                if (buffer[i] < result) {
+                    result = buffer[i];
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Matrix minCols() {
+        final int n = getNumRows();
+        final int m = getNumCols();
+        final int rows = blockRows();
+        final double[] buffer = new double[Math.min(n, rows) * m];
+        // Starts from the maximum value as the ejml implementation for matrices with no rows
+        final double[] result = new double[m];
+        Arrays.fill(result, Double.MAX_VALUE);
+        for (int row0 = 0; row0 < n; row0 += rows) {
+            final int row1 = Math.min(n, row0 + rows);
+            load(buffer, row0, row1);
+            for (int idx = 0, size = (row1 - row0) * m; idx < size; idx += m) {
+                for (int j = 0; j < m; j++) {
+                    if (buffer[idx + j] < result[j]) {
+                        result[j] = buffer[idx + j];
+                    }
+                }
+            }
+        }
+        return Matrix.zeros(1, m).assignRowAsDouble(0, (v, j) -> result[j]);
+    }
+
+    @Override
+    public Matrix mini(double value) {
+        return push(MIN, value);
+    }
+
+    @Override
+    public Matrix mini(Matrix other) {
+        assert getNumRows() == other.getNumRows() && getNumCols() == other.getNumCols()
+                : format("mini between different martrices %dx%d, %dx%d ",
+                getNumRows(), getNumCols(),
+                other.getNumRows(), other.getNumCols());
+        return push(MIN, other);
+    }
+
+    @Override
+    public Matrix muli(double other) {
+        return push(MUL, other);
+    }
+
+    @Override
+    public Matrix muli(Matrix other) {
+        return push(MUL, other);
+    }
+
+    @Override
+    public Matrix negi() {
+        return push(NEG, 0);
+    }
+
+    @Override
+    public Matrix powi(double value) {
+        return push(POW, value);
+    }
+
+    @Override
+    public Matrix prod(Matrix other) {
+        return materialize().prod(other);
+    }
+
+    /**
+     * Returns this expression with an operation on a scalar value
+     *
+     * @param code  the operation code
+     * @param value the scalar value
+     */
+    private LazyMatrix push(int code, double value) {
+        if (noOps >= codes.length) {
+            final int capacity = codes.length * 2;
+            codes = Arrays.copyOf(codes, capacity);
+            modes = Arrays.copyOf(modes, capacity);
+            scalars = Arrays.copyOf(scalars, capacity);
+            operands = Arrays.copyOf(operands, capacity);
+            mappers = Arrays.copyOf(mappers, capacity);
+        }
+        codes[noOps] = code;
+        modes[noOps] = SCALAR;
+        scalars[noOps] = value;
+        noOps++;
+        return this;
+    }
+
+    /**
+     * Returns this expression with an operation on a broadcast matrix
+     *
+     * @param code  the operation code
+     * @param other the operand matrix
+     */
+    private LazyMatrix push(int code, Matrix other) {
+        final int n = other.getNumRows();
+        final int m = other.getNumCols();
+        if (n == 1 && m == 1) {
+            return push(code, other.get(0, 0));
+        }
+        final int mode;
+        if (n == getNumRows() && m == getNumCols()) {
+            mode = FULL;
+        } else if (n == 1) {
+            assert m == getNumCols()
+                    : format("Invalid operation %dx%d, %dx%d", getNumRows(), getNumCols(), n, m);
+            mode = ROW;
+        } else {
+            assert m == 1 && n == getNumRows()
+                    : format("Invalid operation %dx%d, %dx%d", getNumRows(), getNumCols(), n, m);
+            mode = COLUMN;
+        }
+        push(code, 0);
+        modes[noOps - 1] = mode;
+        operands[noOps - 1] = toData(other.eval());
+        return this;
+    }
+
+    @Override
+    public Matrix retainColsi(int... cols) {
+        materialize().retainColsi(cols);
+        return this;
+    }
+
+    @Override
+    public Matrix set(int row, int col, double value) {
+        materialize().set(row, col, value);
+        return this;
+    }
+
+    @Override
+    public Matrix softmaxi() {
+        materialize().softmaxi();
+        return this;
+    }
+
+    /**
+     * Writes the fused values in a target matrix
+     *
+     * @param target the target matrix
+     */
+    private void store(Matrix target) {
+        final int n = getNumRows();
+        final int m = getNumCols();
+        final int rows = blockRows();
+        final double[] src = dataOf(source);
+        final double[] dst = dataOf(target);
+        if (src != null && dst != null && !isOperand(dst)) {
+            // Copies and transforms each block while it is in cache
+            for (int row0 = 0; row0 < n; row0 += rows) {
+                final int row1 = Math.min(n, row0 + rows);
+                if (dst != src) {
+                    System.arraycopy(src, row0 * m, dst, row0 * m, (row1 - row0) * m);
+                }
+                apply(dst, row0 * m, row0, row1);
+            }
+        } else {
+            // Transforms each block in a buffer so that the operands are read before being overwritten
+            final double[] buffer = new double[Math.min(n, rows) * m];
+            for (int row0 = 0; row0 < n; row0 += rows) {
+                final int row1 = Math.min(n, row0 + rows);
+                load(buffer, row0, row1);
+                if (dst != null) {
+                    System.arraycopy(buffer, 0, dst, row0 * m, (row1 - row0) * m);
+                } else {
+                    for (int i = row0, idx = 0; i < row1; i++) {
+                        for (int j = 0; j < m; j++, idx++) {
+                            target.set(i, j, buffer[idx]);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public Matrix subi(double value) {
+        return push(SUB, value);
+    }
+
+    @Override
+    public Matrix subi(Matrix other) {
+        return push(SUB, other);
+    }
+
+    @Override
+    public Matrix sumCols() {
+        final int n = getNumRows();
+        final int m = getNumCols();
+        final int rows = blockRows();
+        final double[] buffer = new double[Math.min(n, rows) * m];
+        final double[] result = new double[m];
+        for (int row0 = 0; row0 < n; row0 += rows) {
+            final int row1 = Math.min(n, row0 + rows);
+            load(buffer, row0, row1);
+            for (int idx = 0, size = (row1 - row0) * m; idx < size; idx += m) {
+                for (int j = 0; j < m; j++) {
+                    result[j] += buffer[idx + j];
+                }
+            }
+        }
+        return Matrix.zeros(1, m).assignRowAsDouble(0, (v, j) -> result[j]);
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(materialize());
+    }
+
+    @Override
+    public Matrix trasposei() {
+        materialize().trasposei();
+        return this;
+    }
+
+    @Override
+    public Matrix view(int startRow, int endRow, int startCol, int endCol, boolean writable) {
+        return materialize().view(startRow, endRow, startCol, endCol, writable);
+    }
+}
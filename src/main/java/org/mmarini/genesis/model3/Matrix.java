@@ -41,7 +41,7 @@ import java.util.function.DoubleUnaryOperator;
  *
  */
 public interface Matrix {
-    MatrixBuilder builder = new DDRMWrapperBuilder();
+    MatrixBuilder builder = MatrixBuilder.fromSystemProperties();
 
     /**
      * Returns the horizontal stack composition of matrices
@@ -111,6 +111,19 @@ public interface Matrix {
         return builder.randn(n, m, random);
     }
 
+    /**
+     * Returns a zeros scratch matrix (n x m) of the arena open in the current thread or
+     * a new zeros matrix if no arena is open.
+     * The scratch matrix is valid until the arena is closed and it must not be retained
+     *
+     * @param n number of rows
+     * @param m number of columns
+     */
+    static Matrix scratch(int n, int m) {
+        final MatrixArena arena = MatrixArena.current();
+        return arena != null ? arena.zeros(n, m) : builder.zeros(n, m);
+    }
+
     /**
      * Returns a matrix filled with a value (n x m)
      *
@@ -162,6 +175,16 @@ public interface Matrix {
      */
     Matrix addi(Matrix other);
 
+    /**
+     * Returns the in-place horizontal concatenation of the matrix with another matrix.
+     * The columns are reserved ahead with amortized doubling so that the appending of few columns
+     * moves the data in the reserved capacity without allocation.
+     * The views of the matrix are invalid after the change
+     *
+     * @param other the appending columns
+     */
+    Matrix appendColsi(Matrix other);
+
     Matrix assign(Matrix other, int row, int col);
 
     /**
@@ -170,7 +193,17 @@ public interface Matrix {
      * @param col the column
      * @param f   the mapper
      */
-    Matrix assignCol(int col, BiFunction<Double, Integer, Double> f);
+    default Matrix assignCol(int col, BiFunction<Double, Integer, Double> f) {
+        return assignColAsDouble(col, f::apply);
+    }
+
+    /**
+     * Returns matrix[i][col] = f(matrix[i][col], i) without boxing
+     *
+     * @param col the column
+     * @param f   the mapper
+     */
+    Matrix assignColAsDouble(int col, DoubleIntToDoubleFunction f);
 
     /**
      * Returns the matrix with a set of the changed columns from another matrix
@@ -187,7 +220,17 @@ public interface Matrix {
      * @param row the row
      * @param f   the mapper
      */
-    Matrix assignRow(int row, BiFunction<Double, Integer, Double> f);
+    default Matrix assignRow(int row, BiFunction<Double, Integer, Double> f) {
+        return assignRowAsDouble(row, f::apply);
+    }
+
+    /**
+     * Returns matrix[row][j] = f(matrix[row][j], j) without boxing
+     *
+     * @param row the row
+     * @param f   the mapper
+     */
+    Matrix assignRowAsDouble(int row, DoubleIntToDoubleFunction f);
 
     /**
      * Returns the matrix with a set of the changed rows from another matrix
@@ -240,6 +283,13 @@ public interface Matrix {
      */
     Matrix divi(Matrix other);
 
+    /**
+     * Returns the evaluated matrix of a lazy expression or this matrix
+     */
+    default Matrix eval() {
+        return this;
+    }
+
     /**
      * Returns matrix[i][j] = exp(matrix[i][j])
      */
@@ -303,6 +353,24 @@ public interface Matrix {
      */
     Matrix insert(Matrix other, int row, int col);
 
+    /**
+     * Returns the lazy expression of element-wise operations on this matrix.
+     * The operations are evaluated in a single fused loop into a new matrix
+     * when required by a reduction, an extraction or by eval()
+     */
+    default Matrix lazy() {
+        return LazyMatrix.create(this, false);
+    }
+
+    /**
+     * Returns the lazy expression of element-wise operations on this matrix.
+     * The operations are evaluated in a single fused loop in-place on this matrix
+     * when required by a reduction, an extraction or by eval()
+     */
+    default Matrix lazyi() {
+        return LazyMatrix.create(this, true);
+    }
+
     /**
      * Returns matrix[i][j] = log(matrix[i][j])
      */
@@ -326,7 +394,9 @@ public interface Matrix {
      *
      * @param mapper the mapper
      */
-    Matrix mapi(Function3<Double, Integer, Integer, Double> mapper);
+    default Matrix mapi(Function3<Double, Integer, Integer, Double> mapper) {
+        return mapi(0, getNumRows() - 1, 0, getNumCols() - 1, mapper);
+    }
 
     /**
      * Returns matrix[i][j] = mapper(matrix[i][j], i, j)
@@ -339,7 +409,15 @@ public interface Matrix {
      * @param endCol   end col
      * @param mapper   the mapper
      */
-    Matrix mapi(int startRow, int endRow, int startCol, int endCol, Function3<Double, Integer, Integer, Double> mapper);
+    default Matrix mapi(int startRow, int endRow, int startCol, int endCol, Function3<Double, Integer, Integer, Double> mapper) {
+        return mapiAsDouble(startRow, endRow, startCol, endCol, (v, i, j) -> {
+            try {
+                return mapper.apply(v, i, j);
+            } catch (Throwable e) {
+                throw new IllegalArgumentException(e);
+            }
+        });
+    }
 
     /**
      * Returns matrix[i][j] = mapper(matrix[i][j])
@@ -354,13 +432,51 @@ public interface Matrix {
      */
     Matrix mapi(int startRow, int endRow, int startCol, int endCol, DoubleUnaryOperator mapper);
 
+    /**
+     * Returns matrix[i][j] = mapper(matrix[i][j], i, j) without boxing
+     *
+     * @param mapper the mapper
+     */
+    default Matrix mapiAsDouble(DoubleIntIntToDoubleFunction mapper) {
+        return mapiAsDouble(0, getNumRows() - 1, 0, getNumCols() - 1, mapper);
+    }
+
+    /**
+     * Returns matrix[i][j] = mapper(matrix[i][j], i, j) without boxing
+     * for all i between startRow end endRow
+     * and j from startCol to endCol
+     *
+     * @param startRow start row
+     * @param endRow   end row
+     * @param startCol start col
+     * @param endCol   end col
+     * @param mapper   the mapper
+     */
+    Matrix mapiAsDouble(int startRow, int endRow, int startCol, int endCol, DoubleIntIntToDoubleFunction mapper);
+
     /**
      * Returns matrix[i][cols[j]] = mapper(matrix[i][cols[j]], i, j, cols[j])
      *
      * @param mapper the mapper
      * @param cols   the columns
      */
-    Matrix mapiCols(Function4<Double, Integer, Integer, Integer, Double> mapper, int... cols);
+    default Matrix mapiCols(Function4<Double, Integer, Integer, Integer, Double> mapper, int... cols) {
+        return mapiColsAsDouble((v, i, j, k) -> {
+            try {
+                return mapper.apply(v, i, j, k);
+            } catch (Throwable e) {
+                throw new IllegalArgumentException(e);
+            }
+        }, cols);
+    }
+
+    /**
+     * Returns matrix[i][cols[j]] = mapper(matrix[i][cols[j]], i, j, cols[j]) without boxing
+     *
+     * @param mapper the mapper
+     * @param cols   the columns
+     */
+    Matrix mapiColsAsDouble(DoubleIntIntIntToDoubleFunction mapper, int... cols);
 
     /**
      * Returns matrix[cols[i]][j] = mapper(matrix[cols[i]][j], i, j, cols[i])
@@ -368,7 +484,23 @@ public interface Matrix {
      * @param mapper the mapper
      * @param rows   the rows
      */
-    Matrix mapiRows(Function4<Double, Integer, Integer, Integer, Double> mapper, int... rows);
+    default Matrix mapiRows(Function4<Double, Integer, Integer, Integer, Double> mapper, int... rows) {
+        return mapiRowsAsDouble((v, i, j, k) -> {
+            try {
+                return mapper.apply(v, i, j, k);
+            } catch (Throwable e) {
+                throw new IllegalArgumentException(e);
+            }
+        }, rows);
+    }
+
+    /**
+     * Returns matrix[rows[i]][j] = mapper(matrix[rows[i]][j], i, j, rows[i]) without boxing
+     *
+     * @param mapper the mapper
+     * @param rows   the rows
+     */
+    Matrix mapiRowsAsDouble(DoubleIntIntIntToDoubleFunction mapper, int... rows);
 
     /**
      * Returns the maximum value
@@ -435,6 +567,57 @@ public interface Matrix {
      */
     Matrix prod(Matrix other);
 
+    /**
+     * Returns the in-place selection of columns.
+     * The selected columns are moved in the first columns keeping their order
+     * and the reserved capacity of columns (see {@link #appendColsi(Matrix)}).
+     * The views of the matrix are invalid after the change
+     *
+     * @param cols the increasing indices of retained columns
+     */
+    Matrix retainColsi(int... cols);
+
+    /**
+     * Returns the scratch matrix with the given columns (see {@link #scratch(int, int)})
+     *
+     * @param cols the columns
+     */
+    default Matrix scratchCols(int... cols) {
+        final Matrix source = eval();
+        return scratch(source.getNumRows(), cols.length)
+                .mapiAsDouble((v, i, j) -> source.get(i, cols[j]));
+    }
+
+    /**
+     * Returns the scratch copy of the matrix (see {@link #scratch(int, int)})
+     */
+    default Matrix scratchCopy() {
+        final Matrix source = eval();
+        return scratch(source.getNumRows(), source.getNumCols()).assign(source, 0, 0);
+    }
+
+    /**
+     * Returns the scratch matrix with the given row (see {@link #scratch(int, int)})
+     *
+     * @param row the row
+     */
+    default Matrix scratchRow(int row) {
+        final Matrix source = eval();
+        return scratch(1, source.getNumCols())
+                .mapiAsDouble((v, i, j) -> source.get(row, j));
+    }
+
+    /**
+     * Returns the scratch matrix with the given rows (see {@link #scratch(int, int)})
+     *
+     * @param rows the rows
+     */
+    default Matrix scratchRows(int... rows) {
+        final Matrix source = eval();
+        return scratch(rows.length, source.getNumCols())
+                .mapiAsDouble((v, i, j) -> source.get(rows[i], j));
+    }
+
     /**
      * Returns the matrix with a cell value changes
      *
@@ -472,4 +655,76 @@ public interface Matrix {
      * Returns the transpose matrix
      */
     Matrix trasposei();
+
+    /**
+     * Returns the strided view of a range of the matrix without copying the data.
+     * The view is valid until the matrix is reshaped
+     *
+     * @param startRow the first row
+     * @param endRow   the last row
+     * @param startCol the first column
+     * @param endCol   the last column
+     * @param writable true if the changes of view are written through the matrix
+     */
+    Matrix view(int startRow, int endRow, int startCol, int endCol, boolean writable);
+
+    /**
+     * Returns the read-only view of a column (n x 1)
+     *
+     * @param col the column
+     */
+    default Matrix viewColumn(int col) {
+        return view(0, getNumRows() - 1, col, col, false);
+    }
+
+    /**
+     * Returns the writable view of a column (n x 1)
+     *
+     * @param col the column
+     */
+    default Matrix viewColumni(int col) {
+        return view(0, getNumRows() - 1, col, col, true);
+    }
+
+    /**
+     * Returns the read-only view of a range
+     *
+     * @param startRow the first row
+     * @param endRow   the last row
+     * @param startCol the first column
+     * @param endCol   the last column
+     */
+    default Matrix viewRange(int startRow, int endRow, int startCol, int endCol) {
+        return view(startRow, endRow, startCol, endCol, false);
+    }
+
+    /**
+     * Returns the writable view of a range
+     *
+     * @param startRow the first row
+     * @param endRow   the last row
+     * @param startCol the first column
+     * @param endCol   the last column
+     */
+    default Matrix viewRangei(int startRow, int endRow, int startCol, int endCol) {
+        return view(startRow, endRow, startCol, endCol, true);
+    }
+
+    /**
+     * Returns the read-only view of a row (1 x m)
+     *
+     * @param row the row
+     */
+    default Matrix viewRow(int row) {
+        return view(row, row, 0, getNumCols() - 1, false);
+    }
+
+    /**
+     * Returns the writable view of a row (1 x m)
+     *
+     * @param row the row
+     */
+    default Matrix viewRowi(int row) {
+        return view(row, row, 0, getNumCols() - 1, true);
+    }
 }
@@ -0,0 +1,302 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.DoubleUnaryOperator;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Tick-scoped pool of scratch matrices.
+ * <p>
+ * The arena is opened by the simulation engine at the beginning of a tick and bound to the
+ * current thread, the scratch matrices created while the arena is open
+ * (see {@link Matrix#scratch(int, int)}) are taken from the pool and are recycled all together
+ * when the arena is closed.
+ * Scratch matrices must not survive the tick, in debug mode they are guarded and any access
+ * after the release throws an IllegalStateException.
+ * </p>
+ */
+public class MatrixArena {
+    /**
+     * The system property enabling the arena (off, on, debug)
+     */
+    public static final String ARENA_PROPERTY = "genesis.matrix.arena";
+    /**
+     * The disabled arena type
+     */
+    public static final String OFF_ARENA = "off";
+    /**
+     * The enabled arena type
+     */
+    public static final String ON_ARENA = "on";
+    /**
+     * The enabled arena type with use after release checks
+     */
+    public static final String DEBUG_ARENA = "debug";
+    private static final int INITIAL_CAPACITY = 16;
+    private static final DoubleUnaryOperator ZERO = x -> 0;
+    private static final ThreadLocal<MatrixArena> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Returns the arena of a builder
+     *
+     * @param builder the matrix builder
+     * @param debug   true if the use after release is checked
+     */
+    public static MatrixArena create(MatrixBuilder builder, boolean debug) {
+        return new MatrixArena(builder, debug);
+    }
+
+    /**
+     * Returns the arena open in the current thread or null if none
+     */
+    public static MatrixArena current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Returns the arena of a type if enabled
+     *
+     * @param type the type of arena (off, on, debug)
+     */
+    public static Optional<MatrixArena> fromType(String type) {
+        switch (type) {
+            case OFF_ARENA:
+                return Optional.empty();
+            case ON_ARENA:
+                return Optional.of(create(Matrix.builder, false));
+            case DEBUG_ARENA:
+                return Optional.of(create(Matrix.builder, true));
+            default:
+                throw new IllegalArgumentException(format("Unknown matrix arena \"%s\"", type));
+        }
+    }
+
+    /**
+     * Returns the arena selected by system property if enabled
+     */
+    public static Optional<MatrixArena> fromSystemProperties() {
+        return fromType(System.getProperty(ARENA_PROPERTY, OFF_ARENA));
+    }
+
+    /**
+     * Returns the key of a matrix shape
+     *
+     * @param numRows the number of rows
+     * @param numCols the number of columns
+     */
+    private static long key(int numRows, int numCols) {
+        return ((long) numRows << 32) | (numCols & 0xffffffffL);
+    }
+
+    private final MatrixBuilder builder;
+    private final boolean debug;
+    private long[] keys;
+    private Slab[] slabs;
+    private int noSlabs;
+    private int generation;
+    private int allocatedCount;
+    private boolean open;
+
+    /**
+     * Creates the arena
+     *
+     * @param builder the matrix builder
+     * @param debug   true if the use after release is checked
+     */
+    protected MatrixArena(MatrixBuilder builder, boolean debug) {
+        this.builder = requireNonNull(builder);
+        this.debug = debug;
+        this.keys = new long[INITIAL_CAPACITY];
+        this.slabs = new Slab[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Releases all the scratch matrices and unbinds the arena from the current thread
+     */
+    public void close() {
+        if (open) {
+            for (Slab slab : slabs) {
+                if (slab != null) {
+                    slab.used = 0;
+                }
+            }
+            generation++;
+            open = false;
+            CURRENT.remove();
+        }
+    }
+
+    /**
+     * Returns the number of matrices allocated by the arena since the creation
+     */
+    public int getAllocatedCount() {
+        return allocatedCount;
+    }
+
+    /**
+     * Returns the release generation
+     */
+    int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Returns true if the use after release is checked
+     */
+    public boolean isDebug() {
+        return debug;
+    }
+
+    /**
+     * Returns true if the arena is open
+     */
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Returns the arena bound to the current thread
+     */
+    public MatrixArena open() {
+        final MatrixArena other = CURRENT.get();
+        if (other != null && other != this) {
+            throw new IllegalStateException("Another arena is open in the current thread");
+        }
+        CURRENT.set(this);
+        open = true;
+        return this;
+    }
+
+    /**
+     * Returns the slab of a matrix shape
+     *
+     * @param numRows the number of rows
+     * @param numCols the number of columns
+     */
+    private Slab slab(int numRows, int numCols) {
+        final long key = key(numRows, numCols);
+        final int mask = keys.length - 1;
+        int idx = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+        while (slabs[idx] != null) {
+            if (keys[idx] == key) {
+                return slabs[idx];
+            }
+            idx = (idx + 1) & mask;
+        }
+        final Slab slab = new Slab(numRows, numCols);
+        keys[idx] = key;
+        slabs[idx] = slab;
+        noSlabs++;
+        if (noSlabs * 2 > keys.length) {
+            final long[] oldKeys = keys;
+            final Slab[] oldSlabs = slabs;
+            keys = new long[oldKeys.length * 2];
+            slabs = new Slab[oldKeys.length * 2];
+            final int newMask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldSlabs[i] != null) {
+                    int j = Long.hashCode(oldKeys[i] * 0x9E3779B97F4A7C15L) & newMask;
+                    while (slabs[j] != null) {
+                        j = (j + 1) & newMask;
+                    }
+                    keys[j] = oldKeys[i];
+                    slabs[j] = oldSlabs[i];
+                }
+            }
+        }
+        return slab;
+    }
+
+    /**
+     * Returns a zeros scratch matrix
+     *
+     * @param numRows the number of rows
+     * @param numCols the number of columns
+     */
+    public Matrix zeros(int numRows, int numCols) {
+        if (!open) {
+            throw new IllegalStateException("The arena is not open");
+        }
+        final Matrix matrix = slab(numRows, numCols).acquire();
+        return debug ? new ScratchMatrix(matrix, this) : matrix;
+    }
+
+    /**
+     * The pool of matrices of the same shape
+     */
+    private class Slab {
+        private final int numRows;
+        private final int numCols;
+        private Matrix[] items;
+        private int used;
+
+        /**
+         * Creates the slab
+         *
+         * @param numRows the number of rows
+         * @param numCols the number of columns
+         */
+        Slab(int numRows, int numCols) {
+            this.numRows = numRows;
+            this.numCols = numCols;
+            this.items = new Matrix[1];
+        }
+
+        /**
+         * Returns a zeros matrix
+         */
+        Matrix acquire() {
+            if (used >= items.length) {
+                items = Arrays.copyOf(items, items.length * 2);
+            }
+            Matrix result = items[used];
+            if (result == null || result.getNumRows() != numRows || result.getNumCols() != numCols) {
+                // New or reshaped item
+                result = builder.zeros(numRows, numCols);
+                items[used] = result;
+                allocatedCount++;
+            } else {
+                result.mapi(ZERO);
+            }
+            used++;
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return format("Slab %dx%d %d/%d", numRows, numCols, used, items.length);
+        }
+    }
+}
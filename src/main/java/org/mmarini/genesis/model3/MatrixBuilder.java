@@ -31,10 +31,47 @@ package org.mmarini.genesis.model3;
 
 import java.util.Random;
 
+import static java.lang.String.format;
+
 /**
  *
  */
 public interface MatrixBuilder {
+    /**
+     * The system property selecting the matrix builder at startup
+     */
+    String BUILDER_PROPERTY = "genesis.matrix.builder";
+    /**
+     * The EJML dense matrix builder type
+     */
+    String DDRM_BUILDER = "ddrm";
+    /**
+     * The plain array matrix builder type
+     */
+    String ARRAY_BUILDER = "array";
+
+    /**
+     * Returns the matrix builder of a type
+     *
+     * @param type the type of builder (ddrm, array)
+     */
+    static MatrixBuilder create(String type) {
+        switch (type) {
+            case DDRM_BUILDER:
+                return new DDRMWrapperBuilder();
+            case ARRAY_BUILDER:
+                return new ArrayMatrixBuilder();
+            default:
+                throw new IllegalArgumentException(format("Unknown matrix builder \"%s\"", type));
+        }
+    }
+
+    /**
+     * Returns the matrix builder selected by system property
+     */
+    static MatrixBuilder fromSystemProperties() {
+        return create(System.getProperty(BUILDER_PROPERTY, DDRM_BUILDER));
+    }
 
     /**
      * Returns the horizontal stack composition of matrices
@@ -0,0 +1,574 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.Arrays;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Strided view on the row-major data of a matrix.
+ * <p>
+ * The element (i, j) of the view is the element data[offset + i * rowStride + j * colStride]
+ * of the source matrix data, so rows, columns and ranges of a matrix are viewed without copying.
+ * A writable view writes the changes through the source matrix, a read-only view throws
+ * UnsupportedOperationException on any change.
+ * The view is valid until the source matrix is reshaped (trasposei).
+ * </p>
+ */
+public class MatrixView implements Matrix {
+    /**
+     * Returns the view of a range of row-major data
+     *
+     * @param data     the row-major data
+     * @param numRows  the number of rows of data
+     * @param numCols  the number of columns of data
+     * @param startRow the first row
+     * @param endRow   the last row
+     * @param startCol the first column
+     * @param endCol   the last column
+     * @param writable true if the view is writable
+     */
+    static MatrixView create(double[] data, int numRows, int numCols,
+                             int startRow, int endRow, int startCol, int endCol,
+                             boolean writable) {
+        return new MatrixView(data, 0, numCols, 1, numRows, numCols, true)
+                .view(startRow, endRow, startCol, endCol, writable);
+    }
+
+    private final double[] data;
+    private final int offset;
+    private final boolean writable;
+    private int rowStride;
+    private int colStride;
+    private int numRows;
+    private int numCols;
+
+    /**
+     * Creates the view
+     *
+     * @param data      the data
+     * @param offset    the offset of first element
+     * @param rowStride the row stride
+     * @param colStride the column stride
+     * @param numRows   the number of rows
+     * @param numCols   the number of columns
+     * @param writable  true if the view is writable
+     */
+    protected MatrixView(double[] data, int offset, int rowStride, int colStride, int numRows, int numCols, boolean writable) {
+        this.data = requireNonNull(data);
+        this.offset = offset;
+        this.rowStride = rowStride;
+        this.colStride = colStride;
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.writable = writable;
+    }
+
+    @Override
+    public Matrix add(Matrix other) {
+        return copy().addi(other);
+    }
+
+    @Override
+    public Matrix addi(double other) {
+        return mapi(v -> v + other);
+    }
+
+    @Override
+    public Matrix addi(Matrix other) {
+        return broadcast(other, "+", Double::sum);
+    }
+
+    @Override
+    public Matrix appendColsi(Matrix other) {
+        throw new UnsupportedOperationException("cannot append columns to a view");
+    }
+
+    @Override
+    public Matrix assign(Matrix other, int row, int col) {
+        checkWritable();
+        final int n = other.getNumRows();
+        final int m = other.getNumCols();
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < m; j++) {
+                data[index(row + i, col + j)] = other.get(i, j);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix assignColAsDouble(int col, DoubleIntToDoubleFunction f) {
+        checkWritable();
+        for (int i = 0, idx = offset + col * colStride; i < numRows; i++, idx += rowStride) {
+            data[idx] = f.applyAsDouble(data[idx], i);
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix assignCols(Matrix other, int... cols) {
+        assert other.getNumRows() == numRows
+                : format("cannot insert columns %dx%d into %dx%d",
+                other.getNumRows(), other.getNumCols(),
+                numRows, numCols);
+        assert other.getNumCols() == cols.length
+                : format("Mismatched indexing %d columns of %dx%d map",
+                cols.length,
+                other.getNumRows(), other.getNumCols());
+        checkWritable();
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < cols.length; j++) {
+                data[index(i, cols[j])] = other.get(i, j);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix assignRowAsDouble(int row, DoubleIntToDoubleFunction f) {
+        checkWritable();
+        for (int j = 0, idx = offset + row * rowStride; j < numCols; j++, idx += colStride) {
+            data[idx] = f.applyAsDouble(data[idx], j);
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix assignRows(Matrix other, int... rows) {
+        assert other.getNumCols() == numCols
+                : format("cannot insert rows %dx%d into %dx%d",
+                other.getNumRows(), other.getNumCols(),
+                numRows, numCols);
+        assert other.getNumRows() == rows.length
+                : format("Mismatched indexing %d rows of %dx%d map",
+                rows.length,
+                other.getNumRows(), other.getNumCols());
+        checkWritable();
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < numCols; j++) {
+                data[index(rows[i], j)] = other.get(i, j);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the view with element-wise operation with another matrix broadcasting scalars,
+     * rows and columns
+     *
+     * @param other the other matrix
+     * @param name  the operation name
+     * @param op    the operation
+     */
+    private Matrix broadcast(Matrix other, String name, DoubleBinaryOperator op) {
+        final int n = other.getNumRows();
+        final int m = other.getNumCols();
+        if (n == 1 && m == 1) {
+            final double b = other.get(0, 0);
+            return mapiAsDouble((v, i, j) -> op.applyAsDouble(v, b));
+        } else if (n == 1) {
+            assert m == numCols
+                    : format("Invalid operation %dx%d %s %dx%d", numRows, numCols, name, n, m);
+            return mapiAsDouble((v, i, j) -> op.applyAsDouble(v, other.get(0, j)));
+        } else if (m == 1) {
+            assert n == numRows
+                    : format("Invalid operation %dx%d %s %dx%d", numRows, numCols, name, n, m);
+            return mapiAsDouble((v, i, j) -> op.applyAsDouble(v, other.get(i, 0)));
+        } else {
+            assert n == numRows && m == numCols
+                    : format("Invalid operation %dx%d %s %dx%d", numRows, numCols, name, n, m);
+            return mapiAsDouble((v, i, j) -> op.applyAsDouble(v, other.get(i, j)));
+        }
+    }
+
+    @Override
+    public Matrix cdfiRows() {
+        final Matrix sum = sumCols();
+        for (int i = 1; i < numRows; i++) {
+            for (int j = 0; j < numCols; j++) {
+                set(i, j, get(i, j) + get(i - 1, j));
+            }
+        }
+        return divi(sum);
+    }
+
+    @Override
+    public int[] cellsOf(DoublePredicate p) {
+        int[] result = new int[numRows * numCols];
+        int n = 0;
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numCols; j++) {
+                if (p.test(data[index(i, j)])) {
+                    result[n++] = i * numCols + j;
+                }
+            }
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Throws UnsupportedOperationException if the view is read-only
+     */
+    private void checkWritable() {
+        if (!writable) {
+            throw new UnsupportedOperationException("Read-only matrix view");
+        }
+    }
+
+    @Override
+    public int[] choose(Matrix selector) {
+        return copy().choose(selector);
+    }
+
+    @Override
+    public Matrix copy() {
+        return Matrix.zeros(numRows, numCols).mapiAsDouble((v, i, j) -> data[index(i, j)]);
+    }
+
+    @Override
+    public Matrix createLike() {
+        return Matrix.zeros(numRows, numCols);
+    }
+
+    @Override
+    public Matrix divi(double value) {
+        return mapi(v -> v / value);
+    }
+
+    @Override
+    public Matrix divi(Matrix other) {
+        return broadcast(other, "/", (a, b) -> a / b);
+    }
+
+    @Override
+    public Matrix expi() {
+        return mapi(Math::exp);
+    }
+
+    @Override
+    public Matrix expm1i() {
+        return mapi(Math::expm1);
+    }
+
+    @Override
+    public Matrix extractCols(int... cols) {
+        return Matrix.zeros(numRows, cols.length).mapiAsDouble((v, i, j) -> data[index(i, cols[j])]);
+    }
+
+    @Override
+    public Matrix extractColumn(int col) {
+        return Matrix.zeros(numRows, 1).mapiAsDouble((v, i, j) -> data[index(i, col)]);
+    }
+
+    @Override
+    public Matrix extractRow(int row) {
+        return Matrix.zeros(1, numCols).mapiAsDouble((v, i, j) -> data[index(row, j)]);
+    }
+
+    @Override
+    public Matrix extractRows(int... rows) {
+        return Matrix.zeros(rows.length, numCols).mapiAsDouble((v, i, j) -> data[index(rows[i], j)]);
+    }
+
+    @Override
+    public double get(int row, int col) {
+        return data[index(row, col)];
+    }
+
+    @Override
+    public int getNumCols() {
+        return numCols;
+    }
+
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Returns the data index of an element
+     *
+     * @param row the row
+     * @param col the column
+     */
+    private int index(int row, int col) {
+        assert row >= 0 && row < numRows && col >= 0 && col < numCols
+                : format("Index (%d, %d) out of bounds %dx%d", row, col, numRows, numCols);
+        return offset + row * rowStride + col * colStride;
+    }
+
+    @Override
+    public Matrix insert(Matrix other, int row, int col) {
+        return assign(other, row, col);
+    }
+
+    /**
+     * Returns true if the view is writable
+     */
+    public boolean isWritable() {
+        return writable;
+    }
+
+    /**
+     * Returns the lazy expression of element-wise operations on this view.
+     * The expression is evaluated in-place only if the view is writable
+     */
+    @Override
+    public Matrix lazyi() {
+        return LazyMatrix.create(this, writable);
+    }
+
+    @Override
+    public Matrix logi() {
+        return mapi(Math::log);
+    }
+
+    @Override
+    public Matrix lti() {
+        return mapi(v -> v < 0.0 ? 1.0 : 0.0);
+    }
+
+    @Override
+    public Matrix mapi(DoubleUnaryOperator mapper) {
+        return mapi(0, numRows - 1, 0, numCols - 1, mapper);
+    }
+
+    @Override
+    public Matrix mapi(int startRow, int endRow, int startCol, int endCol, DoubleUnaryOperator mapper) {
+        checkWritable();
+        for (int i = startRow; i <= endRow; i++) {
+            for (int j = startCol, idx = offset + i * rowStride + startCol * colStride; j <= endCol; j++, idx += colStride) {
+                data[idx] = mapper.applyAsDouble(data[idx]);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix mapiAsDouble(int startRow, int endRow, int startCol, int endCol, DoubleIntIntToDoubleFunction mapper) {
+        checkWritable();
+        for (int i = startRow; i <= endRow; i++) {
+            for (int j = startCol, idx = offset + i * rowStride + startCol * colStride; j <= endCol; j++, idx += colStride) {
+                data[idx] = mapper.applyAsDouble(data[idx], i, j);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix mapiColsAsDouble(DoubleIntIntIntToDoubleFunction mapper, int... cols) {
+        checkWritable();
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < cols.length; j++) {
+                final int k = cols[j];
+                final int idx = index(i, k);
+                data[idx] = mapper.applyAsDouble(data[idx], i, j, k);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Matrix mapiRowsAsDouble(DoubleIntIntIntToDoubleFunction mapper, int... rows) {
+        checkWritable();
+        for (int i = 0; i < rows.length; i++) {
+            final int k = rows[i];
+            for (int j = 0, idx = offset + k * rowStride; j < numCols; j++, idx += colStride) {
+                data[idx] = mapper.applyAsDouble(data[idx], i, j, k);
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public double max() {
+        double result = numRows > 0 && numCols > 0 ? data[offset] : -Double.MAX_VALUE;
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numCols; j++) {
+                final double v = data[index(i, j)];
+                if (v > result) {
+                    result = v;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Matrix maxi(double value) {
+        return mapi(v -> Math.max(v, value));
+    }
+
+    @Override
+    public double min() {
+        double result = numRows > 0 && numCols > 0 ? data[offset] : Double.MAX_VALUE;
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0; j < numCols; j++) {
+                final double v = data[index(i, j)];
+                if (v < result) {
+                    result = v;
+                }
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Matrix minCols() {
+        return copy().minCols();
+    }
+
+    @Override
+    public Matrix mini(double value) {
+        return mapi(v -> Math.min(v, value));
+    }
+
+    @Override
+    public Matrix mini(Matrix other) {
+        assert numRows == other.getNumRows() && numCols == other.getNumCols()
+                : format("mini between different martrices %dx%d, %dx%d ",
+                numRows, numCols,
+                other.getNumRows(), other.getNumCols());
+        return mapiAsDouble((x, i, j) -> Math.min(x, other.get(i, j)));
+    }
+
+    @Override
+    public Matrix muli(double other) {
+        return mapi(v -> v * other);
+    }
+
+    @Override
+    public Matrix muli(Matrix other) {
+        return broadcast(other, "*", (a, b) -> a * b);
+    }
+
+    @Override
+    public Matrix negi() {
+        return mapi(v -> -v);
+    }
+
+    @Override
+    public Matrix powi(double value) {
+        return mapi(v -> Math.pow(v, value));
+    }
+
+    @Override
+    public Matrix prod(Matrix other) {
+        return copy().prod(other);
+    }
+
+    @Override
+    public Matrix retainColsi(int... cols) {
+        throw new UnsupportedOperationException("cannot retain columns of a view");
+    }
+
+    @Override
+    public Matrix set(int row, int col, double value) {
+        checkWritable();
+        data[index(row, col)] = value;
+        return this;
+    }
+
+    @Override
+    public Matrix softmaxi() {
+        expi();
+        double sum = 0;
+        for (int i = 0; i < numRows; i++) {
+            double rowSum = 0;
+            for (int j = 0; j < numCols; j++) {
+                rowSum += data[index(i, j)];
+            }
+            sum += rowSum;
+        }
+        return divi(sum);
+    }
+
+    @Override
+    public Matrix subi(double value) {
+        return mapi(v -> v - value);
+    }
+
+    @Override
+    public Matrix subi(Matrix other) {
+        return broadcast(other, "-", (a, b) -> a - b);
+    }
+
+    @Override
+    public Matrix sumCols() {
+        final Matrix result = Matrix.zeros(1, numCols);
+        for (int i = 0; i < numRows; i++) {
+            for (int j = 0, idx = offset + i * rowStride; j < numCols; j++, idx += colStride) {
+                result.set(0, j, result.get(0, j) + data[idx]);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return String.valueOf(copy());
+    }
+
+    /**
+     * Returns the transposed view by swapping the strides
+     */
+    @Override
+    public Matrix trasposei() {
+        final int n = numRows;
+        numRows = numCols;
+        numCols = n;
+        final int stride = rowStride;
+        rowStride = colStride;
+        colStride = stride;
+        return this;
+    }
+
+    @Override
+    public MatrixView view(int startRow, int endRow, int startCol, int endCol, boolean writable) {
+        assert startRow >= 0 && startRow <= endRow + 1 && endRow < numRows
+                && startCol >= 0 && startCol <= endCol + 1 && endCol < numCols
+                : format("View (%d-%d, %d-%d) out of bounds %dx%d",
+                startRow, endRow, startCol, endCol, numRows, numCols);
+        if (writable) {
+            checkWritable();
+        }
+        return new MatrixView(data,
+                offset + startRow * rowStride + startCol * colStride,
+                rowStride, colStride,
+                endRow - startRow + 1, endCol - startCol + 1,
+                writable);
+    }
+}
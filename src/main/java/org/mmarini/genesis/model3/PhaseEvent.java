@@ -0,0 +1,67 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import jdk.jfr.*;
+
+/**
+ * Flight recorder event of a simulation step phase.
+ * <p>
+ * The event is disabled until a recording enables it and the events are created only
+ * when it is enabled (see {@link #isRecording()}), so the instrumentation costs
+ * almost nothing when no recording is running.
+ * </p>
+ */
+@Name("org.mmarini.genesis.Phase")
+@Label("Simulation Phase")
+@Category({"Genesis", "Simulation"})
+@Description("Phase of a simulation step")
+@StackTrace(false)
+class PhaseEvent extends Event {
+    private static final PhaseEvent PROBE = new PhaseEvent();
+
+    /**
+     * Returns true if a recording enables the phase events
+     */
+    static boolean isRecording() {
+        return PROBE.isEnabled();
+    }
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Individuals")
+    @Description("Number of individuals at the phase start")
+    int individuals;
+
+    @Label("Cells")
+    @Description("Number of cells of the topology")
+    int cells;
+}
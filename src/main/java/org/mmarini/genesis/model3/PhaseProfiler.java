@@ -0,0 +1,187 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Rolling histograms of the simulation phase durations.
+ * <p>
+ * The profiler keeps the durations of the last samples of each phase
+ * and may be read by other threads while the simulation is running.
+ * </p>
+ */
+public class PhaseProfiler {
+    public static final int DEFAULT_WINDOW_SIZE = 256;
+
+    /**
+     * Returns the profiler with the default window size
+     */
+    public static PhaseProfiler create() {
+        return create(DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Returns the profiler
+     *
+     * @param windowSize the number of samples kept for each phase
+     */
+    public static PhaseProfiler create(int windowSize) {
+        assert windowSize > 0 : format("window size must be positive (%d)", windowSize);
+        return new PhaseProfiler(windowSize);
+    }
+
+    private final Map<SimPhase, Window> windows;
+
+    /**
+     * Creates the profiler
+     *
+     * @param windowSize the number of samples kept for each phase
+     */
+    protected PhaseProfiler(int windowSize) {
+        this.windows = new EnumMap<>(SimPhase.class);
+        for (SimPhase phase : SimPhase.values()) {
+            windows.put(phase, new Window(windowSize));
+        }
+    }
+
+    /**
+     * Returns the histogram of the last durations of a phase
+     *
+     * @param phase the phase
+     */
+    public Histogram getHistogram(SimPhase phase) {
+        return windows.get(requireNonNull(phase)).histogram();
+    }
+
+    /**
+     * Records the duration of a phase
+     *
+     * @param phase the phase
+     * @param nanos the duration (ns)
+     */
+    public void record(SimPhase phase, long nanos) {
+        windows.get(phase).add(nanos);
+    }
+
+    /**
+     * The histogram of the phase durations
+     */
+    public static class Histogram {
+        private final long[] samples;
+
+        /**
+         * Creates the histogram
+         *
+         * @param samples the sorted durations (ns)
+         */
+        protected Histogram(long[] samples) {
+            this.samples = samples;
+        }
+
+        /**
+         * Returns the number of samples
+         */
+        public int getCount() {
+            return samples.length;
+        }
+
+        /**
+         * Returns the maximum duration (ns)
+         */
+        public long getMax() {
+            return samples.length > 0 ? samples[samples.length - 1] : 0;
+        }
+
+        /**
+         * Returns the mean duration (ns)
+         */
+        public double getMean() {
+            return samples.length > 0 ? (double) Arrays.stream(samples).sum() / samples.length : 0;
+        }
+
+        /**
+         * Returns the duration percentile (ns)
+         *
+         * @param q the quantile in range 0, 1
+         */
+        public long getPercentile(double q) {
+            assert q >= 0 && q <= 1 : format("quantile must be in range 0, 1 (%g)", q);
+            if (samples.length == 0) {
+                return 0;
+            }
+            int i = (int) Math.ceil(q * samples.length) - 1;
+            return samples[Math.max(i, 0)];
+        }
+    }
+
+    /**
+     * Ring of the last durations of a phase
+     */
+    static class Window {
+        private final long[] samples;
+        private int count;
+        private int next;
+
+        /**
+         * Creates the window
+         *
+         * @param size the window size
+         */
+        Window(int size) {
+            this.samples = new long[size];
+        }
+
+        /**
+         * Adds a duration
+         *
+         * @param nanos the duration (ns)
+         */
+        synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        /**
+         * Returns the histogram of the durations
+         */
+        synchronized Histogram histogram() {
+            long[] result = Arrays.copyOf(samples, count);
+            Arrays.sort(result);
+            return new Histogram(result);
+        }
+    }
+}
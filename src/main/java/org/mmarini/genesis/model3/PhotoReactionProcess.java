@@ -123,9 +123,10 @@ public class PhotoReactionProcess {
                 : format("distribution must be 1 x n (%d x %d)",
                 distribution.getNumRows(), distribution.getNumCols());
         // Computes the max resources limited by resource flux availability  (1 x noIndividuals)
-        Matrix maxResourcesForSpeed = distribution.copy().muli(speed).muli(dt);
+        Matrix maxResourcesForSpeed = distribution.lazy().muli(speed).muli(dt);
         // Computes the need for reference resource (1 x noIndividuals)
-        Matrix maxResourceNeed = resources.extractRow(ref)
+        Matrix maxResourceNeed = resources.viewRow(ref)
+                .lazy()
                 .subi(targetLevel)
                 .negi()
                 .maxi(0)
@@ -136,6 +137,22 @@ public class PhotoReactionProcess {
         return reaction.apply(ref, resourceToProduce);
     }
 
+    /**
+     * Applies the photo reaction to the resources of an individual
+     * (single individual version of {@link #computeChanges(Matrix, Matrix, double, Matrix)})
+     *
+     * @param resources    the resources of individual (noResources) changed in place
+     * @param targetLevel  the reference resource target level of individual
+     * @param dt           the time interval
+     * @param distribution the distribution of speed of individual
+     */
+    void apply(final double[] resources, final double targetLevel, final double dt, final double distribution) {
+        final double maxResourceForSpeed = distribution * speed * dt;
+        final double maxResourceNeed = Math.min(Math.max(-(resources[ref] - targetLevel), 0), maxResourceForSpeed);
+        final double resourceToProduce = reaction.max(ref, resources, maxResourceNeed, dt);
+        reaction.apply(ref, resourceToProduce, resources);
+    }
+
     /**
      * Returns the levels for each individual (1 x noIndividuals)
      *
@@ -147,7 +164,7 @@ public class PhotoReactionProcess {
                 : format("signals must be (1 x n) (%d x %d)",
                 signals.getNumRows(), signals.getNumCols());
 
-        return signals.copy().muli(log(maxLevel / minLevel)).expi().muli(minLevel);
+        return signals.lazy().muli(log(maxLevel / minLevel)).expi().muli(minLevel).eval();
     }
 
     /**
@@ -161,6 +178,6 @@ public class PhotoReactionProcess {
                 : format("signals must be (1 x n) (%d x %d)",
                 levels.getNumRows(), levels.getNumCols());
 
-        return levels.copy().divi(minLevel).logi().divi(maxLevel / minLevel);
+        return levels.lazy().divi(minLevel).logi().divi(maxLevel / minLevel).eval();
     }
 }
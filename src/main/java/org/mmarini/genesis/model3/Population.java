@@ -30,20 +30,71 @@
 package org.mmarini.genesis.model3;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
+import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 import static org.mmarini.genesis.model3.Matrix.*;
 
 /**
  * The population is a set of individual of the same species with
  * available resources, location for each individual, parameters for
- * each group of genes
+ * each group of genes.
+ * <p>
+ * The masses and the surfaces of individuals are memoized until the population processes
+ * change the resources.
+ * The resources changed directly by {@link #getResources()} require {@link #invalidate()}
+ * </p>
+ * <p>
+ * The matrices created by the population processes are owned by the population and
+ * the clones are appended in place in the reserved columns of the owned matrices
+ * (see {@link Matrix#appendColsi(Matrix)}).
+ * The ownership moves with the matrices: cloning and retaining move the owned matrices to the result,
+ * copying makes this population and the copy share the signals, so neither of them changes the signals
+ * in place after the copy (the next clone or retain copies them).
+ * </p>
  */
 public class Population {
+    /**
+     * Returns the matrix with the appended columns.
+     * The columns are appended in place if the matrix is owned by the population
+     * else a new matrix is created
+     *
+     * @param matrix the matrix
+     * @param cols   the appending columns
+     * @param owned  true if the matrix is owned by the population
+     */
+    static Matrix appendCols(final Matrix matrix, final Matrix cols, final boolean owned) {
+        return owned ? matrix.appendColsi(cols) : hstack(matrix, cols);
+    }
+
+    /**
+     * Returns the signals with the appended mutated clones of parents
+     *
+     * @param signals     the signals
+     * @param owned       true if the signals are owned by the population
+     * @param probability the mutation probability
+     * @param sigma       the mutation sigma
+     * @param random      the random generator
+     * @param parents     the parent indices
+     */
+    static List<Matrix> cloneSignals(final List<Matrix> signals,
+                                     final boolean owned,
+                                     final double probability,
+                                     final double sigma,
+                                     final Random random,
+                                     final int... parents) {
+        return signals.stream()
+                .map(m -> appendCols(m,
+                        SignalClone.clone(m.extractCols(parents), probability, sigma, random),
+                        owned))
+                .collect(Collectors.toList());
+    }
+
     /**
      * Return a copy of genes
      *
@@ -56,6 +107,33 @@ public class Population {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Returns the genes of the retained individuals.
+     * The genes are compacted in place if they are owned by the population else they are copied
+     *
+     * @param genes       the genes
+     * @param owned       true if the genes are owned by the population
+     * @param individuals the increasing indices of retained individuals
+     */
+    static List<Matrix> retainGenes(final List<Matrix> genes, final boolean owned, final int[] individuals) {
+        return owned
+                ? genes.stream().map(gene -> gene.retainColsi(individuals)).collect(Collectors.toList())
+                : copyGenes(genes, individuals);
+    }
+
+    /**
+     * Returns the views of a range of columns of genes
+     *
+     * @param genes    the genes
+     * @param startCol the first column
+     * @param endCol   the last column
+     */
+    static List<Matrix> viewGenes(final List<Matrix> genes, final int startCol, final int endCol) {
+        return genes.stream().map(gene ->
+                        gene.viewRange(0, gene.getNumRows() - 1, startCol, endCol))
+                .collect(Collectors.toList());
+    }
+
     /**
      * Returns a population
      *
@@ -79,6 +157,12 @@ public class Population {
     private final List<Matrix> pipSignals;
     private final int[] locations;
     private final Species species;
+    private Matrix cachedMolecularMasses;
+    private Matrix cachedMasses;
+    private Matrix cachedSurfaces;
+    private CellIndex cellIndex;
+    private boolean ownsResources;
+    private boolean ownsSignals;
 
     /**
      * Creates a population
@@ -120,7 +204,43 @@ public class Population {
     }
 
     /**
-     * Returns the population with a set of cloned individual
+     * Returns the chunks of individuals of this population.
+     * Each chunk is a population viewing a range of individuals,
+     * the resources of chunk are written through the resources of this population so
+     * the individual processes (maintain, photo and reaction processes)
+     * may be applied to the chunks concurrently.
+     * The population is a single chunk if it has no more individuals than the chunk size.
+     *
+     * @param chunkSize the maximum number of individuals of a chunk
+     */
+    public List<Population> chunks(final int chunkSize) {
+        assert chunkSize > 0 : String.format("chunk size must be positive (%d)", chunkSize);
+        final int n = locations.length;
+        if (n <= chunkSize) {
+            return List.of(this);
+        }
+        // the chunks change the resources
+        invalidate();
+        final int noRows = resources.getNumRows();
+        return IntStream.range(0, (n + chunkSize - 1) / chunkSize)
+                .mapToObj(i -> {
+                    final int from = i * chunkSize;
+                    final int to = Math.min(from + chunkSize, n);
+                    return new Population(resources.viewRangei(0, noRows - 1, from, to - 1),
+                            viewGenes(photoTargetLevels, from, to - 1),
+                            viewGenes(reactionTargetLevels, from, to - 1),
+                            viewGenes(eipSignals, from, to - 1),
+                            viewGenes(pipSignals, from, to - 1),
+                            Arrays.copyOfRange(locations, from, to),
+                            species);
+                })
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the population with a set of cloned individual.
+     * The owned matrices of this population are moved to the result with the clones appended in place,
+     * so this population must not be used after cloning.
      *
      * @param random       the random generator
      * @param locationProb the location probabilities 4x1
@@ -147,34 +267,46 @@ public class Population {
         }
         final int[] cloneLocations = createCloneLocations(random, locationProb, topology, ind);
 
+        final boolean owned = ownsResources;
+        final boolean ownedSignals = ownsSignals;
+        // The storage of this population is moved to the result
+        ownsResources = false;
+        ownsSignals = false;
+
         // Computes the signals of clones
-        List<Matrix> cloneIp = SignalClone.clone(reactionTargetLevels, cloneProb, mutationProb, random, ind);
-        List<Matrix> cloneEip = SignalClone.clone(eipSignals, cloneProb, mutationProb, random, ind);
-        List<Matrix> clonePip = SignalClone.clone(pipSignals, cloneProb, mutationProb, random, ind);
+        final List<Matrix> clonePhoto = cloneSignals(photoTargetLevels, ownedSignals, cloneProb, mutationProb, random, ind);
+        final List<Matrix> cloneIp = cloneSignals(reactionTargetLevels, ownedSignals, cloneProb, mutationProb, random, ind);
+        final List<Matrix> cloneEip = cloneSignals(eipSignals, ownedSignals, cloneProb, mutationProb, random, ind);
+        final List<Matrix> clonePip = cloneSignals(pipSignals, ownedSignals, cloneProb, mutationProb, random, ind);
 
         // Creates the clone individual resources
-        int n = resources.getNumCols();
-        int n1 = n + ind.length;
-        int[] newIdx = IntStream.range(n, n1).toArray();
-        Matrix dq = resources.extractCols(ind)
+        final int n = resources.getNumCols();
+        final int n1 = n + ind.length;
+        final Matrix dq = resources.extractCols(ind)
                 .muli(kMass)
                 .assignRows(energy, energyRef);
 
-        // Creates the changes of parent individual resources
-        Matrix dq1 = zeros(resources.getNumRows(), n1)
-                .assignCols(dq, newIdx)
-                .assignCols(dq.negi(), ind);
+        // Computes the parent individual resources
+        final Matrix parents = resources.extractCols(ind).subi(dq);
 
-        // Create the population resources with the clone
-        Matrix newQties = zeros(resources.getNumRows(), n1)
-                .assign(resources, 0, 0)
-                .addi(dq1);
+        // Appends the clones and changes only the parent columns
+        final Matrix newQties = appendCols(resources, dq, owned)
+                .assignCols(parents, ind);
+        if (owned) {
+            invalidate();
+        }
 
         // Creates the final individual locations
-        int[] newLoc = Arrays.copyOf(locations, n1);
+        final int[] newLoc = Arrays.copyOf(locations, n1);
         System.arraycopy(cloneLocations, 0, newLoc, n, cloneLocations.length);
 
-        return new Population(newQties, photoTargetLevels, cloneIp, cloneEip, clonePip, newLoc, species);
+        final Population result = new Population(newQties, clonePhoto, cloneIp, cloneEip, clonePip, newLoc, species);
+        result.ownsResources = true;
+        result.ownsSignals = true;
+        if (cellIndex != null) {
+            result.cellIndex = cellIndex.append(cloneLocations, n);
+        }
+        return result;
     }
 
     /**
@@ -187,7 +319,7 @@ public class Population {
                                        final ResourceGene gene) {
         final int ref = gene.getRef();
         // Computes the current reference levels (1 x ni)
-        final Matrix currentRefLevels = resources.extractRow(ref);
+        final Matrix currentRefLevels = resources.viewRow(ref);
         // Computes the maximum reference resource changes (1 x ni):
         // max(target - currentLevel, 0)
         final Matrix maxDelta = targetLevels.subi(currentRefLevels).maxi(0);
@@ -200,20 +332,53 @@ public class Population {
         final Matrix d = reaction.apply(ref, delta);
         // Updates the final quantities of individuals
         resources.addi(d);
+        invalidate();
         return this;
     }
 
     /**
-     *
+     * Returns a copy of population.
+     * Only the resources are copied, the signals and the locations are shared with the copy
+     * because they are never changed in place (the processes changing the individuals create new ones).
+     * This population remains usable after the copy, but it gives up the ownership of the signals,
+     * so its next clone or retain copies the signals instead of changing them in place.
      */
     public Population copy() {
-        return new Population(resources.copy(),
-                photoTargetLevels, reactionTargetLevels.stream().map(Matrix::copy).collect(Collectors.toList()),
-                eipSignals.stream().map(Matrix::copy).collect(Collectors.toList()),
-                pipSignals.stream().map(Matrix::copy).collect(Collectors.toList()),
-                Arrays.copyOf(locations, locations.length),
+        return copy(null);
+    }
+
+    /**
+     * Returns a copy of population writing the resources in the resources of a buffer population
+     * if they have the same size (see {@link #copy()}).
+     * The buffer gives up the ownership of its resources when they are reused, so it must not be used
+     * after the copy.
+     *
+     * @param buffer the population whose resources may be overwritten or null if none
+     */
+    public Population copy(final Population buffer) {
+        final Matrix bufferResources = buffer != null ? buffer.resources : null;
+        final Matrix resources1 = bufferResources != null
+                && bufferResources != resources
+                && bufferResources.getNumRows() == resources.getNumRows()
+                && bufferResources.getNumCols() == resources.getNumCols()
+                ? bufferResources.assign(resources, 0, 0)
+                : resources.copy();
+        final Population result = new Population(resources1,
+                photoTargetLevels, reactionTargetLevels, eipSignals, pipSignals, locations,
                 species
         );
+        // The copy has the same resources
+        result.cachedMolecularMasses = cachedMolecularMasses;
+        result.cachedMasses = cachedMasses;
+        result.cachedSurfaces = cachedSurfaces;
+        result.cellIndex = cellIndex;
+        // The copy owns the resources and shares the signals
+        result.ownsResources = true;
+        if (resources1 == bufferResources) {
+            buffer.ownsResources = false;
+        }
+        ownsSignals = false;
+        return result;
     }
 
     /**
@@ -243,8 +408,8 @@ public class Population {
      * @param masses       the masses by resources (numResources x 1)
      */
     Matrix distributeBySurface(Matrix totalSurface, Matrix masses) {
-        Matrix surfaces = getIndividualSurface(masses);
-        Matrix totByIndividuals = totalSurface.extractCols(locations);
+        Matrix surfaces = getIndividualSurface(masses).scratchCopy();
+        Matrix totByIndividuals = totalSurface.scratchCols(locations);
         return surfaces.divi(totByIndividuals);
     }
 
@@ -264,9 +429,31 @@ public class Population {
                                         final Matrix totalAreasByIndividual,
                                         final Matrix molecularMasses,
                                         final Matrix exchangeRates) {
+        return exchangeResources(dt, targets, envResources, envResources, totalAreasByIndividual, molecularMasses, exchangeRates);
+    }
+
+    /**
+     * Returns this population by exchanging the individual resource with environment resources
+     * reading the available environment resources and writing the environment changes in different matrices
+     *
+     * @param dt                     the time interval
+     * @param targets                the resource targets (nr x ni)
+     * @param envResources           the environ resources (nr x nc)
+     * @param envChanges             the environ resources changes (nr x nc)
+     * @param totalAreasByIndividual the areas by individuals (1 x ni)
+     * @param molecularMasses        the molecular masses (nr x 1)
+     * @param exchangeRates          exchange rates (1/mol/dt) (nr x 1)
+     */
+    public Population exchangeResources(final double dt,
+                                        final Matrix targets,
+                                        final Matrix envResources,
+                                        final Matrix envChanges,
+                                        final Matrix totalAreasByIndividual,
+                                        final Matrix molecularMasses,
+                                        final Matrix exchangeRates) {
         // Computes the maximum individual resource changes (nr x ni):
         // individualResources * surface / areas,
-        final Matrix maxIndExchanges = envResources.extractCols(locations)
+        final Matrix maxIndExchanges = envResources.scratchCols(locations)
                 .divi(totalAreasByIndividual)
                 .muli(getIndividualSurface(molecularMasses));
         // Computes the resource changes by individual:
@@ -274,14 +461,51 @@ public class Population {
         final Matrix dIndResources = targets.subi(resources)
                 .mini(maxIndExchanges)
                 .muli(exchangeRates)
-                .muli(dt);
+                .muli(dt)
+                .eval();
         // updates the individual resources
         resources.addi(dIndResources);
+        invalidate();
         // updates the environments resources
-        envResources.mapiCols((v, i, j, k) -> v - dIndResources.get(i, j), locations);
+        envChanges.mapiColsAsDouble((v, i, j, k) -> v - dIndResources.get(i, j), locations);
         return this;
     }
 
+    /**
+     * Returns the index of individuals by cell
+     * The index is built at the first request and derived incrementally by the populations
+     * changing the individuals (see {@link #cloneIndividuals} and {@link #survive(int, Matrix, Matrix)})
+     */
+    public CellIndex getCellIndex() {
+        if (cellIndex == null) {
+            cellIndex = CellIndex.create(locations);
+        }
+        return cellIndex;
+    }
+
+    /**
+     * Returns the disorder of individual locations as the fraction of consecutive individuals
+     * with decreasing cell rank (0 if the individuals are sorted by cell rank)
+     *
+     * @param cellRanks the rank of each cell in the locality order
+     */
+    public double getDisorder(final int[] cellRanks) {
+        final int n = locations.length;
+        if (n < 2) {
+            return 0;
+        }
+        int descents = 0;
+        int rank = cellRanks[locations[0]];
+        for (int j = 1; j < n; j++) {
+            final int rank1 = cellRanks[locations[j]];
+            if (rank1 < rank) {
+                descents++;
+            }
+            rank = rank1;
+        }
+        return (double) descents / (n - 1);
+    }
+
     /**
      *
      */
@@ -298,12 +522,18 @@ public class Population {
 
     /**
      * Returns masses ^ (2/3) * areaByMass (1 x numIndividuals)
+     * The result is a read-only view of the memoized surfaces
      *
      * @param masses resource molecular masses (numResources x 1)
      */
     public Matrix getIndividualSurface(Matrix masses) {
-        return getMasses(masses)
-                .powi(species.getFractalDimension() / 3);
+        final Matrix indMasses = getMasses(masses);
+        if (cachedSurfaces == null) {
+            cachedSurfaces = indMasses.lazy()
+                    .powi(species.getFractalDimension() / 3)
+                    .eval();
+        }
+        return cachedSurfaces.viewRow(0);
     }
 
     /**
@@ -315,11 +545,17 @@ public class Population {
 
     /**
      * Returns the masses of individuals (1 x ni)
+     * The result is a read-only view of the memoized masses
      *
      * @param masses the molecular masses
      */
     public Matrix getMasses(Matrix masses) {
-        return resources.copy().muli(masses).sumCols();
+        if (cachedMasses == null || cachedMolecularMasses != masses) {
+            cachedMasses = resources.lazy().muli(masses).sumCols();
+            cachedSurfaces = null;
+            cachedMolecularMasses = masses;
+        }
+        return cachedMasses.viewRow(0);
     }
 
     /**
@@ -365,10 +601,17 @@ public class Population {
      */
     public Matrix getTotalSurface(Matrix masses, int noCells) {
         Matrix indMasses = getIndividualSurface(masses);
-        Matrix result = Matrix.zeros(1, noCells);
-        result.mapiCols((v, i, j, k) -> v + indMasses.get(i, j),
-                locations);
-        return result;
+        return getCellIndex().addByCell(indMasses, Matrix.scratch(1, noCells));
+    }
+
+    /**
+     * Invalidates the memoized masses and surfaces after changing the resources
+     */
+    public Population invalidate() {
+        cachedMolecularMasses = null;
+        cachedMasses = null;
+        cachedSurfaces = null;
+        return this;
     }
 
     /**
@@ -381,13 +624,12 @@ public class Population {
      */
     public Population maintain(double dt, int energyRow, Matrix molecularMasses) {
         // Computes the required basal metabolic energy
-        Matrix reqEnergy = getMasses(molecularMasses)
+        Matrix reqEnergy = getMasses(molecularMasses).lazy()
                 .muli(species.getBasalMetabolicRate())
                 .muli(dt);
-        // Compute the remainder energy
-        Matrix energy = resources.extractRow(energyRow).subi(reqEnergy);
-        Matrix erg = energy.maxi(0);
-        resources.assignRows(erg, energyRow);
+        // Compute the remainder energy in place
+        resources.viewRowi(energyRow).subi(reqEnergy).maxi(0);
+        invalidate();
         return this;
     }
 
@@ -413,7 +655,7 @@ public class Population {
                                    final CloneGene gene
     ) {
         // Computes the remaining mass
-        final Matrix dMass = getMasses(molecularMasses)
+        final Matrix dMass = getMasses(molecularMasses).lazy()
                 .subi(massThresholds)
                 .maxi(0);
         // Computes the remaining energy
@@ -423,11 +665,11 @@ public class Population {
                 .subi(energyThresholds)
                 .maxi(0);
         // Computes the mass probability
-        final Matrix massProb = dMass.copy()
+        final Matrix massProb = dMass.lazy()
                 .muli(dt).muli(massCloneProbRate)
                 .negi().expm1i().negi();
         // Computes the energy probability
-        final Matrix energyProb = dErg.copy()
+        final Matrix energyProb = dErg.lazy()
                 .muli(dt).muli(energyCloneProbRate)
                 .negi().expm1i().negi();
         // Computes the probability
@@ -472,7 +714,7 @@ public class Population {
         final int n = pipGenes.size();
         Population pop = this;
         for (int i = 0; i < n; i++) {
-            pop = pipGenes.get(i).execute(pop, pop.eipSignals.get(i), dt, molecularMasses, topology, random);
+            pop = pipGenes.get(i).execute(pop, pop.pipSignals.get(i), dt, molecularMasses, topology, random);
         }
         return pop;
     }
@@ -489,11 +731,29 @@ public class Population {
                                                final Matrix envResources,
                                                final Matrix areasByIndividual,
                                                final Matrix molecularMasses) {
+        return processEnvironIndividual(dt, envResources, envResources, areasByIndividual, molecularMasses);
+    }
+
+    /**
+     * Returns the population after the environment individual processes
+     * reading the available environment resources and writing the environment changes in different matrices
+     *
+     * @param dt                the time interval
+     * @param envResources      the environment resources (nr x nc)
+     * @param envChanges        the environment resources changes (nr x nc)
+     * @param areasByIndividual the areas by individual (1 x ni)
+     * @param molecularMasses   the molecular masses (nr x 1)
+     */
+    public Population processEnvironIndividual(final double dt,
+                                               final Matrix envResources,
+                                               final Matrix envChanges,
+                                               final Matrix areasByIndividual,
+                                               final Matrix molecularMasses) {
         final List<? extends EIPGene> eipGenes = species.getEipGenes();
         final int n = eipGenes.size();
         Population pop = this;
         for (int i = 0; i < n; i++) {
-            pop = eipGenes.get(i).execute(pop, pop.eipSignals.get(i), dt, envResources, areasByIndividual, molecularMasses);
+            pop = eipGenes.get(i).execute(pop, pop.eipSignals.get(i), dt, envResources, envChanges, areasByIndividual, molecularMasses);
         }
         return pop;
     }
@@ -514,6 +774,7 @@ public class Population {
         for (int i = 0; i < noGenes; i++) {
             Matrix changes = processes.get(i).computeChanges(getResources(), photoTargetLevels.get(i), dt, distribution);
             getResources().addi(changes);
+            invalidate();
         }
         return this;
     }
@@ -529,14 +790,62 @@ public class Population {
         for (int i = 0; i < noGenes; i++) {
             Matrix changes = processes.get(i).computeChanges(getResources(), reactionTargetLevels.get(i), dt);
             getResources().addi(changes);
+            invalidate();
         }
         return this;
     }
 
+    /**
+     * Returns the population with the individuals sorted by cell in a locality order
+     * so the gathers and the scatters of the environment resources are near sequential.
+     * The individuals of the same cell keep their relative order
+     *
+     * @param cellOrder the cells in locality order
+     */
+    public Population sortByCell(final int[] cellOrder) {
+        final CellIndex index = getCellIndex();
+        final int n = locations.length;
+        final int noCells = index.getNoCells();
+        // The permutation of individuals and the index of the sorted individuals
+        final int[] order = new int[n];
+        final int[] offsets = new int[noCells + 1];
+        final int[] individuals = new int[n];
+        int m = 0;
+        for (int cell : cellOrder) {
+            if (cell < noCells) {
+                final int start = index.getStart(cell);
+                final int end = index.getEnd(cell);
+                for (int k = start; k < end; k++) {
+                    individuals[k] = m;
+                    order[m++] = index.getIndividual(k);
+                }
+            }
+        }
+        assert m == n : format("cell order must contain all the locations (%d != %d)", m, n);
+        for (int cell = 0; cell < noCells; cell++) {
+            offsets[cell + 1] = index.getEnd(cell);
+        }
+        final int[] locations1 = new int[n];
+        for (int j = 0; j < n; j++) {
+            locations1[j] = locations[order[j]];
+        }
+        final Population result = new Population(resources.extractCols(order),
+                copyGenes(photoTargetLevels, order),
+                copyGenes(reactionTargetLevels, order),
+                copyGenes(eipSignals, order),
+                copyGenes(pipSignals, order),
+                locations1, species);
+        result.cellIndex = new CellIndex(offsets, individuals);
+        result.ownsResources = true;
+        result.ownsSignals = true;
+        return result;
+    }
+
     /**
      * Returns the population changed by maintenance.
      * Removes the individuals with no energy and no sufficient mass
-     * releasing the resource in the environment
+     * releasing the resource in the environment.
+     * Returns this population if no individual dies else the compacted population (see {@link #retain(int[])})
      *
      * @param energyRow    the index of energy resources
      * @param masses       the mass of resources
@@ -548,25 +857,83 @@ public class Population {
         requireNonNull(masses);
         requireNonNull(envResources);
         final Matrix indMasses = getMasses(masses);
-        // Gets the surviving individuals index
-        final int[] surviving = IntStream.range(0, locations.length)
-                .filter(j ->
-                        !(indMasses.get(0, j) < species.getSurvivingMass()
-                                || resources.get(energyRow, j) <= 0)
-                ).toArray();
-        // Transfers resource of dying individuals to environment
-        IntStream.range(0, locations.length)
-                .filter(j ->
-                        indMasses.get(0, j) < species.getSurvivingMass()
-                                || resources.get(energyRow, j) <= 0
-                ).forEach(j -> envResources.assignCol(locations[j],
-                        (v, i) -> v + resources.get(i, j)
-                ));
-        final Matrix survivedIndResources = resources.extractCols(surviving);
-        final List<Matrix> ipSignals1 = copyGenes(reactionTargetLevels, surviving);
-        final List<Matrix> eipSignals1 = copyGenes(eipSignals, surviving);
-        final List<Matrix> pipSignals1 = copyGenes(pipSignals, surviving);
-        final int[] survivedIndLoc = IntStream.of(surviving).map(i -> locations[i]).toArray();
-        return new Population(survivedIndResources, photoTargetLevels, ipSignals1, eipSignals1, pipSignals1, survivedIndLoc, species);
+        final double survivingMass = species.getSurvivingMass();
+        final int n = locations.length;
+        // Marks the dying individuals in a single pass
+        final BitSet dying = new BitSet(n);
+        for (int j = 0; j < n; j++) {
+            if (indMasses.get(0, j) < survivingMass || resources.get(energyRow, j) <= 0) {
+                // Transfers resource of dying individuals to environment
+                final int col = j;
+                envResources.assignColAsDouble(locations[j], (v, i) -> v + resources.get(i, col));
+                dying.set(j);
+            }
+        }
+        if (dying.isEmpty()) {
+            return this;
+        }
+        final int[] surviving = new int[n - dying.cardinality()];
+        for (int j = dying.nextClearBit(0), k = 0; j < n; j = dying.nextClearBit(j + 1)) {
+            surviving[k++] = j;
+        }
+        return retain(surviving);
+    }
+
+    /**
+     * Returns the population of the retained individuals.
+     * The owned matrices of this population are compacted in place and moved to the result
+     * (see {@link Matrix#retainColsi(int...)}), so this population must not be used after the change.
+     *
+     * @param individuals the increasing indices of retained individuals
+     */
+    Population retain(final int[] individuals) {
+        final boolean owned = ownsResources;
+        final boolean ownedSignals = ownsSignals;
+        ownsResources = false;
+        ownsSignals = false;
+        final Matrix resources1 = owned
+                ? resources.retainColsi(individuals)
+                : resources.extractCols(individuals);
+        if (owned) {
+            invalidate();
+        }
+        final int[] locations1 = new int[individuals.length];
+        for (int j = 0; j < individuals.length; j++) {
+            locations1[j] = locations[individuals[j]];
+        }
+        final Population result = new Population(resources1,
+                retainGenes(photoTargetLevels, ownedSignals, individuals),
+                retainGenes(reactionTargetLevels, ownedSignals, individuals),
+                retainGenes(eipSignals, ownedSignals, individuals),
+                retainGenes(pipSignals, ownedSignals, individuals),
+                locations1, species);
+        if (cellIndex != null) {
+            result.cellIndex = cellIndex.select(individuals, locations.length);
+        }
+        result.ownsResources = true;
+        result.ownsSignals = true;
+        return result;
+    }
+
+    /**
+     * Returns the population of the selected individuals
+     *
+     * @param individuals the indices of selected individuals
+     */
+    Population select(final int[] individuals) {
+        final Matrix resources1 = resources.extractCols(individuals);
+        final List<Matrix> photoTargetLevels1 = copyGenes(photoTargetLevels, individuals);
+        final List<Matrix> ipSignals1 = copyGenes(reactionTargetLevels, individuals);
+        final List<Matrix> eipSignals1 = copyGenes(eipSignals, individuals);
+        final List<Matrix> pipSignals1 = copyGenes(pipSignals, individuals);
+        final int[] locations1 = IntStream.of(individuals).map(i -> locations[i]).toArray();
+        final Population result = new Population(resources1, photoTargetLevels1, ipSignals1, eipSignals1, pipSignals1,
+                locations1, species);
+        if (cellIndex != null) {
+            result.cellIndex = cellIndex.select(individuals, locations.length);
+        }
+        result.ownsResources = true;
+        result.ownsSignals = true;
+        return result;
     }
 }
\ No newline at end of file
@@ -29,6 +29,7 @@
 
 package org.mmarini.genesis.model3;
 
+import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -106,8 +107,27 @@ public class Reaction {
      */
     public Matrix apply(int ref, Matrix dc) {
         requireNonNull(dc);
-        Matrix prod = alpha.prod(dc);
-        return prod.divi(alpha.get(ref, 0));
+        final Matrix dcm = dc.eval();
+        assert dcm.getNumRows() == 1
+                : format("dc must be 1 x n (%d x %d)", dcm.getNumRows(), dcm.getNumCols());
+        final double alphaRef = alpha.get(ref, 0);
+        return Matrix.scratch(alpha.getNumRows(), dcm.getNumCols())
+                .mapiAsDouble((v, i, j) -> alpha.get(i, 0) * dcm.get(0, j) / alphaRef);
+    }
+
+    /**
+     * Applies to the resources of an individual the changes by a change of referenced
+     * (single individual version of {@link #apply(int, Matrix)})
+     *
+     * @param ref       the reference substance index
+     * @param dc        the change of concentration of reference substance
+     * @param resources the resources of individual (nr) changed in place
+     */
+    void apply(final int ref, final double dc, final double[] resources) {
+        final double alphaRef = alpha.get(ref, 0);
+        for (int i = 0; i < resources.length; i++) {
+            resources[i] += alpha.get(i, 0) * dc / alphaRef;
+        }
     }
 
     /**
@@ -150,7 +170,8 @@ public class Reaction {
         requireNonNull(resources);
         // Computes the max reaction product limited by speeds
         Matrix maxBySpeed = resources
-                .extractRows(speedMap)
+                .scratchRows(speedMap)
+                .lazyi()
                 // computes the max speed resources for each factors
                 .muli(speeds)
                 .muli(dt)
@@ -159,7 +180,8 @@ public class Reaction {
 
         // Computes the max reaction product limited by resources
         Matrix effectiveReagents = resources
-                .extractRows(reagentMap)
+                .scratchRows(reagentMap)
+                .lazyi()
                 .subi(thresholds)
                 .maxi(0.0);
         Matrix maxByResources = effectiveReagents
@@ -170,6 +192,32 @@ public class Reaction {
         return maxBySpeed.mini(maxByResources);
     }
 
+    /**
+     * Returns the maximum reaction reference resource of an individual limited by a reference value
+     * (single individual version of {@link #max(int, Matrix, Matrix, double)})
+     *
+     * @param ref          the reference resource index
+     * @param resources    the resources of individual (nr)
+     * @param maxReference the limited reference resource
+     * @param dt           the time interval
+     */
+    double max(final int ref, final double[] resources, final double maxReference, final double dt) {
+        // Computes the max reference resource limited by resource and speed
+        double maxBySpeed = Double.MAX_VALUE;
+        for (int k = 0; k < speedMap.length; k++) {
+            maxBySpeed = Math.min(maxBySpeed, resources[speedMap[k]] * speeds.get(k, 0) * dt);
+        }
+        // Computes the max reference resource limited by thresholds
+        final double alphaRef = alpha.get(ref, 0);
+        double maxByResources = Double.MAX_VALUE;
+        for (int k = 0; k < reagentMap.length; k++) {
+            final double effective = Math.max(resources[reagentMap[k]] - thresholds.get(k, 0), 0.0);
+            maxByResources = Math.min(maxByResources, effective / reagents.get(k, 0) * alphaRef);
+        }
+        // Computes the resulting reference resource
+        return Math.min(Math.min(maxBySpeed, maxByResources), maxReference);
+    }
+
     /**
      * Returns the maximum reaction reference resource (1 x n) for a given resources distributions,
      * and time interval limited by a references values
@@ -184,7 +232,8 @@ public class Reaction {
         requireNonNull(maxReferences);
         // Computes the max reference resource limited by resource and speed (1 x n)
         Matrix maxBySpeed = resources
-                .extractRows(speedMap)
+                .scratchRows(speedMap)
+                .lazyi()
                 // computes the max speed resources for each factors
                 .muli(speeds)
                 .muli(dt)
@@ -193,7 +242,8 @@ public class Reaction {
 
         // Computes the max reference resource limited by thresholds (1 x n)
         Matrix effectiveReagents = resources
-                .extractRows(reagentMap)
+                .scratchRows(reagentMap)
+                .lazyi()
                 .subi(thresholds)
                 .maxi(0.0);
         Matrix maxByResources = effectiveReagents
@@ -78,7 +78,7 @@ public class ReactionProcess {
         requireNonNull(resources);
         requireNonNull(targetLevels);
         // Computes the current reference levels (1 x noIndividuals)
-        Matrix currentRefLevels = resources.extractRow(ref);
+        Matrix currentRefLevels = resources.viewRow(ref).lazy();
         // Computes the maximum reference resource changes (1 x noIndividuals)
         // max(target - currentLevel, 0)
         Matrix maxDelta = currentRefLevels.subi(targetLevels).negi().maxi(0);
@@ -90,6 +90,20 @@ public class ReactionProcess {
         return reaction.apply(ref, deltaRef);
     }
 
+    /**
+     * Applies the reaction to the resources of an individual
+     * (single individual version of {@link #computeChanges(Matrix, Matrix, double)})
+     *
+     * @param resources   the resources of individual (noResources) changed in place
+     * @param targetLevel the reference resource target level of individual
+     * @param dt          the time interval
+     */
+    void apply(final double[] resources, final double targetLevel, final double dt) {
+        final double maxDelta = Math.max(-(resources[ref] - targetLevel), 0);
+        final double deltaRef = reaction.max(ref, resources, maxDelta, dt);
+        reaction.apply(ref, deltaRef, resources);
+    }
+
     /**
      * Returns the signals for each individuals (1 x noIndividuals)
      *
@@ -101,7 +115,7 @@ public class ReactionProcess {
                 : format("signals must be (1 x n) (%d x %d)",
                 levels.getNumRows(), levels.getNumCols());
 
-        return levels.copy().divi(minLevel).logi().divi(maxLevel / minLevel);
+        return levels.lazy().divi(minLevel).logi().divi(maxLevel / minLevel).eval();
     }
 
     /**
@@ -115,7 +129,7 @@ public class ReactionProcess {
                 : format("signals must be (1 x n) (%d x %d)",
                 signals.getNumRows(), signals.getNumCols());
 
-        return signals.copy().muli(log(maxLevel / minLevel)).expi().muli(minLevel);
+        return signals.lazy().muli(log(maxLevel / minLevel)).expi().muli(minLevel).eval();
 
     }
 
@@ -58,7 +58,7 @@ public class ResourceGene implements IPGene {
     public Population execute(Population population, Matrix signals, double dt, Matrix resources, Matrix areas, Matrix masses) {
         // Compute resource target levels
         final Matrix targetLevels = signals
-                .copy()
+                .lazy()
                 .muli(levelRate)
                 .expi()
                 .muli(minLevel);
@@ -0,0 +1,350 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.function.DoublePredicate;
+import java.util.function.DoubleUnaryOperator;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Scratch matrix guard created by a debug arena.
+ * <p>
+ * It delegates all the operations to the pooled matrix checking that the arena has not released it.
+ * </p>
+ */
+class ScratchMatrix implements Matrix {
+    private final Matrix matrix;
+    private final MatrixArena arena;
+    private final int generation;
+
+    /**
+     * Creates the scratch matrix
+     *
+     * @param matrix the pooled matrix
+     * @param arena  the arena
+     */
+    ScratchMatrix(Matrix matrix, MatrixArena arena) {
+        this.matrix = requireNonNull(matrix);
+        this.arena = requireNonNull(arena);
+        this.generation = arena.getGeneration();
+    }
+
+    @Override
+    public Matrix add(Matrix other) {
+        return check().add(other);
+    }
+
+    @Override
+    public Matrix addi(double other) {
+        return wrap(check().addi(other));
+    }
+
+    @Override
+    public Matrix addi(Matrix other) {
+        return wrap(check().addi(other));
+    }
+
+    @Override
+    public Matrix appendColsi(Matrix other) {
+        return wrap(check().appendColsi(other));
+    }
+
+    @Override
+    public Matrix assign(Matrix other, int row, int col) {
+        return wrap(check().assign(other, row, col));
+    }
+
+    @Override
+    public Matrix assignColAsDouble(int col, DoubleIntToDoubleFunction f) {
+        return wrap(check().assignColAsDouble(col, f));
+    }
+
+    @Override
+    public Matrix assignCols(Matrix other, int... cols) {
+        return wrap(check().assignCols(other, cols));
+    }
+
+    @Override
+    public Matrix assignRowAsDouble(int row, DoubleIntToDoubleFunction f) {
+        return wrap(check().assignRowAsDouble(row, f));
+    }
+
+    @Override
+    public Matrix assignRows(Matrix other, int... rows) {
+        return wrap(check().assignRows(other, rows));
+    }
+
+    @Override
+    public Matrix cdfiRows() {
+        return wrap(check().cdfiRows());
+    }
+
+    @Override
+    public int[] cellsOf(DoublePredicate p) {
+        return check().cellsOf(p);
+    }
+
+    /**
+     * Returns the pooled matrix if not released
+     *
+     * @throws IllegalStateException if the matrix has been released
+     */
+    private Matrix check() {
+        if (arena.getGeneration() != generation) {
+            throw new IllegalStateException("Scratch matrix used after the release of the arena");
+        }
+        return matrix;
+    }
+
+    @Override
+    public int[] choose(Matrix selector) {
+        return check().choose(selector);
+    }
+
+    @Override
+    public Matrix copy() {
+        return check().copy();
+    }
+
+    @Override
+    public Matrix createLike() {
+        return check().createLike();
+    }
+
+    @Override
+    public Matrix divi(double value) {
+        return wrap(check().divi(value));
+    }
+
+    @Override
+    public Matrix divi(Matrix other) {
+        return wrap(check().divi(other));
+    }
+
+    @Override
+    public Matrix eval() {
+        return check();
+    }
+
+    @Override
+    public Matrix expi() {
+        return wrap(check().expi());
+    }
+
+    @Override
+    public Matrix expm1i() {
+        return wrap(check().expm1i());
+    }
+
+    @Override
+    public Matrix extractCols(int... cols) {
+        return check().extractCols(cols);
+    }
+
+    @Override
+    public Matrix extractColumn(int col) {
+        return check().extractColumn(col);
+    }
+
+    @Override
+    public Matrix extractRow(int row) {
+        return check().extractRow(row);
+    }
+
+    @Override
+    public Matrix extractRows(int... rows) {
+        return check().extractRows(rows);
+    }
+
+    @Override
+    public double get(int row, int col) {
+        return check().get(row, col);
+    }
+
+    @Override
+    public int getNumCols() {
+        return check().getNumCols();
+    }
+
+    @Override
+    public int getNumRows() {
+        return check().getNumRows();
+    }
+
+    @Override
+    public Matrix insert(Matrix other, int row, int col) {
+        return check().insert(other, row, col);
+    }
+
+    @Override
+    public Matrix logi() {
+        return wrap(check().logi());
+    }
+
+    @Override
+    public Matrix lti() {
+        return wrap(check().lti());
+    }
+
+    @Override
+    public Matrix mapi(DoubleUnaryOperator mapper) {
+        return wrap(check().mapi(mapper));
+    }
+
+    @Override
+    public Matrix mapi(int startRow, int endRow, int startCol, int endCol, DoubleUnaryOperator mapper) {
+        return wrap(check().mapi(startRow, endRow, startCol, endCol, mapper));
+    }
+
+    @Override
+    public Matrix mapiAsDouble(int startRow, int endRow, int startCol, int endCol, DoubleIntIntToDoubleFunction mapper) {
+        return wrap(check().mapiAsDouble(startRow, endRow, startCol, endCol, mapper));
+    }
+
+    @Override
+    public Matrix mapiColsAsDouble(DoubleIntIntIntToDoubleFunction mapper, int... cols) {
+        return wrap(check().mapiColsAsDouble(mapper, cols));
+    }
+
+    @Override
+    public Matrix mapiRowsAsDouble(DoubleIntIntIntToDoubleFunction mapper, int... rows) {
+        return wrap(check().mapiRowsAsDouble(mapper, rows));
+    }
+
+    @Override
+    public double max() {
+        return check().max();
+    }
+
+    @Override
+    public Matrix maxi(double value) {
+        return wrap(check().maxi(value));
+    }
+
+    @Override
+    public double min() {
+        return check().min();
+    }
+
+    @Override
+    public Matrix minCols() {
+        return check().minCols();
+    }
+
+    @Override
+    public Matrix mini(double value) {
+        return wrap(check().mini(value));
+    }
+
+    @Override
+    public Matrix mini(Matrix other) {
+        return wrap(check().mini(other));
+    }
+
+    @Override
+    public Matrix muli(double other) {
+        return wrap(check().muli(other));
+    }
+
+    @Override
+    public Matrix muli(Matrix other) {
+        return wrap(check().muli(other));
+    }
+
+    @Override
+    public Matrix negi() {
+        return wrap(check().negi());
+    }
+
+    @Override
+    public Matrix powi(double value) {
+        return wrap(check().powi(value));
+    }
+
+    @Override
+    public Matrix prod(Matrix other) {
+        return check().prod(other);
+    }
+
+    @Override
+    public Matrix retainColsi(int... cols) {
+        return wrap(check().retainColsi(cols));
+    }
+
+    @Override
+    public Matrix set(int row, int col, double value) {
+        return wrap(check().set(row, col, value));
+    }
+
+    @Override
+    public Matrix softmaxi() {
+        return wrap(check().softmaxi());
+    }
+
+    @Override
+    public Matrix subi(double value) {
+        return wrap(check().subi(value));
+    }
+
+    @Override
+    public Matrix subi(Matrix other) {
+        return wrap(check().subi(other));
+    }
+
+    @Override
+    public Matrix sumCols() {
+        return check().sumCols();
+    }
+
+    @Override
+    public String toString() {
+        return check().toString();
+    }
+
+    @Override
+    public Matrix trasposei() {
+        return wrap(check().trasposei());
+    }
+
+    /**
+     * Returns this guard if the result is the pooled matrix or the result
+     *
+     * @param result the result
+     */
+    private Matrix wrap(Matrix result) {
+        return result == matrix ? this : result;
+    }
+
+    @Override
+    public Matrix view(int startRow, int endRow, int startCol, int endCol, boolean writable) {
+        return check().view(startRow, endRow, startCol, endCol, writable);
+    }
+}
@@ -50,9 +50,10 @@ public class SignalClone {
                         final double sigma,
                         final Random random) {
         Matrix p = rand(signals.getNumRows(), signals.getNumCols(), random)
+                .lazyi()
                 .subi(probability)
                 .lti();
-        Matrix ds = randn(signals.getNumRows(), signals.getNumCols(), random).muli(sigma).muli(p);
+        Matrix ds = randn(signals.getNumRows(), signals.getNumCols(), random).lazyi().muli(sigma).muli(p);
         return ds.addi(signals).maxi(0).mini(1);
     }
 
@@ -29,12 +29,18 @@
 
 package org.mmarini.genesis.model3;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static java.util.Objects.requireNonNull;
-import static org.mmarini.genesis.model3.Matrix.ones;
 
 /**
  * Simulation engine computes the simulation status transitions
@@ -43,8 +49,24 @@ import static org.mmarini.genesis.model3.Matrix.ones;
  * the environment topology,
  * the diffusion coefficient for each environment resource,
  * the reference resource for energy used to simulate the survival.
+ * <p>
+ * The independent populations may be processed in parallel on a pool of threads.
+ * In this mode the phases changing the environment resources accumulate the changes
+ * of each chunk of populations in a separate buffer and the buffers are added to the environment
+ * in chunk order after the phase so the result is deterministic for a given number of threads.
+ * The individual processes (maintain, photo and reaction processes) split the populations larger than
+ * the chunk size in chunks of individuals processed in parallel too.
+ * </p>
  */
 public class SimEngine {
+    public static final int DEFAULT_CHUNK_SIZE = 4096;
+    public static final String PHASED_KERNEL = "phased";
+    public static final String FUSED_KERNEL = "fused";
+    /**
+     * The disorder threshold disabling the population sort
+     */
+    public static final double NO_SORT_THRESHOLD = 1;
+
     /**
      * Returns a simulation engine
      *
@@ -77,9 +99,17 @@ public class SimEngine {
     private final Matrix diffusion;
     private final Matrix masses;
     private final int energyRef;
+    private final MatrixArena arena;
+    private final DiffusionSolver diffusionSolver;
+    private final ForkJoinPool populationPool;
+    private final int chunkSize;
+    private final FusedSpeciesKernel kernel;
+    private final PhaseProfiler profiler;
+    private final double sortThreshold;
+    private final int[] cellRanks;
 
     /**
-     * Creates a simulation engine
+     * Creates a simulation engine with the scratch arena selected by system property
      *
      * @param masses    the masses (noResources x 1)
      * @param topology  the topology
@@ -87,10 +117,48 @@ public class SimEngine {
      * @param energyRef the energy reference index
      */
     protected SimEngine(final Matrix masses, final Topology topology, final Matrix diffusion, int energyRef) {
+        this(masses, topology, diffusion, energyRef, MatrixArena.fromSystemProperties().orElse(null), null, null,
+                DEFAULT_CHUNK_SIZE, null, null, NO_SORT_THRESHOLD);
+    }
+
+    /**
+     * Creates a simulation engine
+     *
+     * @param masses          the masses (noResources x 1)
+     * @param topology        the topology
+     * @param diffusion       the diffusion configuration (noResources x 1)
+     * @param energyRef       the energy reference index
+     * @param arena           the scratch arena of tick temporary matrices or null if none
+     * @param diffusionSolver the diffusion solver or null for explicit diffusion
+     * @param populationPool  the pool processing the populations or null for serial processing
+     * @param chunkSize       the maximum number of individuals processed by a parallel task
+     * @param kernel          the fused species kernel or null for the phased processes
+     * @param profiler        the profiler of phase durations or null if none
+     * @param sortThreshold   the disorder of individual locations over which the populations are sorted by cell
+     */
+    protected SimEngine(final Matrix masses, final Topology topology, final Matrix diffusion, int energyRef,
+                        final MatrixArena arena, final DiffusionSolver diffusionSolver,
+                        final ForkJoinPool populationPool, final int chunkSize,
+                        final FusedSpeciesKernel kernel, final PhaseProfiler profiler,
+                        final double sortThreshold) {
         this.masses = requireNonNull(masses);
         this.topology = requireNonNull(topology);
         this.diffusion = requireNonNull(diffusion);
         this.energyRef = energyRef;
+        this.arena = arena;
+        this.diffusionSolver = diffusionSolver != null
+                ? diffusionSolver
+                : ExplicitDiffusion.create(topology, diffusion);
+        this.populationPool = populationPool;
+        this.chunkSize = chunkSize;
+        this.kernel = kernel;
+        this.profiler = profiler;
+        this.sortThreshold = sortThreshold;
+        final int[] cellOrder = topology.getCellOrder();
+        this.cellRanks = new int[cellOrder.length];
+        for (int i = 0; i < cellOrder.length; i++) {
+            cellRanks[cellOrder[i]] = i;
+        }
         assert masses.getNumCols() == 1
                 : String.format("masses must be (1 x n) (%d x %d)", masses.getNumRows(), masses.getNumCols());
         assert diffusion.getNumCols() == 1
@@ -101,6 +169,51 @@ public class SimEngine {
                 masses.getNumRows(), masses.getNumCols());
         assert energyRef >= 0 && energyRef < masses.getNumRows()
                 : String.format("energyRef must be in 0-%d range", masses.getNumRows());
+        assert chunkSize > 0 : String.format("chunkSize must be positive (%d)", chunkSize);
+    }
+
+    /**
+     * Returns the populations processed by a process changing the environment resources.
+     * Without a population pool the populations write the changes directly in the environment resources.
+     * With a population pool each chunk of populations accumulates the environment changes
+     * in its own scratch buffer and the buffers are added to the environment resources in chunk order.
+     *
+     * @param status  the status
+     * @param process the process of a population reading the environment resources
+     *                and writing the environment changes
+     */
+    private List<Population> changeEnvironment(final SimStatus status, final ChunkProcess process) {
+        final List<Population> pops = status.getPopulations();
+        final Matrix resources = status.getResources();
+        final int n = pops.size();
+        final Population[] result = new Population[n];
+        if (populationPool == null) {
+            for (int j = 0; j < n; j++) {
+                result[j] = process.apply(pops.get(j), resources);
+            }
+            return List.of(result);
+        }
+        final int noChunks = Math.min(populationPool.getParallelism(), n);
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>(noChunks);
+        final Matrix[] changes = new Matrix[noChunks];
+        for (int i = 0; i < noChunks; i++) {
+            final int from = i * n / noChunks;
+            final int to = (i + 1) * n / noChunks;
+            // Allocates the buffer in the calling thread owning the scratch arena
+            final Matrix chunkChanges = Matrix.scratch(resources.getNumRows(), resources.getNumCols());
+            changes[i] = chunkChanges;
+            tasks.add(populationPool.submit(() -> {
+                for (int j = from; j < to; j++) {
+                    result[j] = process.apply(pops.get(j), chunkChanges);
+                }
+            }));
+        }
+        // The chunks read the environment resources till all of them are completed
+        tasks.forEach(ForkJoinTask::join);
+        for (Matrix chunkChanges : changes) {
+            resources.addi(chunkChanges);
+        }
+        return List.of(result);
     }
 
     /**
@@ -108,14 +221,17 @@ public class SimEngine {
      * @param dt     the time interval
      */
     SimStatus diffuse(final SimStatus status, final double dt) {
-        final Matrix quantities = status.getResources();
-        final Matrix alphas = ones(1, getTopology().getNoCells())
-                .prod(diffusion);
-        final Matrix ds = differential(quantities, dt, alphas, topology);
-        quantities.addi(ds);
+        diffusionSolver.diffuse(status.getResources(), dt);
         return status;
     }
 
+    /**
+     * Returns the maximum number of individuals processed by a parallel task
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
     /**
      * Returns the diffusion rates in environment
      */
@@ -123,6 +239,13 @@ public class SimEngine {
         return diffusion;
     }
 
+    /**
+     * Returns the diffusion solver
+     */
+    public DiffusionSolver getDiffusionSolver() {
+        return diffusionSolver;
+    }
+
     /**
      *
      */
@@ -137,6 +260,48 @@ public class SimEngine {
         return masses;
     }
 
+    /**
+     * Returns the pool processing the populations or null for serial processing
+     */
+    ForkJoinPool getPopulationPool() {
+        return populationPool;
+    }
+
+    /**
+     * Returns the number of threads processing the populations
+     */
+    public int getPopulationThreads() {
+        return populationPool != null ? populationPool.getParallelism() : 1;
+    }
+
+    /**
+     * Returns the fused species kernel or null if the individuals are processed by phases
+     */
+    public FusedSpeciesKernel getSpeciesKernel() {
+        return kernel;
+    }
+
+    /**
+     * Returns the profiler of phase durations or null if none
+     */
+    public PhaseProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Returns the disorder threshold of population sort
+     */
+    public double getSortThreshold() {
+        return sortThreshold;
+    }
+
+    /**
+     * Returns the scratch arena or null if none
+     */
+    public MatrixArena getScratchArena() {
+        return arena;
+    }
+
     /**
      * Returns the topology
      */
@@ -151,27 +316,69 @@ public class SimEngine {
      * @param dt     the time interval
      */
     SimStatus maintain(final SimStatus status, final double dt) {
-        status.getPopulations().forEach(pop ->
+        forEachPopulation(status, pop ->
                 pop.maintain(dt, energyRef, masses));
         return status;
     }
 
     /**
+     * Applies the process to each population.
+     * The populations are processed in parallel if the engine has a population pool,
+     * in this case the populations larger than chunk size are split in chunks of individuals
+     * (see {@link Population#chunks(int)})
+     *
+     * @param status  the status
+     * @param process the process
+     */
+    private void forEachPopulation(final SimStatus status, final Consumer<Population> process) {
+        final List<Population> pops = status.getPopulations();
+        if (populationPool == null) {
+            pops.forEach(process);
+        } else {
+            pops.stream()
+                    .flatMap(pop -> pop.chunks(chunkSize).stream())
+                    .map(chunk -> populationPool.submit(() -> process.accept(chunk)))
+                    .collect(Collectors.toList())
+                    .forEach(ForkJoinTask::join);
+        }
+    }
+
+    /**
+     * Returns the status after a simulation step (see {@link #next(SimStatus, double, Random, SimStatus)})
+     *
      * @param status the start status
      * @param t      the time
      * @param random the random generator
      */
     public SimStatus next(final SimStatus status, final double t, final Random random) {
-        final double dt = t - status.getT();
-        final SimStatus s0 = status.copy();
-        final SimStatus s1 = diffuse(s0, dt);
-        final SimStatus s2 = maintain(s1, dt);
-        final SimStatus s3 = survive(s2);
-        final SimStatus s35 = processPhotos(s3, dt);
-        final SimStatus s4 = processReactions(s35, dt);
-        final SimStatus s5 = processEnvironIndividuals(s4, dt);
-        final SimStatus s6 = processPopulationIndividuals(s5, dt, random);
-        return s6.time(t);
+        return next(status, t, random, null);
+    }
+
+    /**
+     * Returns the status after a simulation step reusing the resources of a buffer status
+     * (see {@link SimStatus#copy(SimStatus)})
+     * <p>
+     * The results are reproducible for a given seed and any number of population threads
+     * only with a {@link SplitRandom} generator that gives each population its own substream.
+     * Any other generator is shared by the populations, so the population-individual genes
+     * are processed serially in population order even with a population pool.
+     * </p>
+     *
+     * @param status the start status
+     * @param t      the time
+     * @param random the random generator
+     * @param buffer the released status whose resources may be overwritten or null if none
+     */
+    public SimStatus next(final SimStatus status, final double t, final Random random, final SimStatus buffer) {
+        if (arena == null) {
+            return step(status, t, random, buffer);
+        }
+        arena.open();
+        try {
+            return step(status, t, random, buffer);
+        } finally {
+            arena.close();
+        }
     }
 
     /**
@@ -182,13 +389,63 @@ public class SimEngine {
         // Computes the population area for each cell
         final Matrix areas = status.getTotalIndividualSurface(topology.getNoCells(), masses);
         // For each species process individual environment
-        for (Population population : status.getPopulations()) {
-            population.processEnvironIndividual(dt, status.getResources(),
-                    areas.extractCols(population.getLocations()), masses);
-        }
+        final Matrix resources = status.getResources();
+        changeEnvironment(status, (population, changes) ->
+                population.processEnvironIndividual(dt, resources, changes,
+                        areas.scratchCols(population.getLocations()), masses));
         return status;
     }
 
+    /**
+     * Returns the status after the maintaining, survive, photo and reaction processes
+     * computed by the fused species kernel
+     *
+     * @param status the start status
+     * @param dt     the time interval
+     */
+    SimStatus processFusedKernel(final SimStatus status, final double dt) {
+        final List<Population> pops = changeEnvironment(status, (pop, changes) ->
+                kernel.maintainAndSurvive(pop, dt, changes));
+        final SimStatus s1 = status.setPopulation(pops);
+        final Matrix surfaces = s1.getTotalIndividualSurface(topology.getNoCells(), masses);
+        forEachPopulation(s1, pop ->
+                kernel.processPhotosAndReactions(pop, dt, surfaces));
+        return s1;
+    }
+
+    /**
+     * Returns the status after a phase recording the flight recorder event and the duration in the profiler
+     *
+     * @param phase   the phase
+     * @param status  the start status
+     * @param process the phase process
+     */
+    private SimStatus phase(final SimPhase phase, final SimStatus status, final UnaryOperator<SimStatus> process) {
+        final boolean recording = PhaseEvent.isRecording();
+        if (!recording && profiler == null) {
+            return process.apply(status);
+        }
+        final PhaseEvent event = recording ? new PhaseEvent() : null;
+        final long start = profiler != null ? System.nanoTime() : 0;
+        if (event != null) {
+            event.begin();
+        }
+        final SimStatus result = process.apply(status);
+        if (profiler != null) {
+            profiler.record(phase, System.nanoTime() - start);
+        }
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.phase = phase.name();
+                event.individuals = status.getIndividualCount();
+                event.cells = topology.getNoCells();
+                event.commit();
+            }
+        }
+        return result;
+    }
+
     /**
      * Returns the status after applying the photo reactions for each individual
      *
@@ -199,23 +456,45 @@ public class SimEngine {
         // competes for lux energy
         // compute the total individual surface by location
         Matrix surfaces = status.getTotalIndividualSurface(topology.getNoCells(), masses);
-        for (Population population : status.getPopulations()) {
-            population.processPhotos(dt, surfaces, masses);
-        }
+        forEachPopulation(status, population ->
+                population.processPhotos(dt, surfaces, masses));
         return status;
     }
 
     /**
+     * Returns the status after applying the population-individual genes.
+     * If the random generator is splittable (see {@link SplitRandom}) each population consumes
+     * its own substream split in population order and the populations are processed in parallel,
+     * so the results do not depend on the number of threads
+     * else the populations share the random generator and are processed serially.
+     *
      * @param status the start status
      * @param dt     the time interval
      * @param random the random generator
      */
     SimStatus processPopulationIndividuals(final SimStatus status, final double dt, final Random random) {
-        // For each species process individual population
-        final List<Population> pops = status.getPopulations().stream().map(pop ->
-                pop.performPopulationIndividuals(dt, masses, topology, random)
+        final List<Population> pops = status.getPopulations();
+        if (!(random instanceof SplitRandom)) {
+            // For each species process individual population
+            return status.setPopulation(pops.stream().map(pop ->
+                    pop.performPopulationIndividuals(dt, masses, topology, random)
+            ).collect(Collectors.toList()));
+        }
+        final List<Random> streams = pops.stream()
+                .map(pop -> SplitRandom.split(random))
+                .collect(Collectors.toList());
+        if (populationPool == null) {
+            return status.setPopulation(IntStream.range(0, pops.size()).mapToObj(i ->
+                    pops.get(i).performPopulationIndividuals(dt, masses, topology, streams.get(i))
+            ).collect(Collectors.toList()));
+        }
+        final List<ForkJoinTask<Population>> tasks = IntStream.range(0, pops.size()).mapToObj(i ->
+                populationPool.submit(() ->
+                        pops.get(i).performPopulationIndividuals(dt, masses, topology, streams.get(i)))
         ).collect(Collectors.toList());
-        return status.setPopulation(pops);
+        return status.setPopulation(tasks.stream()
+                .map(ForkJoinTask::join)
+                .collect(Collectors.toList()));
     }
 
     /**
@@ -225,12 +504,102 @@ public class SimEngine {
      * @param dt     the time interval
      */
     SimStatus processReactions(SimStatus status, double dt) {
-        for (Population population : status.getPopulations()) {
-            population.processReactions(dt);
-        }
+        forEachPopulation(status, population ->
+                population.processReactions(dt));
         return status;
     }
 
+    /**
+     * Returns the status after a number of simulation steps with fixed time interval.
+     * The steps alternate two status buffers (see {@link SimStatus#copy(SimStatus)}),
+     * the start status is not changed.
+     * The results are reproducible for any number of population threads only with a {@link SplitRandom}
+     * generator (see {@link #next(SimStatus, double, Random, SimStatus)}).
+     *
+     * @param status the start status
+     * @param dt     the time interval
+     * @param steps  the number of steps
+     * @param random the random generator
+     */
+    public SimStatus run(final SimStatus status, final double dt, final int steps, final Random random) {
+        return run(status, dt, steps, random, s -> false);
+    }
+
+    /**
+     * Returns the status after a number of simulation steps with fixed time interval
+     * or when the stop condition is satisfied.
+     * The steps alternate two status buffers (see {@link SimStatus#copy(SimStatus)}),
+     * the start status is not changed.
+     * The results are reproducible for any number of population threads only with a {@link SplitRandom}
+     * generator (see {@link #next(SimStatus, double, Random, SimStatus)}).
+     *
+     * @param status the start status
+     * @param dt     the time interval
+     * @param steps  the maximum number of steps
+     * @param random the random generator
+     * @param stop   the stop condition tested before each step
+     */
+    public SimStatus run(final SimStatus status, final double dt, final int steps, final Random random,
+                         final Predicate<SimStatus> stop) {
+        requireNonNull(status);
+        requireNonNull(random);
+        requireNonNull(stop);
+        assert dt > 0 : String.format("dt must be positive (%g)", dt);
+        assert steps >= 0 : String.format("steps must be not negative (%d)", steps);
+        SimStatus current = status;
+        SimStatus buffer = null;
+        for (int i = 0; i < steps && !stop.test(current); i++) {
+            final SimStatus next = next(current, current.getT() + dt, random, buffer);
+            buffer = current != status ? current : null;
+            current = next;
+        }
+        return current;
+    }
+
+    /**
+     * Returns the status after a simulation step
+     *
+     * @param status the start status
+     * @param t      the time
+     * @param random the random generator
+     * @param buffer the released status whose resources may be overwritten or null if none
+     */
+    private SimStatus step(final SimStatus status, final double t, final Random random, final SimStatus buffer) {
+        final double dt = t - status.getT();
+        final SimStatus s0 = status.copy(buffer);
+        final SimStatus s1 = phase(SimPhase.DIFFUSE, s0, s -> diffuse(s, dt));
+        final SimStatus s4;
+        if (kernel != null) {
+            s4 = phase(SimPhase.FUSED_KERNEL, s1, s -> processFusedKernel(s, dt));
+        } else {
+            final SimStatus s2 = phase(SimPhase.MAINTAIN, s1, s -> maintain(s, dt));
+            final SimStatus s3 = phase(SimPhase.SURVIVE, s2, this::survive);
+            final SimStatus s35 = phase(SimPhase.PROCESS_PHOTOS, s3, s -> processPhotos(s, dt));
+            s4 = phase(SimPhase.PROCESS_REACTIONS, s35, s -> processReactions(s, dt));
+        }
+        final SimStatus s5 = phase(SimPhase.PROCESS_ENVIRON_INDIVIDUALS, s4, s -> processEnvironIndividuals(s, dt));
+        final SimStatus s6 = phase(SimPhase.PROCESS_POPULATION_INDIVIDUALS, s5,
+                s -> processPopulationIndividuals(s, dt, random));
+        final SimStatus s7 = sortThreshold < NO_SORT_THRESHOLD
+                ? phase(SimPhase.SORT_POPULATIONS, s6, this::sortPopulations)
+                : s6;
+        return s7.time(t);
+    }
+
+    /**
+     * Returns the status with the populations whose disorder exceeds the sort threshold sorted by cell
+     * (see {@link Population#sortByCell(int[])})
+     *
+     * @param status the status
+     */
+    SimStatus sortPopulations(final SimStatus status) {
+        final int[] cellOrder = topology.getCellOrder();
+        final List<Population> pops = status.getPopulations().stream()
+                .map(pop -> pop.getDisorder(cellRanks) > sortThreshold ? pop.sortByCell(cellOrder) : pop)
+                .collect(Collectors.toList());
+        return status.setPopulation(pops);
+    }
+
     /**
      * Returns the status after the survive process.
      * Only the individual with energy and sufficient mass survive.
@@ -238,11 +607,100 @@ public class SimEngine {
      * @param status the start status
      */
     SimStatus survive(final SimStatus status) {
-        final List<Population> pops = status.getPopulations().stream()
-                .map(pop ->
-                        pop.survive(energyRef, masses, status.getResources()))
-                .collect(Collectors.toList());
+        final List<Population> pops = changeEnvironment(status, (pop, changes) ->
+                pop.survive(energyRef, masses, changes));
 
         return status.setPopulation(pops);
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the simulation engine allocating the tick temporary matrices in a scratch arena
+     *
+     * @param arena the arena or null to allocate in heap
+     */
+    public SimEngine withScratchArena(final MatrixArena arena) {
+        return new SimEngine(masses, topology, diffusion, energyRef, arena, diffusionSolver, populationPool, chunkSize, kernel,
+                profiler, sortThreshold);
+    }
+
+    /**
+     * Returns the simulation engine recording the phase durations in a profiler
+     *
+     * @param profiler the profiler or null if none
+     */
+    public SimEngine withProfiler(final PhaseProfiler profiler) {
+        return new SimEngine(masses, topology, diffusion, energyRef, arena, diffusionSolver, populationPool, chunkSize, kernel,
+                profiler, sortThreshold);
+    }
+
+    /**
+     * Returns the simulation engine sorting the populations by cell when the disorder of individual
+     * locations exceeds a threshold
+     *
+     * @param sortThreshold the disorder threshold in range 0, 1 ({@link #NO_SORT_THRESHOLD} to disable the sort)
+     */
+    public SimEngine withSortThreshold(final double sortThreshold) {
+        assert sortThreshold >= 0 : String.format("sort threshold must be not negative (%g)", sortThreshold);
+        return new SimEngine(masses, topology, diffusion, energyRef, arena, diffusionSolver, populationPool, chunkSize, kernel,
+                profiler, sortThreshold);
+    }
+
+    /**
+     * Returns the simulation engine integrating the diffusion with a solver
+     *
+     * @param diffusionSolver the diffusion solver
+     */
+    public SimEngine withDiffusionSolver(final DiffusionSolver diffusionSolver) {
+        return new SimEngine(masses, topology, diffusion, energyRef, arena, requireNonNull(diffusionSolver), populationPool,
+                chunkSize, kernel, profiler, sortThreshold);
+    }
+
+    /**
+     * Returns the simulation engine processing the individuals with the fused species kernel
+     *
+     * @param fused true to use the fused species kernel, false for the phased processes
+     */
+    public SimEngine withFusedKernel(final boolean fused) {
+        return new SimEngine(masses, topology, diffusion, energyRef, arena, diffusionSolver, populationPool, chunkSize,
+                fused ? FusedSpeciesKernel.create(masses, energyRef) : null, profiler, sortThreshold);
+    }
+
+    /**
+     * Returns the simulation engine splitting the populations in chunks of individuals in parallel processing
+     *
+     * @param chunkSize the maximum number of individuals processed by a parallel task
+     */
+    public SimEngine withChunkSize(final int chunkSize) {
+        return new SimEngine(masses, topology, diffusion, energyRef, arena, diffusionSolver, populationPool, chunkSize, kernel,
+                profiler, sortThreshold);
+    }
+
+    /**
+     * Returns the simulation engine processing the populations in parallel.
+     * The engines with the same number of threads share the pool of threads (see {@link WorkerPools})
+     *
+     * @param threads the number of threads (1 for serial processing)
+     */
+    public SimEngine withPopulationThreads(final int threads) {
+        assert threads > 0 : String.format("threads must be positive (%d)", threads);
+        if (threads == getPopulationThreads()) {
+            return this;
+        }
+        return new SimEngine(masses, topology, diffusion, energyRef, arena, diffusionSolver,
+                threads > 1 ? WorkerPools.get(threads) : null, chunkSize, kernel, profiler, sortThreshold);
+    }
+
+    /**
+     * Process of a population reading the environment resources and writing the changes in a buffer
+     */
+    @FunctionalInterface
+    interface ChunkProcess {
+        /**
+         * Returns the processed population
+         *
+         * @param population the population
+         * @param changes    the environment resources changes
+         */
+        Population apply(Population population, Matrix changes);
+    }
+}
@@ -31,6 +31,7 @@ package org.mmarini.genesis.model3;
 
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * The status of simulator is defined by the quantity of substances in the space and
@@ -66,11 +67,35 @@ public class SimStatus {
     }
 
     /**
-     * Returns a deep copy of status
+     * Returns a copy of status with copies of the resources (see {@link Population#copy()})
      */
     public SimStatus copy() {
-        List<Population> pop = populations.stream().map(Population::copy).collect(Collectors.toList());
-        return new SimStatus(t, resources.copy(), pop);
+        return copy(null);
+    }
+
+    /**
+     * Returns a copy of status writing the resources in the resources of a buffer status
+     * if they have the same size.
+     * The buffer is typically the status before this one, alternating two buffers between the steps,
+     * and it must not be used after the copy.
+     *
+     * @param buffer the status whose resources may be overwritten or null if none
+     */
+    public SimStatus copy(final SimStatus buffer) {
+        final List<Population> bufferPops = buffer != null && buffer.populations.size() == populations.size()
+                ? buffer.populations
+                : null;
+        final List<Population> pop = IntStream.range(0, populations.size())
+                .mapToObj(i -> populations.get(i).copy(bufferPops != null ? bufferPops.get(i) : null))
+                .collect(Collectors.toList());
+        final Matrix bufferResources = buffer != null ? buffer.resources : null;
+        final Matrix resources1 = bufferResources != null
+                && bufferResources != resources
+                && bufferResources.getNumRows() == resources.getNumRows()
+                && bufferResources.getNumCols() == resources.getNumCols()
+                ? bufferResources.assign(resources, 0, 0)
+                : resources.copy();
+        return new SimStatus(t, resources1, pop);
     }
 
     /**
@@ -28,9 +28,12 @@
 
 package org.mmarini.genesis.model3;
 
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.core.Single;
 
 import java.time.Duration;
+import java.util.concurrent.Executor;
 import java.util.function.Consumer;
 import java.util.function.DoubleConsumer;
 import java.util.function.UnaryOperator;
@@ -51,8 +54,50 @@ import java.util.function.UnaryOperator;
  * @param <S> the seed type
  */
 public interface SimulatorEngine<T, S> {
+    /**
+     * Returns the flow of events with a backpressure strategy
+     * <p>
+     * The events are emitted by the simulation thread, the subscribers should observe them
+     * on their own scheduler.
+     * </p>
+     *
+     * @param backpressure the backpressure strategy
+     */
+    Flowable<T> getEventFlowable(Backpressure backpressure);
+
+    /**
+     * Returns the flow of events with a backpressure strategy observed on a scheduler
+     *
+     * @param backpressure the backpressure strategy
+     * @param scheduler    the scheduler
+     */
+    default Flowable<T> getEventFlowable(Backpressure backpressure, Scheduler scheduler) {
+        return getEventFlowable(backpressure).observeOn(scheduler, false, 1);
+    }
+
+    /**
+     * Returns the flow of simulation speeds with a backpressure strategy
+     *
+     * @param backpressure the backpressure strategy
+     */
+    Flowable<Double> getSpeedFlowable(Backpressure backpressure);
+
+    /**
+     * Returns the flow of simulation speeds with a backpressure strategy observed on a scheduler
+     *
+     * @param backpressure the backpressure strategy
+     * @param scheduler    the scheduler
+     */
+    default Flowable<Double> getSpeedFlowable(Backpressure backpressure, Scheduler scheduler) {
+        return getSpeedFlowable(backpressure).observeOn(scheduler, false, 1);
+    }
+
     /**
      * Returns the seed after pushing the new seed in the flow
+     * <p>
+     * A push superseded by a newer queued push is not applied and returns the newer seed
+     * (see {@link #request(String, UnaryOperator)}).
+     * </p>
      *
      * @param seed the new seed
      */
@@ -65,13 +110,51 @@ public interface SimulatorEngine<T, S> {
      */
     Single<S> request(final UnaryOperator<S> transition);
 
+    /**
+     * Returns the seed after the transition
+     * <p>
+     * The queued requests with the same coalescing key are superseded by the newest one.
+     * A superseded request is not applied and returns the seed after the transition of the request
+     * that superseded it.
+     * </p>
+     *
+     * @param key        the coalescing key
+     * @param transition the transition
+     */
+    Single<S> request(final String key, final UnaryOperator<S> transition);
+
     /**
      * Returns the engine after setting the interval of event emission
      *
      * @param interval the interval to set
+     * @throws IllegalArgumentException if the interval is not positive
      */
     SimulatorEngine<T, S> setEventInterval(Duration interval);
 
+    /**
+     * Returns the engine after setting the maximum simulation interval of a single step
+     * <p>
+     * In paced mode the simulation time due beyond the maximum interval is computed by
+     * more consecutive steps.
+     * </p>
+     *
+     * @param maxStep the maximum simulation interval (s)
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    SimulatorEngine<T, S> setMaxStep(double maxStep);
+
+    /**
+     * Returns the engine after setting the maximum clock interval simulated by a single step
+     * <p>
+     * The maximum simulation interval of a step is the clock interval times the current speed,
+     * so it follows the speed changes.
+     * </p>
+     *
+     * @param interval the maximum clock interval
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    SimulatorEngine<T, S> setMaxStepInterval(Duration interval);
+
     /**
      * Returns the engine after setting event consumer
      *
@@ -86,13 +169,32 @@ public interface SimulatorEngine<T, S> {
      */
     SimulatorEngine<T, S> setOnSpeed(DoubleConsumer onSpeed);
 
+    /**
+     * Returns the engine after setting the pacing mode
+     *
+     * @param pacing the pacing mode
+     */
+    SimulatorEngine<T, S> setPacing(Pacing pacing);
+
     /**
      * Returns the seed when changing the simulation speed
+     * <p>
+     * A change superseded by a newer queued change is not applied
+     * (see {@link #request(String, UnaryOperator)}).
+     * </p>
      *
      * @param speed the simulation speed
      */
     Single<S> setSpeed(final double speed);
 
+    /**
+     * Returns the engine after setting the clock interval of steps in paced mode
+     *
+     * @param interval the interval between steps
+     * @throws IllegalArgumentException if the interval is not positive
+     */
+    SimulatorEngine<T, S> setStepInterval(Duration interval);
+
     /**
      * Returns the first seed after the simulation stopping
      */
@@ -102,4 +204,33 @@ public interface SimulatorEngine<T, S> {
      * Returns the last seed after the simulation stopping
      */
     Single<S> stop();
+
+    /**
+     * Returns the subscription to the events
+     * <p>
+     * The events are delivered to the consumer in the executor by the delivery policy,
+     * a slow consumer skips the events without stalling the simulation.
+     * </p>
+     *
+     * @param policy   the delivery policy
+     * @param executor the executor of consumer
+     * @param consumer the event consumer
+     */
+    EventRing.Subscription<T> subscribe(EventRing.Policy policy, Executor executor, Consumer<T> consumer);
+
+    /**
+     * The pacing modes of simulation cycle
+     */
+    enum Pacing {
+        /**
+         * Computes the steps back to back with the simulation interval elapsed
+         * since the previous step (max throughput)
+         */
+        GREEDY,
+        /**
+         * Computes the steps at the step interval keeping the simulation time on schedule
+         * and parks the thread when ahead
+         */
+        PACED
+    }
 }
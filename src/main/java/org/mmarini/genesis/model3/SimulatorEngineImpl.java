@@ -28,6 +28,8 @@
 
 package org.mmarini.genesis.model3;
 
+import io.reactivex.rxjava3.core.BackpressureStrategy;
+import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Scheduler.Worker;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.schedulers.Schedulers;
@@ -37,11 +39,17 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Duration;
-import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.*;
 
+import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -54,14 +62,26 @@ import static java.util.Objects.requireNonNull;
  * The simulation clock ticks can be set to a specifics intervals.<br>
  * The simulation time flows at at simulation speed respecting to the clock
  * time.<br>
+ * In greedy mode the steps are computed back to back (max throughput),
+ * in paced mode a step is computed at each step interval with the simulation
+ * time due since the previous step and the thread is parked when ahead of schedule.
  * </p>
  *
  * @param <T> the event type
  */
 public class SimulatorEngineImpl<T, S> implements SimulatorEngine<T, S> {
 
+    public static final int DEFAULT_RING_CAPACITY = 64;
+    public static final String SPEED_KEY = "speed";
+    public static final String SEED_KEY = "seed";
+    public static final Duration DEFAULT_EVENT_INTERVAL = Duration.ofMillis(40);
+    public static final Duration DEFAULT_STEP_INTERVAL = Duration.ofMillis(10);
     private static final Logger logger = LoggerFactory.getLogger(SimulatorEngineImpl.class);
     private static final double NANOS_PER_SEC = 1e9;
+    /**
+     * Number of maximum steps of simulation time due over which the paced cycle drops the backlog
+     */
+    private static final int MAX_CATCH_UP_STEPS = 10;
 
     /**
      * Returns a simulator.
@@ -86,12 +106,19 @@ public class SimulatorEngineImpl<T, S> implements SimulatorEngine<T, S> {
     private final Deque<ProcessRequest> queue;
     private final BiFunction<S, Double, Tuple2<S, Double>> nextSeed;
     private final Function<S, T> emit;
+    private final EventRing<T> events;
+    private final EventRing<Double> speeds;
     private S seed;
     private DoubleConsumer onSpeed;
     private Consumer<T> onEvent;
     private double speed;
     private Status status;
     private long eventInterval;
+    private long stepInterval;
+    private double maxStep;
+    private long maxStepInterval;
+    private Pacing pacing;
+    private volatile Thread cycleThread;
 
     /**
      * Creates the simulator.
@@ -113,29 +140,85 @@ public class SimulatorEngineImpl<T, S> implements SimulatorEngine<T, S> {
         this.emit = emit;
         this.worker = worker;
         this.queue = new ConcurrentLinkedDeque<>();
+        this.events = EventRing.create(DEFAULT_RING_CAPACITY);
+        this.speeds = EventRing.create(DEFAULT_RING_CAPACITY);
         this.speed = 1;
         this.seed = initialSeed;
         this.status = Status.IDLE;
+        this.pacing = Pacing.GREEDY;
+        this.maxStep = Double.POSITIVE_INFINITY;
+        this.maxStepInterval = Long.MAX_VALUE;
+        this.eventInterval = DEFAULT_EVENT_INTERVAL.toNanos();
+        this.stepInterval = DEFAULT_STEP_INTERVAL.toNanos();
+    }
+
+    /**
+     * Offers the request and processes the queue if idle or wakes up the parked cycle
+     *
+     * @param request the request
+     */
+    private void offer(ProcessRequest request) {
+        queue.offer(request);
+        if (status == Status.IDLE) {
+            deque();
+        } else {
+            Thread thread = cycleThread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
     }
 
     /**
      * Deque the queue
+     * <p>
+     * Only the newest request of each coalescing key is applied, the transitions are applied in queue order
+     * and each applied request completes with the seed after its transition.
+     * The superseded requests complete with the seed of the newest request with the same key.
+     * </p>
      */
-    private void deque() {
-        for (; ; ) {
-            ProcessRequest request = queue.poll();
-            if (request != null) {
-                seed = request.transition.apply(seed);
-                request.result.onSuccess(seed);
-            } else {
-                break;
+    void deque() {
+        ProcessRequest request = queue.poll();
+        if (request == null) {
+            return;
+        }
+        List<ProcessRequest> requests = new ArrayList<>();
+        for (; request != null; request = queue.poll()) {
+            requests.add(request);
+        }
+        // Index of the newest request by key
+        Map<String, Integer> newest = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            String key = requests.get(i).key;
+            if (key != null) {
+                newest.put(key, i);
             }
         }
+        List<S> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            ProcessRequest req = requests.get(i);
+            if (req.key == null || newest.get(req.key) == i) {
+                seed = req.transition.apply(seed);
+            }
+            results.add(seed);
+        }
+        for (int i = 0; i < requests.size(); i++) {
+            ProcessRequest req = requests.get(i);
+            int applied = req.key == null ? i : newest.get(req.key);
+            req.result.onSuccess(results.get(applied));
+        }
     }
 
-    private void emitEvent(T event) {
-        if (onEvent != null) {
-            onEvent.accept(event);
+    /**
+     * Emits the event of current seed to the event consumer and to the subscriptions
+     */
+    private void emitEvent() {
+        if (onEvent != null || events.hasSubscriptions()) {
+            T event = emit.apply(seed);
+            if (onEvent != null) {
+                onEvent.accept(event);
+            }
+            events.publish(event);
         }
     }
 
@@ -143,17 +226,75 @@ public class SimulatorEngineImpl<T, S> implements SimulatorEngine<T, S> {
         if (onSpeed != null) {
             onSpeed.accept(speed);
         }
+        if (speeds.hasSubscriptions()) {
+            speeds.publish(speed);
+        }
+    }
+
+    /**
+     * Returns the flow of the ring buffer items
+     * <p>
+     * The items are emitted in the producer thread.
+     * </p>
+     *
+     * @param ring the ring buffer
+     * @param <X>  the item type
+     */
+    private static <X> Flowable<X> flowable(EventRing<X> ring) {
+        return Flowable.create(emitter -> {
+            EventRing.Subscription<X> subscription = ring.subscribe(EventRing.Policy.every(), Runnable::run, emitter::onNext);
+            emitter.setCancellable(subscription::cancel);
+        }, BackpressureStrategy.MISSING);
+    }
+
+    @Override
+    public Flowable<T> getEventFlowable(Backpressure backpressure) {
+        return backpressure.apply(flowable(events));
+    }
+
+    @Override
+    public Flowable<Double> getSpeedFlowable(Backpressure backpressure) {
+        return backpressure.apply(flowable(speeds));
+    }
+
+    /**
+     * Emits the event and the speed if the event interval is elapsed
+     *
+     * @param now          the current clock time (ns)
+     * @param lastEvent    the clock time of last event (ns)
+     * @param eventSimTime the simulation time since last event
+     * @return true if the event has been emitted
+     */
+    private boolean emitIfElapsed(long now, long lastEvent, double eventSimTime) {
+        long currentEventInterval = now - lastEvent;
+        if (currentEventInterval >= eventInterval) {
+            double currentSpeed = eventSimTime / currentEventInterval * NANOS_PER_SEC;
+            emitEvent();
+            emitSpeed(currentSpeed);
+            return true;
+        }
+        return false;
     }
 
     /**
      * Simulation cycle
      */
     void processCycle() {
+        if (pacing == Pacing.PACED) {
+            processPacedCycle();
+        } else {
+            processGreedyCycle();
+        }
+    }
+
+    /**
+     * Simulation cycle computing the steps back to back
+     */
+    private void processGreedyCycle() {
         // time instant of last cycle
-        Instant last = Instant.now();
+        long last = System.nanoTime();
         // time instant od last event
-        Instant lastEvent = last;
-        // simulation interval
+        long lastEvent = last;
         // simulation time of last event
         double eventSimTime = 0;
         double simInterval = eventInterval * speed / NANOS_PER_SEC;
@@ -162,17 +303,60 @@ public class SimulatorEngineImpl<T, S> implements SimulatorEngine<T, S> {
             Tuple2<S, Double> tuple = nextSeed.apply(seed, simInterval);
             seed = tuple._1;
             eventSimTime += tuple._2;
-            Instant now = Instant.now();
-            long dt = Duration.between(last, now).toNanos();
-            simInterval = dt * speed / NANOS_PER_SEC;
+            long now = System.nanoTime();
+            simInterval = (now - last) * speed / NANOS_PER_SEC;
             last = now;
+            if (emitIfElapsed(now, lastEvent, eventSimTime)) {
+                lastEvent = now;
+                eventSimTime = 0;
+            }
+        }
+    }
 
-            double currentEventInterval = Duration.between(lastEvent, now).toNanos();
-            if (currentEventInterval >= this.eventInterval) {
-                double currentSpeed = eventSimTime / currentEventInterval * NANOS_PER_SEC;
-                // Event time out
-                emitEvent(emit.apply(seed));
-                emitSpeed(currentSpeed);
+    /**
+     * Simulation cycle computing the steps at step intervals and parking the thread when ahead
+     */
+    private void processPacedCycle() {
+        long last = System.nanoTime();
+        long lastEvent = last;
+        double eventSimTime = 0;
+        // simulation time due and not yet computed
+        double lag = 0;
+        while (status == Status.ACTIVE) {
+            deque();
+            if (status != Status.ACTIVE) {
+                break;
+            }
+            long now = System.nanoTime();
+            lag += (now - last) * speed / NANOS_PER_SEC;
+            last = now;
+            // the simulation time of a step at clock step interval
+            double minStep = stepInterval * speed / NANOS_PER_SEC;
+            // the maximum simulation time of a step at current speed
+            double maxSimStep = Math.min(maxStep, maxStepInterval * speed / NANOS_PER_SEC);
+            if (lag > 0 && lag >= minStep) {
+                Tuple2<S, Double> tuple = nextSeed.apply(seed, Math.min(lag, maxSimStep));
+                seed = tuple._1;
+                lag -= tuple._2;
+                eventSimTime += tuple._2;
+                if (lag > maxSimStep * MAX_CATCH_UP_STEPS) {
+                    logger.debug("Simulation behind schedule by {} s, dropped", lag);
+                    lag = 0;
+                }
+                now = System.nanoTime();
+            } else {
+                // Parks till the next step or the next event
+                long toEvent = lastEvent + eventInterval - now;
+                long toStep = speed > 0
+                        ? (long) ((minStep - lag) * NANOS_PER_SEC / speed)
+                        : Long.MAX_VALUE;
+                long park = Math.min(toEvent, toStep);
+                if (park > 0) {
+                    LockSupport.parkNanos(this, park);
+                }
+                now = System.nanoTime();
+            }
+            if (emitIfElapsed(now, lastEvent, eventSimTime)) {
                 lastEvent = now;
                 eventSimTime = 0;
             }
@@ -183,10 +367,7 @@ public class SimulatorEngineImpl<T, S> implements SimulatorEngine<T, S> {
     public Single<S> pushSeed(S seed) {
         requireNonNull(seed);
         SingleSubject<S> result = SingleSubject.create();
-        queue.offer(new ProcessRequest(e -> seed, result));
-        if (status.equals(Status.IDLE)) {
-            deque();
-        }
+        offer(new ProcessRequest(SEED_KEY, e -> seed, result));
         return result;
     }
 
@@ -194,20 +375,48 @@ public class SimulatorEngineImpl<T, S> implements SimulatorEngine<T, S> {
     public Single<S> request(UnaryOperator<S> transition) {
         requireNonNull(transition);
         SingleSubject<S> result = SingleSubject.create();
-        queue.offer(new ProcessRequest(transition, result));
-        if (status == Status.IDLE) {
-            deque();
-        }
+        offer(new ProcessRequest(null, transition, result));
+        return result;
+    }
+
+    @Override
+    public Single<S> request(String key, UnaryOperator<S> transition) {
+        requireNonNull(key);
+        requireNonNull(transition);
+        SingleSubject<S> result = SingleSubject.create();
+        offer(new ProcessRequest(key, transition, result));
         return result;
     }
 
     @Override
     public SimulatorEngineImpl<T, S> setEventInterval(Duration interval) {
         requireNonNull(interval);
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException(format("event interval must be positive (%s)", interval));
+        }
         eventInterval = interval.toNanos();
         return this;
     }
 
+    @Override
+    public SimulatorEngineImpl<T, S> setMaxStep(double maxStep) {
+        if (!(maxStep > 0)) {
+            throw new IllegalArgumentException(format("max step must be positive (%f)", maxStep));
+        }
+        this.maxStep = maxStep;
+        return this;
+    }
+
+    @Override
+    public SimulatorEngineImpl<T, S> setMaxStepInterval(Duration interval) {
+        requireNonNull(interval);
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException(format("max step interval must be positive (%s)", interval));
+        }
+        maxStepInterval = interval.toNanos();
+        return this;
+    }
+
     @Override
     public SimulatorEngineImpl<T, S> setOnEvent(Consumer<T> onEvent) {
         requireNonNull(onEvent);
@@ -222,25 +431,38 @@ public class SimulatorEngineImpl<T, S> implements SimulatorEngine<T, S> {
         return this;
     }
 
+    @Override
+    public SimulatorEngineImpl<T, S> setPacing(Pacing pacing) {
+        this.pacing = requireNonNull(pacing);
+        return this;
+    }
+
     @Override
     public Single<S> setSpeed(double speed) {
         SingleSubject<S> result = SingleSubject.create();
-        queue.offer(new ProcessRequest(e -> {
+        offer(new ProcessRequest(SPEED_KEY, e -> {
             this.speed = speed;
             return e;
         }, result));
-        if (status == Status.IDLE) {
-            deque();
-        }
         return result;
     }
 
+    @Override
+    public SimulatorEngineImpl<T, S> setStepInterval(Duration interval) {
+        requireNonNull(interval);
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException(format("step interval must be positive (%s)", interval));
+        }
+        stepInterval = interval.toNanos();
+        return this;
+    }
+
     @Override
     public Single<S> start() {
         logger.debug("Starting simulation ...");
         if (status == Status.IDLE) {
             SingleSubject<S> result = SingleSubject.create();
-            queue.offer(new ProcessRequest(e -> {
+            queue.offer(new ProcessRequest(null, e -> {
                 status = Status.ACTIVE;
                 return e;
             }, result));
@@ -254,25 +476,32 @@ public class SimulatorEngineImpl<T, S> implements SimulatorEngine<T, S> {
         logger.debug("Simulation started.");
         // cumulative simulation time
         deque();
-        // Last event instance
-        processCycle();
+        cycleThread = Thread.currentThread();
+        try {
+            // Last event instance
+            processCycle();
+        } finally {
+            cycleThread = null;
+        }
     }
 
     @Override
     public Single<S> stop() {
         logger.debug("Stopping simulation ...");
         SingleSubject<S> result = SingleSubject.create();
-        queue.offer(new ProcessRequest(e -> {
+        offer(new ProcessRequest(null, e -> {
             status = Status.IDLE;
             return e;
         }
                 , result));
-        if (status == Status.IDLE) {
-            deque();
-        }
         return result;
     }
 
+    @Override
+    public EventRing.Subscription<T> subscribe(EventRing.Policy policy, Executor executor, Consumer<T> consumer) {
+        return events.subscribe(policy, executor, consumer);
+    }
+
     /**
      * The simulator status.
      */
@@ -281,10 +510,12 @@ public class SimulatorEngineImpl<T, S> implements SimulatorEngine<T, S> {
     }
 
     class ProcessRequest {
+        final String key;
         final UnaryOperator<S> transition;
         final SingleSubject<S> result;
 
-        ProcessRequest(UnaryOperator<S> transition, SingleSubject<S> result) {
+        ProcessRequest(String key, UnaryOperator<S> transition, SingleSubject<S> result) {
+            this.key = key;
             this.transition = transition;
             this.result = result;
         }
@@ -0,0 +1,163 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Random generator backed by a splittable generator.
+ * <p>
+ * The generator is not synchronized and is used by a single thread at a time:
+ * the parallel tasks use independent substreams created by {@link #split()}.
+ * The substreams split in the same order from the same seed generate the same sequences,
+ * so the parallel runs are reproducible for a given seed.
+ * The generator is a {@link Random} so it can be used by the matrix builders and the processes
+ * consuming random values.
+ * </p>
+ */
+public class SplitRandom extends Random {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Returns the random generator with a random seed
+     */
+    public static SplitRandom create() {
+        return new SplitRandom(new SplittableRandom());
+    }
+
+    /**
+     * Returns the random generator with a seed
+     *
+     * @param seed the seed
+     */
+    public static SplitRandom create(final long seed) {
+        return new SplitRandom(new SplittableRandom(seed));
+    }
+
+    /**
+     * Returns an independent substream of a random generator if it is splittable
+     * or the random generator itself
+     *
+     * @param random the random generator
+     */
+    public static Random split(final Random random) {
+        return random instanceof SplitRandom
+                ? ((SplitRandom) random).split()
+                : random;
+    }
+
+    private SplittableRandom generator;
+    private double nextGaussian;
+    private boolean haveNextGaussian;
+
+    /**
+     * Creates the random generator
+     *
+     * @param generator the splittable generator
+     */
+    protected SplitRandom(final SplittableRandom generator) {
+        this.generator = requireNonNull(generator);
+    }
+
+    @Override
+    protected int next(final int bits) {
+        return (int) (generator.nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public boolean nextBoolean() {
+        return generator.nextBoolean();
+    }
+
+    @Override
+    public double nextDouble() {
+        return generator.nextDouble();
+    }
+
+    @Override
+    public double nextGaussian() {
+        if (haveNextGaussian) {
+            haveNextGaussian = false;
+            return nextGaussian;
+        }
+        // Polar method as java.util.Random
+        double v1;
+        double v2;
+        double s;
+        do {
+            v1 = 2 * generator.nextDouble() - 1;
+            v2 = 2 * generator.nextDouble() - 1;
+            s = v1 * v1 + v2 * v2;
+        } while (s >= 1 || s == 0);
+        final double multiplier = StrictMath.sqrt(-2 * StrictMath.log(s) / s);
+        nextGaussian = v2 * multiplier;
+        haveNextGaussian = true;
+        return v1 * multiplier;
+    }
+
+    @Override
+    public int nextInt() {
+        return generator.nextInt();
+    }
+
+    @Override
+    public int nextInt(final int bound) {
+        return generator.nextInt(bound);
+    }
+
+    @Override
+    public long nextLong() {
+        return generator.nextLong();
+    }
+
+    /**
+     * Restarts the generator with a seed as {@link #create(long)}
+     *
+     * @param seed the seed
+     */
+    @Override
+    public void setSeed(final long seed) {
+        // The super constructor sets the seed before the generator is created
+        if (generator != null) {
+            generator = new SplittableRandom(seed);
+            haveNextGaussian = false;
+        }
+    }
+
+    /**
+     * Returns an independent substream of this generator
+     */
+    public SplitRandom split() {
+        return new SplitRandom(generator.split());
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.List;
+
+import static java.lang.String.format;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Immutable projection of a simulation status for the viewers.
+ * <p>
+ * The snapshot holds only the aggregates per cell of a projected resource of the individuals
+ * and the number of individuals per cell so it can be consumed by other threads while the
+ * simulation moves on.
+ * </p>
+ */
+public class StatusSnapshot {
+
+    /**
+     * Returns the snapshot of a simulation status
+     *
+     * @param status the status
+     * @param ref    the projected resource index
+     */
+    public static StatusSnapshot create(SimStatus status, int ref) {
+        requireNonNull(status);
+        return create(status.getT(), status.getPopulations(), ref, status.getResources().getNumCols());
+    }
+
+    /**
+     * Returns the snapshot of populations
+     *
+     * @param t           the simulation time
+     * @param populations the populations
+     * @param ref         the projected resource index
+     * @param noCells     the number of cells
+     */
+    public static StatusSnapshot create(double t, List<Population> populations, int ref, int noCells) {
+        requireNonNull(populations);
+        assert noCells >= 0 : format("number of cells must be not negative (%d)", noCells);
+        double[] values = new double[noCells];
+        int[] counts = new int[noCells];
+        int individualCount = 0;
+        for (Population pop : populations) {
+            Matrix resources = pop.getResources();
+            CellIndex index = pop.getCellIndex();
+            assert ref >= 0 && ref < resources.getNumRows() : format("resource index %d out of range [0, %d)",
+                    ref, resources.getNumRows());
+            int cells = index.getNoCells();
+            for (int cell = 0; cell < cells; cell++) {
+                int end = index.getEnd(cell);
+                double value = values[cell];
+                for (int k = index.getStart(cell); k < end; k++) {
+                    value += resources.get(ref, index.getIndividual(k));
+                }
+                values[cell] = value;
+                counts[cell] += index.getCount(cell);
+            }
+            individualCount += index.getIndividualCount();
+        }
+        double minimum = Double.MAX_VALUE;
+        double maximum = -Double.MAX_VALUE;
+        for (int i = 0; i < noCells; i++) {
+            if (counts[i] > 0) {
+                minimum = Math.min(minimum, values[i]);
+                maximum = Math.max(maximum, values[i]);
+            }
+        }
+        if (individualCount == 0) {
+            minimum = maximum = 0;
+        }
+        return new StatusSnapshot(t, individualCount, values, counts, minimum, maximum);
+    }
+
+    private final double t;
+    private final int individualCount;
+    private final double[] values;
+    private final int[] counts;
+    private final double minimum;
+    private final double maximum;
+
+    /**
+     * Creates the snapshot
+     *
+     * @param t               the simulation time
+     * @param individualCount the number of individuals
+     * @param values          the projected resource quantities by cell
+     * @param counts          the number of individuals by cell
+     * @param minimum         the minimum quantity of occupied cells
+     * @param maximum         the maximum quantity of occupied cells
+     */
+    protected StatusSnapshot(double t, int individualCount, double[] values, int[] counts, double minimum, double maximum) {
+        this.t = t;
+        this.individualCount = individualCount;
+        this.values = requireNonNull(values);
+        this.counts = requireNonNull(counts);
+        this.minimum = minimum;
+        this.maximum = maximum;
+    }
+
+    /**
+     * Returns the number of individuals in the cell
+     *
+     * @param cell the cell index
+     */
+    public int getCount(int cell) {
+        return counts[cell];
+    }
+
+    /**
+     * Returns the number of individuals
+     */
+    public int getIndividualCount() {
+        return individualCount;
+    }
+
+    /**
+     * Returns the maximum quantity of occupied cells
+     */
+    public double getMaximum() {
+        return maximum;
+    }
+
+    /**
+     * Returns the minimum quantity of occupied cells
+     */
+    public double getMinimum() {
+        return minimum;
+    }
+
+    /**
+     * Returns the number of cells
+     */
+    public int getNoCells() {
+        return values.length;
+    }
+
+    /**
+     * Returns the simulation time
+     */
+    public double getT() {
+        return t;
+    }
+
+    /**
+     * Returns the projected resource quantity in the cell
+     *
+     * @param cell the cell index
+     */
+    public double getValue(int cell) {
+        return values[cell];
+    }
+
+    /**
+     * Returns true if the cell is occupied by any individual
+     *
+     * @param cell the cell index
+     */
+    public boolean isOccupied(int cell) {
+        return counts[cell] > 0;
+    }
+}
@@ -62,6 +62,16 @@ public interface Topology {
      */
     Rectangle2D getBounds();
 
+    /**
+     * Returns the cells in locality order (the cells near in the order are near in the space)
+     */
+    int[] getCellOrder();
+
+    /**
+     * Returns the diffusion kernel of cells
+     */
+    DiffusionKernel getDiffusionKernel();
+
     /**
      * Returns the edges
      */
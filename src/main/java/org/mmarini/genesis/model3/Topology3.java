@@ -32,8 +32,10 @@ package org.mmarini.genesis.model3;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
 /**
@@ -53,6 +55,11 @@ import static java.util.Objects.requireNonNull;
  * </pre>
  */
 public class Topology3 implements Topology {
+    /**
+     * The number of bands for each thread to balance the parallel diffusion
+     */
+    public static final int BANDS_PER_THREAD = 4;
+
     /**
      * Returns the topology
      *
@@ -71,6 +78,22 @@ public class Topology3 implements Topology {
         return new Topology3(width, height, length, vertices, centers, edges, adjacents);
     }
 
+    /**
+     * Returns the first cell of each band of rows and the number of cells (noBands + 1)
+     *
+     * @param width   the width of universe in cells
+     * @param height  the height of universe in cells
+     * @param noBands the number of bands
+     */
+    static int[] createBands(int width, int height, int noBands) {
+        final int n = Math.max(1, Math.min(height, noBands));
+        final int[] result = new int[n + 1];
+        for (int i = 0; i <= n; i++) {
+            result[i] = i * height / n * width;
+        }
+        return result;
+    }
+
     /**
      * Returns the adjacents
      *
@@ -246,6 +269,41 @@ public class Topology3 implements Topology {
         return ((i + height) % height) * width + ((j + width) % width);
     }
 
+    /**
+     * Returns the cells in Morton order (Z-order curve) of row and column
+     *
+     * @param width  the width of universe in cells
+     * @param height the height of universe in cells
+     */
+    static int[] createCellOrder(int width, int height) {
+        final int n = width * height;
+        final long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = (interleave(i / width, i % width) << 32) | i;
+        }
+        Arrays.sort(keys);
+        final int[] result = new int[n];
+        for (int i = 0; i < n; i++) {
+            result[i] = (int) keys[i];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the bits of row and column interleaved
+     *
+     * @param row the row
+     * @param col the column
+     */
+    static long interleave(int row, int col) {
+        long result = 0;
+        for (int b = 0; b < 16; b++) {
+            result |= (long) ((col >> b) & 1) << (2 * b);
+            result |= (long) ((row >> b) & 1) << (2 * b + 1);
+        }
+        return result;
+    }
+
     /**
      * @param l   the distance from origin
      * @param rad the direction in radiant
@@ -262,6 +320,9 @@ public class Topology3 implements Topology {
     private final Rectangle2D.Double bounds;
     private final Point2D[] centers;
     private final int[][] adjacents;
+    private final int[] cellOrder;
+    private final DiffusionKernel kernel;
+    private final int threads;
 
     /**
      * Creates a topology
@@ -282,31 +343,40 @@ public class Topology3 implements Topology {
         this.centers = centers;
         this.edges = edges;
         this.adjacents = adjacents;
+        this.cellOrder = createCellOrder(width, height);
+        this.kernel = DiffusionKernel.create(width * height, edges, 3 * length);
+        this.threads = 1;
         this.bounds = new Rectangle2D.Double(0, 0, (width + 1) * length / 2, height * length * Math.sin(Math.PI / 3));
     }
 
+    /**
+     * Creates a topology with a diffusion kernel
+     *
+     * @param other   the topology
+     * @param kernel  the diffusion kernel
+     * @param threads the number of diffusion threads
+     */
+    protected Topology3(Topology3 other, DiffusionKernel kernel, int threads) {
+        this.width = other.width;
+        this.height = other.height;
+        this.length = other.length;
+        this.vertices = other.vertices;
+        this.centers = other.centers;
+        this.edges = other.edges;
+        this.adjacents = other.adjacents;
+        this.cellOrder = other.cellOrder;
+        this.bounds = other.bounds;
+        this.kernel = requireNonNull(kernel);
+        this.threads = threads;
+    }
+
     @Override
     public Matrix flux(Matrix field, Matrix alpha) {
         requireNonNull(field);
         requireNonNull(alpha);
         assert field.getNumRows() == alpha.getNumRows()
                 && field.getNumCols() == alpha.getNumCols();
-        Matrix flux = field.createLike();
-        for (Edge edge : edges) {
-            int from = edge.getFrom();
-            int to = edge.getTo();
-            Matrix alp = alpha.extractColumn(from).mini(alpha.extractColumn(from));
-            Matrix df = field.extractColumn(to)
-                    .subi(field.extractColumn(from))
-                    .muli(alp);
-            flux.assignCol(from, (v, i) ->
-                            v + df.get(i, 0)
-                    )
-                    .assignCol(to, (v, i) ->
-                            v - df.get(i, 0)
-                    );
-        }
-        return flux.divi(3 * length);
+        return kernel.flux(field, alpha);
     }
 
     @Override
@@ -319,6 +389,16 @@ public class Topology3 implements Topology {
         return bounds;
     }
 
+    @Override
+    public int[] getCellOrder() {
+        return cellOrder;
+    }
+
+    @Override
+    public DiffusionKernel getDiffusionKernel() {
+        return kernel;
+    }
+
     @Override
     public List<Edge> getEdges() {
         return edges;
@@ -353,6 +433,13 @@ public class Topology3 implements Topology {
         return width * height;
     }
 
+    /**
+     * Returns the number of diffusion threads
+     */
+    public int getThreads() {
+        return threads;
+    }
+
     @Override
     public Point2D[] getVertices(int idx) {
         return vertices[idx];
@@ -364,4 +451,23 @@ public class Topology3 implements Topology {
     public int getWidth() {
         return width;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the topology computing the diffusion flux in parallel on bands of rows
+     *
+     * @param threads the number of threads
+     */
+    public Topology3 withThreads(int threads) {
+        assert threads > 0 : format("threads must be positive (%d)", threads);
+        if (threads == this.threads) {
+            return this;
+        }
+        final DiffusionKernel serial = DiffusionKernel.create(width * height, edges, 3 * length);
+        if (threads == 1) {
+            return new Topology3(this, serial, 1);
+        }
+        final DiffusionKernel parallel = serial.parallel(WorkerPools.get(threads),
+                createBands(width, height, threads * BANDS_PER_THREAD));
+        return new Topology3(this, parallel, threads);
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Shared pools of worker threads.
+ * <p>
+ * The engines and the topologies processing in parallel with the same number of threads share
+ * a single pool, so the pools are not created by each copy of an engine or topology.
+ * The worker threads are daemon threads and do not prevent the application exit.
+ * </p>
+ */
+class WorkerPools {
+    private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the shared pool with a number of threads
+     *
+     * @param threads the number of threads
+     */
+    static ForkJoinPool get(final int threads) {
+        assert threads > 0 : String.format("threads must be positive (%d)", threads);
+        return POOLS.computeIfAbsent(threads, ForkJoinPool::new);
+    }
+
+    private WorkerPools() {
+    }
+}
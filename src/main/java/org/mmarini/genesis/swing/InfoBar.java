@@ -29,6 +29,9 @@
 
 package org.mmarini.genesis.swing;
 
+import org.mmarini.genesis.model3.PhaseProfiler;
+import org.mmarini.genesis.model3.SimPhase;
+
 import javax.swing.*;
 import java.awt.*;
 import java.util.Arrays;
@@ -36,6 +39,7 @@ import java.util.Arrays;
 import static java.text.MessageFormat.format;
 
 public class InfoBar extends JPanel {
+    private static final double NANOS_PER_MILLIS = 1e6;
     private final String[] formats;
     private final JLabel[] labels;
     private double minimum;
@@ -54,7 +58,8 @@ public class InfoBar extends JPanel {
                 "TPS: {0,number,integer}",
                 "Speed: x {0,number,#0.0}",
                 "Range: {0,number,#0.###} - {1,number,#0.###}",
-                "Individuals {0}"};
+                "Individuals {0}",
+                "Slowest phase: {0} {1,number,#0.00} ms (p95 {2,number,#0.00} ms)"};
         labels = Arrays.stream(formats).map(JLabel::new).toArray(JLabel[]::new);
         GridLayout mgr = axis == SwingConstants.HORIZONTAL
                 ? new GridLayout(1, 0)
@@ -74,6 +79,35 @@ public class InfoBar extends JPanel {
         labels[5].setText(format(formats[5], individualCount));
     }
 
+    /**
+     * Shows the slowest phase and the tooltip of all phase durations
+     *
+     * @param profiler the phase profiler
+     */
+    public void setPhases(PhaseProfiler profiler) {
+        StringBuilder tip = new StringBuilder("<html>");
+        SimPhase slowest = null;
+        double slowestMean = -1;
+        double slowestP95 = 0;
+        for (SimPhase phase : SimPhase.values()) {
+            PhaseProfiler.Histogram histogram = profiler.getHistogram(phase);
+            if (histogram.getCount() > 0) {
+                double mean = histogram.getMean() / NANOS_PER_MILLIS;
+                double p95 = histogram.getPercentile(0.95) / NANOS_PER_MILLIS;
+                tip.append(format("{0}: {1,number,#0.000} ms (p95 {2,number,#0.000} ms)<br>", phase, mean, p95));
+                if (mean > slowestMean) {
+                    slowest = phase;
+                    slowestMean = mean;
+                    slowestP95 = p95;
+                }
+            }
+        }
+        if (slowest != null) {
+            labels[6].setText(format(formats[6], slowest, slowestMean, slowestP95));
+            labels[6].setToolTipText(tip.append("</html>").toString());
+        }
+    }
+
     public void setMaximum(double maximum) {
         this.maximum = maximum;
         labels[4].setText(format(formats[4], minimum, maximum));
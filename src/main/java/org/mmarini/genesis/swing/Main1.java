@@ -30,9 +30,15 @@
 package org.mmarini.genesis.swing;
 
 import org.mmarini.Tuple2;
+import org.mmarini.genesis.model3.Backpressure;
+import org.mmarini.genesis.model3.EventRing;
+import org.mmarini.genesis.model3.PhaseProfiler;
 import org.mmarini.genesis.model3.SimEngine;
 import org.mmarini.genesis.model3.SimStatus;
+import org.mmarini.genesis.model3.SimulatorEngine;
 import org.mmarini.genesis.model3.SimulatorEngineImpl;
+import org.mmarini.genesis.model3.SplitRandom;
+import org.mmarini.genesis.model3.StatusSnapshot;
 import org.mmarini.genesis.model3.Topology;
 import org.mmarini.genesis.yaml.Loader;
 import org.slf4j.Logger;
@@ -56,6 +62,8 @@ public class Main1 {
     public static final long NANOS_PER_SEC = 1000000000L;
     public static final int FPS = 60;
     public static final double SPEED = 5;
+    public static final int STEPS_PER_SEC = 120;
+    public static final long MAX_STEP_INTERVAL = 2 * NANOS_PER_SEC / STEPS_PER_SEC;
     private static final Logger logger = LoggerFactory.getLogger(Main1.class);
     private static final int WIDTH_SPARE = 100;
     private static final int HEIGHT_SPARE = 100;
@@ -87,8 +95,11 @@ public class Main1 {
     private final FrequencyMeter fps;
     private final FrequencyMeter tps;
     private final SimEngine engine;
+    private final PhaseProfiler profiler;
     private final Random random;
-    private final SimulatorEngineImpl<SimStatus, SimStatus> sim;
+    private final SimulatorEngineImpl<StatusSnapshot, SimStatus> sim;
+    private final SimStatus initial;
+    private SimStatus buffer;
 
     /**
      * @param engine  the engine
@@ -96,8 +107,9 @@ public class Main1 {
      * @param prj     the projection
      */
     public Main1(SimEngine engine, SimStatus status0, int prj) {
-        this.engine = requireNonNull(engine);
-        requireNonNull(status0);
+        this.profiler = PhaseProfiler.create();
+        this.engine = requireNonNull(engine).withProfiler(profiler);
+        this.initial = requireNonNull(status0);
         this.project = prj;
         this.frame = new JFrame(Messages.getString("Main.title"));
         this.chart = new PlaneChart();
@@ -105,12 +117,15 @@ public class Main1 {
         this.fps = FrequencyMeter.create();
         this.tps = FrequencyMeter.create();
         Topology topology = engine.getTopology();
-        this.random = new Random();
+        this.random = SplitRandom.create();
         this.sim = SimulatorEngineImpl.create(status0,
                         this::next,
                         this::emit
                 )
-                .setEventInterval(Duration.ofNanos(NANOS_PER_SEC / FPS));
+                .setEventInterval(Duration.ofNanos(NANOS_PER_SEC / FPS))
+                .setStepInterval(Duration.ofNanos(NANOS_PER_SEC / STEPS_PER_SEC))
+                .setMaxStepInterval(Duration.ofNanos(MAX_STEP_INTERVAL))
+                .setPacing(SimulatorEngine.Pacing.PACED);
         this.sim.setSpeed(SPEED);
         chart.setTopology(topology);
         Rectangle wnd = GraphicsEnvironment.getLocalGraphicsEnvironment().getMaximumWindowBounds();
@@ -127,34 +142,40 @@ public class Main1 {
         // Update ui status, refresh panels and send new event
         fps.getFlowable().doOnNext(infoBar::setFps).subscribe();
         tps.getFlowable().doOnNext(infoBar::setTps).subscribe();
-        sim.setOnSpeed(infoBar::setSpeed);
+        sim.getSpeedFlowable(Backpressure.latest())
+                .compose(SwingUtils.observeOnEdt())
+                .subscribe(infoBar::setSpeed);
+        // Renders the latest snapshot in the event dispatcher thread
+        sim.subscribe(EventRing.Policy.latest(), EventQueue::invokeLater, this::rebuild);
         return this;
     }
 
-    private SimStatus emit(SimStatus s) {
-        rebuild(s);
-        fps.tick();
-        return s;
+    private StatusSnapshot emit(SimStatus s) {
+        return StatusSnapshot.create(s, project);
     }
 
     private Tuple2<SimStatus, Double> next(SimStatus status, double dt) {
         tps.tick();
         double t = status.getT();
-        SimStatus next = engine.next(status, t + dt, random);
+        // Alternates the resources of the previous status and the next status
+        // never recycling the initial status
+        SimStatus next = engine.next(status, t + dt, random, buffer);
+        buffer = status != initial ? status : null;
         return Tuple2.of(next, dt);
     }
 
     /**
-     * @param status redraw the chart
+     * @param snapshot redraw the chart
      */
-    private void rebuild(SimStatus status) {
-        double t = status.getT();
+    private void rebuild(StatusSnapshot snapshot) {
+        double t = snapshot.getT();
         infoBar.setTime(round(t));
-        //chart.setField(status.getResources().extractRow(project));
-        chart.setPopulations(status.getPopulations(), project);
+        chart.setSnapshot(snapshot);
         infoBar.setMinimum(chart.getMinimum());
         infoBar.setMaximum(chart.getMaximum());
-        infoBar.setIndividualCount(status.getIndividualCount());
+        infoBar.setIndividualCount(snapshot.getIndividualCount());
+        infoBar.setPhases(profiler);
+        fps.tick();
     }
 
     /**
@@ -30,9 +30,9 @@
 
 package org.mmarini.genesis.swing;
 
-import org.mmarini.Tuple2;
 import org.mmarini.genesis.model3.Matrix;
 import org.mmarini.genesis.model3.Population;
+import org.mmarini.genesis.model3.StatusSnapshot;
 import org.mmarini.genesis.model3.Topology;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,17 +45,14 @@ import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 import java.util.function.Consumer;
 import java.util.function.DoubleUnaryOperator;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static java.lang.Math.max;
 import static java.lang.Math.min;
-import static org.mmarini.Tuple2.stream;
 
 /**
  *
@@ -168,33 +165,14 @@ public class PlaneChart extends JComponent {
      * @param ref  resource index
      */
     public void setPopulations(List<Population> pops, int ref) {
-        // Collect all locations and initialize result map
-        Map<Integer, Double> y = pops.stream()
-                .flatMap(pop -> Arrays.stream(pop.getLocations()).boxed())
-                .collect(Collectors.toMap(
-                        Function.identity(),
-                        x -> Double.valueOf(0d)
-                ));
-
-        Map<Integer, List<Tuple2<Integer, Double>>> zzz = pops.stream()
-                .flatMap(pop -> {
-                    // For each individual
-                    Matrix quantities = pop.getResources();
-                    int noIndividuals = quantities.getNumCols();
-                    int[] locations = pop.getLocations();
-                    Stream<Tuple2<Integer, Double>> individuals = IntStream.range(0, noIndividuals)
-                            .mapToObj(i -> {
-                                return Tuple2.of(locations[i], quantities.get(ref, i));
-                            });
-                    return individuals;
-                }).collect(Collectors.groupingBy(Tuple2::getV1));
-        Map<Integer, Double> qtyByLocation = stream(zzz).collect(Collectors.toMap(
-                Tuple2::getV1,
-                t -> t._2.stream()
-                        .mapToDouble(Tuple2::getV2)
-                        .sum()
-        ));
-        if (qtyByLocation.isEmpty()) {
+        setSnapshot(StatusSnapshot.create(0, pops, ref, topology.getNoCells()));
+    }
+
+    /**
+     * @param snapshot the status snapshot
+     */
+    public void setSnapshot(StatusSnapshot snapshot) {
+        if (snapshot.getIndividualCount() == 0) {
             painters = IntStream.range(0, topology.getNoCells())
                     .mapToObj(i -> {
                         Path2D shape = polys.get(i);
@@ -204,15 +182,15 @@ public class PlaneChart extends JComponent {
                         };
                     }).collect(Collectors.toList());
         } else {
-            minimum = qtyByLocation.values().stream().mapToDouble(x -> x).min().orElseThrow();
-            maximum = qtyByLocation.values().stream().mapToDouble(x -> x).max().orElseThrow();
+            minimum = snapshot.getMinimum();
+            maximum = snapshot.getMaximum();
             final DoubleUnaryOperator f = norm(minimum, maximum);
             painters = IntStream.range(0, topology.getNoCells())
                     .mapToObj(i -> {
                         Path2D shape = polys.get(i);
-                        if (qtyByLocation.containsKey(i)) {
+                        if (snapshot.isOccupied(i)) {
                             Color color = createColor(
-                                    f.applyAsDouble(qtyByLocation.get(i)));
+                                    f.applyAsDouble(snapshot.getValue(i)));
                             return (Consumer<Graphics2D>) g -> {
                                 g.setColor(color);
                                 g.fill(shape);
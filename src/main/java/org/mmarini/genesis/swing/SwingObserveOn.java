@@ -30,15 +30,24 @@
 package org.mmarini.genesis.swing;
 
 import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
 import org.reactivestreams.Subscriber;
 import org.reactivestreams.Subscription;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.awt.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * @param <T>
+ * Flowable delivering the items in the event dispatcher thread.
+ * <p>
+ * The items are requested to the source one at a time when the previous item has been
+ * delivered, so the backpressure strategies of the source apply to the event dispatcher thread.
+ * </p>
+ *
+ * @param <T> the item type
  */
 public class SwingObserveOn<T> extends Flowable<T> {
     private static final Logger logger = LoggerFactory.getLogger(SwingObserveOn.class);
@@ -60,11 +69,15 @@ public class SwingObserveOn<T> extends Flowable<T> {
 
     static final class ObserveOnSubscriber<T> implements Subscriber<T>, Subscription {
         private final Subscriber<? super T> subscriber;
+        private final AtomicLong requested;
+        private final AtomicBoolean inFlight;
         volatile boolean disposed;
         private Subscription subscription;
 
         public ObserveOnSubscriber(final Subscriber<? super T> subscriber) {
             this.subscriber = subscriber;
+            this.requested = new AtomicLong();
+            this.inFlight = new AtomicBoolean();
         }
 
         @Override
@@ -96,6 +109,10 @@ public class SwingObserveOn<T> extends Flowable<T> {
             EventQueue.invokeLater(() -> {
                 if (!disposed) {
                     subscriber.onNext(t);
+                    // The unbounded request is never decremented
+                    requested.getAndUpdate(r -> r == Long.MAX_VALUE ? r : r - 1);
+                    inFlight.set(false);
+                    requestNext();
                 }
             });
         }
@@ -108,7 +125,22 @@ public class SwingObserveOn<T> extends Flowable<T> {
 
         @Override
         public void request(final long n) {
-            subscription.request(n);
+            if (n <= 0) {
+                RxJavaPlugins.onError(new IllegalArgumentException("n > 0 required but it was " + n));
+                return;
+            }
+            // Adds the request capping the total to the unbounded request
+            requested.getAndUpdate(r -> Long.MAX_VALUE - r <= n ? Long.MAX_VALUE : r + n);
+            requestNext();
+        }
+
+        /**
+         * Requests the next item to the source if requested and no item is in flight
+         */
+        private void requestNext() {
+            if (!disposed && requested.get() > 0 && inFlight.compareAndSet(false, true)) {
+                subscription.request(1);
+            }
         }
     }
 }
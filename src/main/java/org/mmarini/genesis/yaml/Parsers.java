@@ -118,6 +118,21 @@ public class Parsers {
                 .collect(toMap());
     }
 
+    /**
+     * Returns the diffusion solver of environment
+     *
+     * @param node      the environment json node
+     * @param topology  the topology
+     * @param diffusion the diffusion coefficients (noResources x 1)
+     */
+    public static DiffusionSolver diffusionSolver(JsonNode node, Topology topology, Matrix diffusion) {
+        return DiffusionSolver.create(
+                node.path("diffusionMethod").asText(DiffusionSolver.EXPLICIT),
+                topology, diffusion,
+                node.path("diffusionTolerance").asDouble(DiffusionSolver.DEFAULT_TOLERANCE),
+                node.path("diffusionMaxIterations").asInt(DiffusionSolver.DEFAULT_MAX_ITERATIONS));
+    }
+
     /**
      * @param node the json node
      */
@@ -128,10 +143,18 @@ public class Parsers {
         Dimension size = dimension(environ);
         JsonNode lengthNode = environ.path("length");
         double length = lengthNode.asDouble(0);
-        final Topology3 top = Topology3.create(size.width, size.height, length);
+        final Topology3 top = Topology3.create(size.width, size.height, length)
+                .withThreads(environ.path("diffusionThreads").asInt(1));
         final Matrix alpha = resources(environ.path("diffusion"), keys);
         final int energyReg = keys.indexOf(node.path("energyRef").asText(""));
-        return SimEngine.create(mass, top, alpha, energyReg);
+        final DiffusionSolver solver = diffusionSolver(environ, top, alpha);
+        return SimEngine.create(mass, top, alpha, energyReg)
+                .withDiffusionSolver(solver)
+                .withPopulationThreads(node.path("populationThreads").asInt(1))
+                .withChunkSize(node.path("populationChunkSize").asInt(SimEngine.DEFAULT_CHUNK_SIZE))
+                .withSortThreshold(node.path("populationSortThreshold").asDouble(SimEngine.NO_SORT_THRESHOLD))
+                .withFusedKernel(SimEngine.FUSED_KERNEL.equals(
+                        node.path("speciesKernel").asText(SimEngine.PHASED_KERNEL)));
     }
 
     /**
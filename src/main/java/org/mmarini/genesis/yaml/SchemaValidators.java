@@ -30,6 +30,8 @@
 package org.mmarini.genesis.yaml;
 
 
+import org.mmarini.genesis.model3.DiffusionSolver;
+import org.mmarini.genesis.model3.SimEngine;
 import org.mmarini.yaml.schema.Validator;
 
 import java.util.HashMap;
@@ -91,7 +93,7 @@ public class SchemaValidators {
      *
      */
     public static Validator config() {
-        return objectPropertiesRequired(Map.of(
+        Map<String, Validator> props = new HashMap<>(Map.of(
                 "mass", resources(),
                 "environ", environ(),
                 "photoProcesses", photoProcesses(),
@@ -99,8 +101,13 @@ public class SchemaValidators {
                 "eipgenes", eipGenes(),
                 "pipgenes", pipGenes(),
                 "populations", arrayItems(population()),
-                "energyRef", string()
-        ), List.of(
+                "energyRef", string(),
+                "populationThreads", positiveInteger(),
+                "populationChunkSize", positiveInteger()));
+        props.putAll(Map.of(
+                "speciesKernel", values(SimEngine.PHASED_KERNEL, SimEngine.FUSED_KERNEL),
+                "populationSortThreshold", nonNegativeNumber()));
+        return objectPropertiesRequired(props, List.of(
                 "mass",
                 "environ",
                 "photoProcesses",
@@ -128,7 +135,14 @@ public class SchemaValidators {
                 "height", allOf(positiveInteger(), EVEN_INT),
                 "length", positiveNumber(),
                 "resources", nonNegativeResources(),
-                "diffusion", positiveResources()
+                "diffusion", positiveResources(),
+                "diffusionMethod", string(values(
+                        DiffusionSolver.EXPLICIT,
+                        DiffusionSolver.BACKWARD_EULER,
+                        DiffusionSolver.CRANK_NICOLSON)),
+                "diffusionTolerance", positiveNumber(),
+                "diffusionMaxIterations", positiveInteger(),
+                "diffusionThreads", positiveInteger()
         ), List.of(
                 "width",
                 "height",
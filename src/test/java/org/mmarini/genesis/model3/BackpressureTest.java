@@ -0,0 +1,109 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.processors.PublishProcessor;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class BackpressureTest {
+
+    static TestSubscriber<Integer> publish(Backpressure backpressure) {
+        final PublishProcessor<Integer> source = PublishProcessor.create();
+        final TestSubscriber<Integer> result = backpressure.apply((Flowable<Integer>) source).test(1);
+        for (int i = 0; i < 10; i++) {
+            source.onNext(i);
+        }
+        return result;
+    }
+
+    @Test
+    void buffer() {
+        /*
+         * Given a subscriber requesting one item with a bounded buffer
+         * When publishing more items than requested
+         */
+        final TestSubscriber<Integer> result = publish(Backpressure.buffer(3));
+
+        /*
+         * Then the subscriber should receive the buffered items dropping the oldest ones
+         */
+        result.requestMore(10);
+        result.assertValues(0, 7, 8, 9);
+        result.assertNoErrors();
+    }
+
+    @Test
+    void drop() {
+        final TestSubscriber<Integer> result = publish(Backpressure.drop());
+
+        result.requestMore(10);
+        result.assertValues(0);
+        result.assertNoErrors();
+    }
+
+    @Test
+    void latest() {
+        final TestSubscriber<Integer> result = publish(Backpressure.latest());
+
+        result.requestMore(10);
+        result.assertValues(0, 9);
+        result.assertNoErrors();
+    }
+
+    @Test
+    void sample() throws InterruptedException {
+        /*
+         * Given a sampled flow of items emitted faster than the sample interval
+         */
+        final PublishProcessor<Integer> source = PublishProcessor.create();
+        final TestSubscriber<Integer> result = Backpressure.sample(Duration.ofMillis(100))
+                .apply((Flowable<Integer>) source).test();
+        for (int i = 0; i < 10; i++) {
+            source.onNext(i);
+        }
+
+        /*
+         * Then the subscriber should receive only the latest item in the interval
+         */
+        result.awaitCount(1);
+        TimeUnit.MILLISECONDS.sleep(200);
+        result.assertValues(9);
+        assertThat(result.values(), hasSize(1));
+        result.assertNoErrors();
+    }
+}
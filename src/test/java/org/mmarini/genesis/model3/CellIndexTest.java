@@ -0,0 +1,197 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mmarini.genesis.model3.Matrix.of;
+import static org.mmarini.genesis.model3.MatrixMatchers.matrixCloseTo;
+
+class CellIndexTest {
+
+    static final long SEED = 1234L;
+    static final int NUM_CELLS = 8;
+    static final int NUM_INDIVIDUALS = 100;
+
+    static void assertSameIndex(CellIndex actual, CellIndex expected) {
+        assertThat(actual.getNoCells(), equalTo(expected.getNoCells()));
+        assertThat(actual.getIndividualCount(), equalTo(expected.getIndividualCount()));
+        for (int c = 0; c < expected.getNoCells(); c++) {
+            assertThat(actual.getStart(c), equalTo(expected.getStart(c)));
+            assertThat(actual.getEnd(c), equalTo(expected.getEnd(c)));
+        }
+        for (int k = 0; k < expected.getIndividualCount(); k++) {
+            assertThat(actual.getIndividual(k), equalTo(expected.getIndividual(k)));
+        }
+    }
+
+    static int[] randomLocations(Random random, int n) {
+        return IntStream.range(0, n).map(i -> random.nextInt(NUM_CELLS)).toArray();
+    }
+
+    @Test
+    void addByCell() {
+        final CellIndex index = CellIndex.create(new int[]{3, 0, 3, 1});
+        final Matrix values = of(new double[][]{
+                {1, 2, 3, 4},
+                {10, 20, 30, 40}
+        });
+
+        final Matrix result = index.addByCell(values, Matrix.zeros(2, 5).addi(1));
+
+        assertThat(result, matrixCloseTo(of(new double[][]{
+                {3, 5, 1, 5, 1},
+                {21, 41, 1, 41, 1}
+        }), 0));
+    }
+
+    @Test
+    void addByCellSameAsScatter() {
+        /*
+         * Given random locations and values
+         */
+        final Random random = new Random(SEED);
+        final int[] locations = randomLocations(random, NUM_INDIVIDUALS);
+        final Matrix values = Matrix.rand(1, NUM_INDIVIDUALS, random);
+
+        /*
+         * When adding by cell
+         */
+        final Matrix result = CellIndex.create(locations).addByCell(values, Matrix.zeros(1, NUM_CELLS));
+
+        /*
+         * Then the result should be the scatter of individual values
+         */
+        final Matrix expected = Matrix.zeros(1, NUM_CELLS)
+                .mapiColsAsDouble((v, i, j, k) -> v + values.get(i, j), locations);
+        assertThat(result, matrixCloseTo(expected, 0));
+    }
+
+    @Test
+    void append() {
+        /*
+         * Given an index
+         */
+        final Random random = new Random(SEED);
+        final int[] locations = new int[]{2, 0, 2};
+        final int[] appended = new int[]{5, 2, 0, 5};
+
+        /*
+         * When appending individuals
+         */
+        final CellIndex result = CellIndex.create(locations).append(appended, locations.length);
+
+        /*
+         * Then the index should be the index of all the individuals
+         */
+        assertSameIndex(result, CellIndex.create(new int[]{2, 0, 2, 5, 2, 0, 5}));
+        assertThat(result.getCount(2), equalTo(3));
+        assertThat(result.getCount(7), equalTo(0));
+
+        final int[] locations1 = randomLocations(random, NUM_INDIVIDUALS);
+        final int[] appended1 = randomLocations(random, NUM_INDIVIDUALS / 2);
+        final int[] all = IntStream.concat(IntStream.of(locations1), IntStream.of(appended1)).toArray();
+        assertSameIndex(CellIndex.create(locations1).append(appended1, NUM_INDIVIDUALS), CellIndex.create(all));
+    }
+
+    @Test
+    void create() {
+        final CellIndex index = CellIndex.create(new int[]{3, 0, 3, 1});
+
+        assertThat(index.getNoCells(), equalTo(4));
+        assertThat(index.getIndividualCount(), equalTo(4));
+        assertThat(index.getCount(0), equalTo(1));
+        assertThat(index.getCount(2), equalTo(0));
+        assertThat(index.getCount(3), equalTo(2));
+        assertThat(index.getIndividual(index.getStart(0)), equalTo(1));
+        assertThat(index.getIndividual(index.getStart(1)), equalTo(3));
+        assertThat(index.getIndividual(index.getStart(3)), equalTo(0));
+        assertThat(index.getIndividual(index.getStart(3) + 1), equalTo(2));
+    }
+
+    @Test
+    void select() {
+        /*
+         * Given an index of random locations
+         */
+        final Random random = new Random(SEED);
+        final int[] locations = randomLocations(random, NUM_INDIVIDUALS);
+        final int[] selected = IntStream.range(0, NUM_INDIVIDUALS).filter(i -> random.nextBoolean()).toArray();
+
+        /*
+         * When selecting individuals
+         */
+        final CellIndex result = CellIndex.create(locations).select(selected, NUM_INDIVIDUALS);
+
+        /*
+         * Then the index should be the index of selected individuals
+         */
+        final int[] locations1 = IntStream.of(selected).map(i -> locations[i]).toArray();
+        final CellIndex expected = CellIndex.create(locations1);
+        for (int c = 0; c < NUM_CELLS; c++) {
+            assertThat(result.getCount(c), equalTo(expected.getCount(c)));
+            for (int k = 0; k < expected.getCount(c); k++) {
+                assertThat(result.getIndividual(result.getStart(c) + k), equalTo(expected.getIndividual(expected.getStart(c) + k)));
+            }
+        }
+    }
+
+    @Test
+    void population() {
+        /*
+         * Given a population with an index
+         */
+        final Species species = Species.create(1, 0.5, 2,
+                List.of(), List.of(), List.of(), List.of());
+        final Population pop = Population.create(of(new double[][]{
+                {1, 0, 3, 4},
+                {1, 2, 0, 4}
+        }), List.of(), List.of(), List.of(), List.of(), new int[]{3, 1, 3, 0}, species);
+        pop.getCellIndex();
+
+        /*
+         * When the individuals survive
+         */
+        final Matrix env = Matrix.zeros(2, NUM_CELLS);
+        final Population result = pop.survive(0, of(1, 1), env);
+
+        /*
+         * Then the index of result should be derived from the index of population
+         */
+        assertThat(result.getIndividualCount(), equalTo(3));
+        assertSameIndex(result.getCellIndex(), CellIndex.create(result.getLocations()));
+    }
+}
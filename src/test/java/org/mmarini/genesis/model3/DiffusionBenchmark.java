@@ -0,0 +1,101 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import java.util.Random;
+
+import static java.lang.String.format;
+
+/**
+ * Measures the scaling of the banded diffusion flux from 1 to N threads.
+ * <p>
+ * Run with
+ * <pre>
+ *     java -cp target/classes:target/test-classes:... org.mmarini.genesis.model3.DiffusionBenchmark [size] [resources] [maxThreads]
+ * </pre>
+ * </p>
+ */
+public class DiffusionBenchmark {
+    private static final int WARMUP = 50;
+    private static final int ITERATIONS = 200;
+
+    /**
+     * @param args the arguments: grid size (200), number of resources (4), maximum number of threads (cores)
+     */
+    public static void main(String[] args) {
+        final int size = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        final int resources = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        final int maxThreads = args.length > 2
+                ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        final Random random = new Random(1234);
+        final Topology3 serial = Topology3.create(size, size, 1);
+        final Matrix field = Matrix.rand(resources, serial.getNoCells(), random);
+        final Matrix alpha = Matrix.rand(resources, serial.getNoCells(), random);
+        final Matrix expected = serial.flux(field, alpha);
+
+        System.out.println(format("Diffusion flux %dx%d cells, %d resources", size, size, resources));
+        System.out.println("threads      ms/flux    speedup  identical");
+        double base = 0;
+        for (int threads = 1; threads <= maxThreads; threads++) {
+            final Topology3 top = serial.withThreads(threads);
+            for (int i = 0; i < WARMUP; i++) {
+                top.flux(field, alpha);
+            }
+            final long start = System.nanoTime();
+            Matrix result = null;
+            for (int i = 0; i < ITERATIONS; i++) {
+                result = top.flux(field, alpha);
+            }
+            final double ms = (System.nanoTime() - start) * 1e-6 / ITERATIONS;
+            if (threads == 1) {
+                base = ms;
+            }
+            System.out.println(format("%7d %12.3f %10.2f %10s", threads, ms, base / ms, identical(expected, result)));
+        }
+    }
+
+    /**
+     * Returns true if the matrices are bit-identical
+     *
+     * @param a the first matrix
+     * @param b the second matrix
+     */
+    private static boolean identical(Matrix a, Matrix b) {
+        for (int i = 0; i < a.getNumRows(); i++) {
+            for (int j = 0; j < a.getNumCols(); j++) {
+                if (Double.doubleToLongBits(a.get(i, j)) != Double.doubleToLongBits(b.get(i, j))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
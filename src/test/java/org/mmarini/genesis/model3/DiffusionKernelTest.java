@@ -0,0 +1,103 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mmarini.genesis.model3.MatrixMatchers.matrixCloseTo;
+
+class DiffusionKernelTest {
+    /**
+     * Returns the flux computed by sweeping the edge list
+     *
+     * @param top   the topology
+     * @param field the field
+     * @param alpha the alpha coefficients
+     */
+    static Matrix edgeFlux(Topology3 top, Matrix field, Matrix alpha) {
+        Matrix flux = field.createLike();
+        for (Edge edge : top.getEdges()) {
+            int from = edge.getFrom();
+            int to = edge.getTo();
+            Matrix df = field.extractColumn(to)
+                    .subi(field.extractColumn(from))
+                    .muli(alpha.extractColumn(from));
+            flux.assignColAsDouble(from, (v, i) -> v + df.get(i, 0))
+                    .assignColAsDouble(to, (v, i) -> v - df.get(i, 0));
+        }
+        return flux.divi(3 * top.getLength());
+    }
+
+    @Test
+    void create() {
+        Topology3 top = Topology3.create(4, 2, 2);
+        DiffusionKernel kernel = top.getDiffusionKernel();
+        assertThat(kernel.getNoCells(), equalTo(8));
+        assertThat(kernel.getNoEntries(), equalTo(2 * top.getEdges().size()));
+        assertThat(kernel.getScale(), equalTo(6.0));
+    }
+
+    @Test
+    void identical() {
+        Random random = new Random(1234);
+        Topology3 top = Topology3.create(10, 8, 3);
+        Matrix field = Matrix.rand(3, top.getNoCells(), random).muli(10);
+        Matrix alpha = Matrix.rand(3, top.getNoCells(), random);
+
+        Matrix flux = top.getDiffusionKernel().flux(field, alpha);
+
+        assertThat(flux, matrixCloseTo(edgeFlux(top, field, alpha), 0));
+    }
+
+    @Test
+    void bands() {
+        assertThat(Topology3.createBands(4, 6, 4), equalTo(new int[]{0, 4, 12, 16, 24}));
+        assertThat(Topology3.createBands(4, 2, 8), equalTo(new int[]{0, 4, 8}));
+        assertThat(Topology3.createBands(4, 2, 1), equalTo(new int[]{0, 8}));
+    }
+
+    @Test
+    void parallel() {
+        Random random = new Random(1234);
+        Topology3 top = Topology3.create(20, 16, 3);
+        Topology3 parallel = top.withThreads(3);
+        Matrix field = Matrix.rand(3, top.getNoCells(), random).muli(10);
+        Matrix alpha = Matrix.rand(3, top.getNoCells(), random);
+
+        assertThat(parallel.getThreads(), equalTo(3));
+        assertThat(parallel.getDiffusionKernel().getNoBands(), equalTo(12));
+        assertThat(parallel.flux(field, alpha), matrixCloseTo(top.flux(field, alpha), 0));
+        assertThat(parallel.withThreads(1).flux(field, alpha), matrixCloseTo(top.flux(field, alpha), 0));
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class EventRingTest {
+
+    static final int CAPACITY = 8;
+
+    @Test
+    void every() {
+        /*
+         * Given a ring with a synchronous subscription to every event
+         */
+        final EventRing<Integer> ring = EventRing.create(CAPACITY);
+        final List<Integer> values = new ArrayList<>();
+        ring.subscribe(EventRing.Policy.every(), Runnable::run, values::add);
+
+        /*
+         * When publishing events
+         */
+        for (int i = 0; i < 20; i++) {
+            ring.publish(i);
+        }
+
+        /*
+         * Then all the events should be consumed in order
+         */
+        assertThat(values, hasSize(20));
+        assertThat(values.get(0), equalTo(0));
+        assertThat(values.get(19), equalTo(19));
+        assertThat(ring.getCursor(), equalTo(19L));
+    }
+
+    @Test
+    void failingConsumer() {
+        /*
+         * Given a ring with a subscription whose consumer fails on the first event
+         */
+        final EventRing<Integer> ring = EventRing.create(CAPACITY);
+        final List<Integer> values = new ArrayList<>();
+        ring.subscribe(EventRing.Policy.every(), Runnable::run, value -> {
+            if (value == 0) {
+                throw new IllegalStateException("consumer failure");
+            }
+            values.add(value);
+        });
+
+        /*
+         * When publishing events
+         */
+        assertThrows(IllegalStateException.class, () -> ring.publish(0));
+        for (int i = 1; i < 5; i++) {
+            ring.publish(i);
+        }
+
+        /*
+         * Then the following events should be consumed
+         */
+        assertThat(values, contains(1, 2, 3, 4));
+    }
+
+    @Test
+    void everyNth() {
+        final EventRing<Integer> ring = EventRing.create(CAPACITY);
+        final List<Integer> values = new ArrayList<>();
+        ring.subscribe(EventRing.Policy.everyNth(3), Runnable::run, values::add);
+
+        for (int i = 0; i < 10; i++) {
+            ring.publish(i);
+        }
+
+        assertThat(values, contains(0, 3, 6, 9));
+    }
+
+    @Test
+    void latest() {
+        /*
+         * Given a ring with a deferred subscription to the latest event
+         */
+        final EventRing<Integer> ring = EventRing.create(CAPACITY);
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Integer> values = new ArrayList<>();
+        final EventRing.Subscription<Integer> subscription = ring.subscribe(EventRing.Policy.latest(), tasks::add, values::add);
+
+        /*
+         * When publishing events faster than the consumer
+         */
+        for (int i = 0; i < 5; i++) {
+            ring.publish(i);
+        }
+
+        /*
+         * Then only a drain should be scheduled consuming the latest event
+         */
+        assertThat(tasks, hasSize(1));
+        tasks.get(0).run();
+        assertThat(values, contains(4));
+        assertThat(subscription.getSkipped(), equalTo(4L));
+    }
+
+    @Test
+    void multipleSubscriptions() {
+        /*
+         * Given a ring with a slow subscription and a synchronous subscription
+         */
+        final EventRing<Integer> ring = EventRing.create(CAPACITY);
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Integer> slow = new ArrayList<>();
+        final List<Integer> fast = new ArrayList<>();
+        ring.subscribe(EventRing.Policy.every(), tasks::add, slow::add);
+        ring.subscribe(EventRing.Policy.every(), Runnable::run, fast::add);
+
+        /*
+         * When publishing events
+         */
+        for (int i = 0; i < 3; i++) {
+            ring.publish(i);
+        }
+
+        /*
+         * Then the slow subscription should not stop the others
+         */
+        assertThat(fast, contains(0, 1, 2));
+        assertThat(slow, empty());
+        tasks.get(0).run();
+        assertThat(slow, contains(0, 1, 2));
+    }
+
+    @Test
+    void overrun() {
+        /*
+         * Given a ring with a deferred subscription to every event
+         */
+        final EventRing<Integer> ring = EventRing.create(CAPACITY);
+        final List<Runnable> tasks = new ArrayList<>();
+        final List<Integer> values = new ArrayList<>();
+        final EventRing.Subscription<Integer> subscription = ring.subscribe(EventRing.Policy.every(), tasks::add, values::add);
+
+        /*
+         * When publishing more events than the capacity before the consumer runs
+         */
+        for (int i = 0; i < 20; i++) {
+            ring.publish(i);
+        }
+        tasks.get(0).run();
+
+        /*
+         * Then the overwritten events should be skipped
+         */
+        assertThat(values, contains(13, 14, 15, 16, 17, 18, 19));
+        assertThat(subscription.getSkipped(), equalTo(13L));
+    }
+
+    @Test
+    void cancel() {
+        final EventRing<Integer> ring = EventRing.create(CAPACITY);
+        final List<Integer> values = new ArrayList<>();
+        final EventRing.Subscription<Integer> subscription = ring.subscribe(EventRing.Policy.every(), Runnable::run, values::add);
+
+        ring.publish(0);
+        subscription.cancel();
+        ring.publish(1);
+
+        assertThat(values, contains(0));
+        assertThat(subscription.isCancelled(), equalTo(true));
+        assertThat(ring.hasSubscriptions(), equalTo(false));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.genesis.model3.Matrix.of;
+import static org.mmarini.genesis.model3.MatrixMatchers.matrixCloseTo;
+
+class FusedSpeciesKernelTest {
+
+    static final int NUM_POPULATIONS = 3;
+    static final int WIDTH = 4;
+    static final int HEIGHT = 2;
+    static final int NUM_CELLS = WIDTH * HEIGHT;
+    static final int ENERGY_REF = 1;
+    static final long SEED = 1234L;
+    static final double LENGTH = 2;
+    static final double DT = 0.1;
+    static final double SURVIVING_MASS = 2;
+    static final double FRACTAL_DIMENSION = 2;
+    static final Matrix MASSES = of(1, 0.1);
+    static final Matrix DIFFUSION = of(0, 0);
+    static final Reaction PHOTO_REACTION = Reaction.create(of(1, 0), of(0, 1), of(0.1, 0), of(1, 0));
+    static final Reaction REACTION = Reaction.create(of(0, 1), of(1, 0), of(0, 0.1), of(0, 2));
+
+    /**
+     * Returns the status with populations with photo and reaction processes.
+     * The first individual of each population has no energy and the second one has low mass
+     */
+    static SimStatus createStatus() {
+        final Random random = new Random(SEED);
+        final List<Population> pops = IntStream.range(0, NUM_POPULATIONS).mapToObj(k -> {
+            final int n = 10 + k;
+            final Species species = Species.create(0.5 * (k + 1), SURVIVING_MASS, FRACTAL_DIMENSION,
+                    List.of(PhotoReactionProcess.create(ENERGY_REF, 1, 1, 10, PHOTO_REACTION)),
+                    List.of(ReactionProcess.create(0, 1, 10, REACTION),
+                            ReactionProcess.create(ENERGY_REF, 1, 10, PHOTO_REACTION)),
+                    List.of(), List.of());
+            final Matrix resources = Matrix.zeros(2, n).mapiAsDouble((v, i, j) ->
+                    i == 0
+                            ? j == 1 ? 1 : 2 + 8 * random.nextDouble()
+                            : j == 0 ? 0 : 10 * random.nextDouble());
+            final Matrix photoTargets = Matrix.zeros(1, n).mapiAsDouble((v, i, j) -> 1 + 9 * random.nextDouble());
+            final Matrix reactionTargets1 = Matrix.zeros(1, n).mapiAsDouble((v, i, j) -> 1 + 9 * random.nextDouble());
+            final Matrix reactionTargets2 = Matrix.zeros(1, n).mapiAsDouble((v, i, j) -> 1 + 9 * random.nextDouble());
+            final int[] locations = IntStream.range(0, n).map(j -> random.nextInt(NUM_CELLS)).toArray();
+            return Population.create(resources, List.of(photoTargets), List.of(reactionTargets1, reactionTargets2),
+                    List.of(), List.of(), locations, species);
+        }).collect(Collectors.toList());
+        return SimStatus.create(0, Matrix.ones(2, NUM_CELLS), pops);
+    }
+
+    @Test
+    void fused() {
+        /*
+         * Given a phased engine and a fused kernel engine
+         */
+        final SimEngine phased = SimEngine.create(MASSES, Topology3.create(WIDTH, HEIGHT, LENGTH), DIFFUSION, ENERGY_REF);
+        final SimEngine fused = phased.withFusedKernel(true);
+        assertThat(phased.getSpeciesKernel(), nullValue());
+        assertThat(fused.getSpeciesKernel(), notNullValue());
+
+        /*
+         * When processing the individuals
+         */
+        final SimStatus expected = phased.processReactions(phased.processPhotos(
+                phased.survive(phased.maintain(createStatus(), DT)), DT), DT);
+        final SimStatus result = fused.processFusedKernel(createStatus(), DT);
+
+        /*
+         * Then the results should be the same of phased processes
+         */
+        assertThat(result.getResources(), matrixCloseTo(expected.getResources(), 0));
+        for (int i = 0; i < NUM_POPULATIONS; i++) {
+            final Population exp = expected.getPopulations().get(i);
+            final Population res = result.getPopulations().get(i);
+            assertThat(res.getIndividualCount(), equalTo(exp.getIndividualCount()));
+            assertThat(res.getIndividualCount(), lessThan(10 + i - 1));
+            assertThat(res.getLocations(), equalTo(exp.getLocations()));
+            assertThat(res.getResources(), matrixCloseTo(exp.getResources(), 0));
+        }
+    }
+
+    @Test
+    void fusedParallel() {
+        /*
+         * Given a phased engine and a parallel fused kernel engine splitting populations in chunks
+         */
+        final SimEngine phased = SimEngine.create(MASSES, Topology3.create(WIDTH, HEIGHT, LENGTH), DIFFUSION, ENERGY_REF);
+        final SimEngine fused = phased.withFusedKernel(true).withPopulationThreads(2).withChunkSize(3);
+
+        /*
+         * When processing the individuals
+         */
+        final SimStatus expected = phased.processReactions(phased.processPhotos(
+                phased.survive(phased.maintain(createStatus(), DT)), DT), DT);
+        final SimStatus result = fused.processFusedKernel(createStatus(), DT);
+
+        /*
+         * Then the results should be the same of phased processes
+         */
+        assertThat(result.getResources(), matrixCloseTo(expected.getResources(), 0));
+        for (int i = 0; i < NUM_POPULATIONS; i++) {
+            assertThat(result.getPopulations().get(i).getResources(),
+                    matrixCloseTo(expected.getPopulations().get(i).getResources(), 0));
+        }
+    }
+}
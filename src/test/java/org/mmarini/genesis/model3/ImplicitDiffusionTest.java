@@ -0,0 +1,130 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mmarini.genesis.model3.MatrixMatchers.matrixCloseTo;
+
+class ImplicitDiffusionTest {
+    private static final Topology3 TOPOLOGY = Topology3.create(10, 8, 2);
+    private static final Matrix DIFFUSION = Matrix.of(0.1, 1);
+
+    /**
+     * Returns the sum of resource row
+     */
+    private static double sum(Matrix m, int row) {
+        double result = 0;
+        for (int j = 0; j < m.getNumCols(); j++) {
+            result += m.get(row, j);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the field with the resources concentrated in a cell
+     */
+    private static Matrix peak() {
+        return Matrix.zeros(2, TOPOLOGY.getNoCells())
+                .set(0, 11, 100)
+                .set(1, 11, 100);
+    }
+
+    @Test
+    void backwardEuler() {
+        DiffusionSolver solver = DiffusionSolver.create(DiffusionSolver.BACKWARD_EULER, TOPOLOGY, DIFFUSION, 1e-12, 200);
+        DiffusionSolver explicit = DiffusionSolver.create(DiffusionSolver.EXPLICIT, TOPOLOGY, DIFFUSION, 1e-12, 200);
+        Matrix field = Matrix.rand(2, TOPOLOGY.getNoCells(), new Random(1234)).muli(10);
+
+        Matrix expected = explicit.diffuse(field.copy(), 1e-3);
+        Matrix result = solver.diffuse(field.copy(), 1e-3);
+
+        assertThat(result, matrixCloseTo(expected, 1e-4));
+    }
+
+    @Test
+    void conservation() {
+        DiffusionSolver solver = DiffusionSolver.create(DiffusionSolver.CRANK_NICOLSON, TOPOLOGY, DIFFUSION, 1e-12, 200);
+        Matrix field = peak();
+
+        Matrix result = solver.diffuse(field, 5);
+
+        assertThat(sum(result, 0), closeTo(100, 1e-8));
+        assertThat(sum(result, 1), closeTo(100, 1e-8));
+    }
+
+    @Test
+    void crankNicolson() {
+        DiffusionSolver solver = DiffusionSolver.create(DiffusionSolver.CRANK_NICOLSON, TOPOLOGY, DIFFUSION, 1e-12, 200);
+        DiffusionSolver fine = DiffusionSolver.create(DiffusionSolver.EXPLICIT, TOPOLOGY, DIFFUSION, 1e-12, 200);
+        Matrix field = Matrix.rand(2, TOPOLOGY.getNoCells(), new Random(1234)).muli(10);
+
+        Matrix expected = field.copy();
+        for (int i = 0; i < 100; i++) {
+            fine.diffuse(expected, 1e-3);
+        }
+        Matrix result = solver.diffuse(field.copy(), 0.1);
+
+        assertThat(result, matrixCloseTo(expected, 1e-3));
+    }
+
+    @Test
+    void create() {
+        assertThat(DiffusionSolver.create("explicit", TOPOLOGY, DIFFUSION, 1e-9, 10), isA(ExplicitDiffusion.class));
+        assertThat(DiffusionSolver.create("backwardEuler", TOPOLOGY, DIFFUSION, 1e-9, 10), isA(ImplicitDiffusion.class));
+        assertThat(DiffusionSolver.create("crankNicolson", TOPOLOGY, DIFFUSION, 1e-9, 10), isA(ImplicitDiffusion.class));
+        assertThrows(IllegalArgumentException.class, () ->
+                DiffusionSolver.create("none", TOPOLOGY, DIFFUSION, 1e-9, 10));
+    }
+
+    @Test
+    void stability() {
+        DiffusionSolver solver = DiffusionSolver.create(DiffusionSolver.BACKWARD_EULER, TOPOLOGY, DIFFUSION, 1e-12, 200);
+        DiffusionSolver explicit = DiffusionSolver.create(DiffusionSolver.EXPLICIT, TOPOLOGY, DIFFUSION, 1e-12, 200);
+
+        Matrix unstable = explicit.diffuse(peak(), 100);
+        assertThat(unstable.min(), lessThan(0.0));
+
+        Matrix result = solver.diffuse(peak(), 100);
+        assertThat(result.min(), greaterThanOrEqualTo(0.0));
+        assertThat(result.max(), lessThanOrEqualTo(100.0));
+        assertThat(sum(result, 1), closeTo(100, 1e-8));
+        // Large steps converge to the uniform distribution
+        double uniform = 100.0 / TOPOLOGY.getNoCells();
+        Matrix equilibrium = solver.diffuse(peak(), 1e6);
+        assertThat(equilibrium.get(1, 0), closeTo(uniform, 1e-3));
+        assertThat(equilibrium.get(1, 79), closeTo(uniform, 1e-3));
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.genesis.model3.Matrix.of;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mmarini.genesis.model3.MatrixMatchers.matrixCloseTo;
+
+class LazyMatrixTest {
+    @Test
+    void blocks() {
+        // Given a matrix larger than a block and operands of any shape
+        Random random = new Random(1234);
+        Matrix a = Matrix.rand(1500, 3, random);
+        Matrix row = Matrix.rand(1, 3, random);
+        Matrix col = Matrix.rand(1500, 1, random);
+        Matrix full = Matrix.rand(1500, 3, random);
+
+        // When evaluating the lazy expression
+        Matrix lazy = a.lazy().muli(row).addi(col).subi(full).maxi(0.1).logi();
+        Matrix expected = a.copy().muli(row).addi(col).subi(full).maxi(0.1).logi();
+
+        // Then the reductions and the values should be the eager values
+        assertThat(lazy.max(), equalTo(expected.max()));
+        assertThat(lazy.min(), equalTo(expected.min()));
+        assertThat(lazy.minCols(), matrixCloseTo(expected.minCols(), 1e-12));
+        assertThat(lazy.sumCols(), matrixCloseTo(expected.sumCols(), 1e-9));
+        assertThat(lazy.eval(), matrixCloseTo(expected, 0));
+    }
+
+    @Test
+    void broadcast() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix row = of(new double[][]{
+                {1, 2}
+        });
+        Matrix col = of(new double[][]{
+                {10},
+                {20}
+        });
+        Matrix val = a.lazy().muli(row).addi(col).subi(of(1.0)).divi(2).eval();
+
+        assertThat(val, matrixCloseTo(new double[][]{
+                {5, 6.5},
+                {11, 13.5}
+        }));
+    }
+
+    @Test
+    void eval() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix b = of(new double[][]{
+                {2, 2},
+                {1, 1}
+        });
+        Matrix lazy = a.lazy();
+        Matrix val = lazy.muli(2).subi(b).negi().maxi(-4).mini(0).eval();
+
+        assertThat(val, not(sameInstance(a)));
+        assertThat(val, not(instanceOf(LazyMatrix.class)));
+        assertThat(((LazyMatrix) lazy).getNumOps(), equalTo(0));
+        assertThat(val, matrixCloseTo(new double[][]{
+                {0, -2},
+                {-4, -4}
+        }));
+        assertThat(a, matrixCloseTo(new double[][]{
+                {1, 2},
+                {3, 4}
+        }));
+    }
+
+    @Test
+    void evalEmpty() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix val = a.lazy().eval();
+        val.set(0, 0, 5);
+
+        assertThat(val, not(sameInstance(a)));
+        assertThat(a.get(0, 0), equalTo(1.0));
+    }
+
+    @Test
+    void emptyReductions() {
+        Matrix a = Matrix.zeros(2, 0);
+        Class<? extends Throwable> maxError = assertThrows(RuntimeException.class, () -> a.copy().max()).getClass();
+        Class<? extends Throwable> minError = assertThrows(RuntimeException.class, () -> a.copy().min()).getClass();
+
+        assertThrows(maxError, () -> a.lazy().addi(1).max());
+        assertThrows(minError, () -> a.lazy().addi(1).min());
+        assertThat(a.lazy().addi(1).minCols().getNumCols(), equalTo(0));
+        assertThat(a.lazy().addi(1).sumCols().getNumCols(), equalTo(0));
+    }
+
+    @Test
+    void extract() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix val = a.lazy().addi(1).extractRow(1);
+
+        assertThat(val, matrixCloseTo(new double[][]{
+                {4, 5}
+        }));
+    }
+
+    @Test
+    void functions() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {-3, 4}
+        });
+        Matrix expected = a.copy().expi().logi().powi(2).expm1i();
+        Matrix val = a.lazy().expi().logi().powi(2).expm1i();
+
+        assertThat(val, matrixCloseTo(expected));
+        assertThat(a.lazy().lti().mapi(x -> x * 3), matrixCloseTo(new double[][]{
+                {0, 0},
+                {3, 0}
+        }));
+    }
+
+    @Test
+    void lazyi() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix lazy = a.lazyi().addi(1).muli(2);
+
+        assertThat(a.get(0, 0), equalTo(1.0));
+
+        Matrix val = lazy.eval();
+
+        assertThat(val, sameInstance(a));
+        assertThat(a, matrixCloseTo(new double[][]{
+                {4, 6},
+                {8, 10}
+        }));
+    }
+
+    @Test
+    void lazyiOfItself() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix val = a.lazyi().muli(2).addi(a).eval();
+
+        assertThat(val, sameInstance(a));
+        assertThat(a, matrixCloseTo(new double[][]{
+                {3, 6},
+                {9, 12}
+        }));
+    }
+
+    @Test
+    void lazyOfLazy() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix lazy = a.lazy().addi(1);
+        Matrix val = lazy.lazy().muli(2).eval();
+
+        assertThat(val, matrixCloseTo(new double[][]{
+                {4, 6},
+                {8, 10}
+        }));
+        assertThat(lazy, matrixCloseTo(new double[][]{
+                {2, 3},
+                {4, 5}
+        }));
+    }
+
+    @Test
+    void operand() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix b = of(new double[][]{
+                {1, 1},
+                {1, 1}
+        }).lazy().muli(3);
+        Matrix val = of(new double[][]{
+                {1, 1},
+                {1, 1}
+        }).addi(a.lazy().mini(b));
+
+        assertThat(val, matrixCloseTo(new double[][]{
+                {2, 3},
+                {4, 4}
+        }));
+    }
+
+    @Test
+    void reductions() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix lazy = a.lazyi().muli(-1).addi(1);
+
+        assertThat(lazy.min(), equalTo(-3.0));
+        assertThat(lazy.max(), equalTo(0.0));
+        assertThat(lazy.minCols(), matrixCloseTo(new double[][]{
+                {-2, -3}
+        }));
+        assertThat(lazy.sumCols(), matrixCloseTo(new double[][]{
+                {-2, -4}
+        }));
+        assertThat(((LazyMatrix) lazy).getNumOps(), equalTo(2));
+        assertThat(a, matrixCloseTo(new double[][]{
+                {1, 2},
+                {3, 4}
+        }));
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mmarini.genesis.model3.Matrix.of;
+import static org.mmarini.genesis.model3.MatrixMatchers.matrixCloseTo;
+
+class MatrixArenaTest {
+    @Test
+    void debug() {
+        MatrixArena arena = MatrixArena.create(Matrix.builder, true).open();
+        Matrix a = Matrix.scratch(2, 2).addi(1);
+        assertThat(a, matrixCloseTo(new double[][]{
+                {1, 1},
+                {1, 1}
+        }));
+        arena.close();
+
+        assertThrows(IllegalStateException.class, () -> a.get(0, 0));
+        assertThrows(IllegalStateException.class, () -> a.addi(1));
+        assertThrows(IllegalStateException.class, a::eval);
+    }
+
+    @Test
+    void fromType() {
+        assertThat(MatrixArena.fromType("off").isPresent(), equalTo(false));
+        assertThat(MatrixArena.fromType("on").map(MatrixArena::isDebug).orElseThrow(), equalTo(false));
+        assertThat(MatrixArena.fromType("debug").map(MatrixArena::isDebug).orElseThrow(), equalTo(true));
+        assertThrows(IllegalArgumentException.class, () -> MatrixArena.fromType("none"));
+    }
+
+    @Test
+    void heap() {
+        assertThat(MatrixArena.current(), nullValue());
+        Matrix a = Matrix.scratch(2, 3);
+        assertThat(a, matrixCloseTo(new double[][]{
+                {0, 0, 0},
+                {0, 0, 0}
+        }));
+    }
+
+    @Test
+    void open() {
+        MatrixArena arena = MatrixArena.create(Matrix.builder, false).open();
+        MatrixArena other = MatrixArena.create(Matrix.builder, false);
+        try {
+            assertThat(MatrixArena.current(), sameInstance(arena));
+            assertThrows(IllegalStateException.class, other::open);
+        } finally {
+            arena.close();
+        }
+        assertThat(MatrixArena.current(), nullValue());
+        assertThat(arena.isOpen(), equalTo(false));
+        assertThrows(IllegalStateException.class, () -> arena.zeros(1, 1));
+    }
+
+    @Test
+    void recycle() {
+        MatrixArena arena = MatrixArena.create(Matrix.builder, false).open();
+        Matrix a = Matrix.scratch(2, 2).addi(1);
+        Matrix b = Matrix.scratch(2, 2).addi(2);
+        Matrix c = Matrix.scratch(1, 3).addi(3);
+        assertThat(a, not(sameInstance(b)));
+        assertThat(arena.getAllocatedCount(), equalTo(3));
+        arena.close();
+
+        arena.open();
+        Matrix a1 = Matrix.scratch(2, 2);
+        Matrix b1 = Matrix.scratch(2, 2);
+        Matrix c1 = Matrix.scratch(1, 3);
+        Matrix d1 = Matrix.scratch(1, 3);
+        arena.close();
+
+        assertThat(a1, sameInstance(a));
+        assertThat(b1, sameInstance(b));
+        assertThat(c1, sameInstance(c));
+        assertThat(arena.getAllocatedCount(), equalTo(4));
+        assertThat(a1, matrixCloseTo(new double[][]{
+                {0, 0},
+                {0, 0}
+        }));
+        assertThat(d1, matrixCloseTo(new double[][]{
+                {0, 0, 0}
+        }));
+    }
+
+    @Test
+    void reshaped() {
+        MatrixArena arena = MatrixArena.create(Matrix.builder, false).open();
+        Matrix a = Matrix.scratch(1, 3).trasposei();
+        arena.close();
+
+        arena.open();
+        Matrix a1 = Matrix.scratch(1, 3);
+        arena.close();
+
+        assertThat(a1, not(sameInstance(a)));
+        assertThat(a1.getNumRows(), equalTo(1));
+        assertThat(a1.getNumCols(), equalTo(3));
+    }
+
+    @Test
+    void scratchViews() {
+        Matrix m = of(new double[][]{
+                {1, 2, 3},
+                {4, 5, 6}
+        });
+        MatrixArena arena = MatrixArena.create(Matrix.builder, true).open();
+        try {
+            assertThat(m.scratchRow(1), matrixCloseTo(new double[][]{
+                    {4, 5, 6}
+            }));
+            assertThat(m.scratchRows(1, 0), matrixCloseTo(new double[][]{
+                    {4, 5, 6},
+                    {1, 2, 3}
+            }));
+            assertThat(m.scratchCols(2, 0), matrixCloseTo(new double[][]{
+                    {3, 1},
+                    {6, 4}
+            }));
+            assertThat(m.scratchCopy(), matrixCloseTo(m));
+        } finally {
+            arena.close();
+        }
+    }
+
+    @Test
+    void shapes() {
+        MatrixArena arena = MatrixArena.create(Matrix.builder, false).open();
+        try {
+            for (int i = 1; i <= 40; i++) {
+                Matrix a = Matrix.scratch(i, 41 - i);
+                assertThat(a.getNumRows(), equalTo(i));
+                assertThat(a.getNumCols(), equalTo(41 - i));
+            }
+        } finally {
+            arena.close();
+        }
+        arena.open();
+        try {
+            for (int i = 1; i <= 40; i++) {
+                Matrix.scratch(i, 41 - i);
+            }
+        } finally {
+            arena.close();
+        }
+        assertThat(arena.getAllocatedCount(), equalTo(40));
+    }
+}
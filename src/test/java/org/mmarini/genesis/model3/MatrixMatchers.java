@@ -29,7 +29,6 @@
 
 package org.mmarini.genesis.model3;
 
-import org.ejml.dense.row.MatrixFeatures_DDRM;
 import org.hamcrest.BaseMatcher;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
@@ -39,6 +38,38 @@ import static org.mmarini.genesis.model3.Matrix.of;
 public class MatrixMatchers {
     private static final double EPSILON = 1e-6;
 
+    /**
+     * Returns true if the matrices have the same shape and values within a tolerance
+     * (same semantic of MatrixFeatures_DDRM.isIdentical for any matrix implementation)
+     *
+     * @param a       the first matrix
+     * @param b       the second matrix
+     * @param epsilon the tolerance
+     */
+    static boolean isIdentical(Matrix a, Matrix b, double epsilon) {
+        if (a.getNumRows() != b.getNumRows() || a.getNumCols() != b.getNumCols()) {
+            return false;
+        }
+        for (int i = 0; i < a.getNumRows(); i++) {
+            for (int j = 0; j < a.getNumCols(); j++) {
+                double x = a.get(i, j);
+                double y = b.get(i, j);
+                if (Double.isNaN(x) || Double.isNaN(y)) {
+                    if (!(Double.isNaN(x) && Double.isNaN(y))) {
+                        return false;
+                    }
+                } else if (Double.isInfinite(x) || Double.isInfinite(y)) {
+                    if (x != y) {
+                        return false;
+                    }
+                } else if (!(Math.abs(x - y) <= epsilon)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
     public static Matcher<Matrix> matrixCloseTo(Matrix expected, double epsilon) {
         return new BaseMatcher<>() {
             @Override
@@ -51,7 +82,7 @@ public class MatrixMatchers {
                 if (!(o instanceof Matrix)) {
                     return false;
                 }
-                return MatrixFeatures_DDRM.isIdentical(((DDRMWrapper) o).get(), ((DDRMWrapper) expected).get(), epsilon);
+                return isIdentical((Matrix) o, expected, epsilon);
             }
         };
     }
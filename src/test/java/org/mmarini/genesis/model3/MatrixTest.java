@@ -192,6 +192,25 @@ class MatrixTest {
         }));
     }
 
+    @Test
+    void assignColAsDouble() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix b = of(new double[][]{
+                {1},
+                {2}
+        });
+        Matrix val = a.assignColAsDouble(1, (x, i) -> x + b.get(i, 0));
+
+        assertThat(val, sameInstance(a));
+        assertThat(val, matrixCloseTo(new double[][]{
+                {1, 3},
+                {3, 6}
+        }));
+    }
+
     @Test
     void assignCols() {
         Matrix a = zeros(2, 4);
@@ -226,6 +245,24 @@ class MatrixTest {
         }));
     }
 
+    @Test
+    void assignRowAsDouble() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix b = of(new double[][]{
+                {1, 2}
+        });
+        Matrix val = a.assignRowAsDouble(1, (x, i) -> x + b.get(0, i));
+
+        assertThat(val, sameInstance(a));
+        assertThat(val, matrixCloseTo(new double[][]{
+                {1, 2},
+                {4, 6}
+        }));
+    }
+
     @Test
     void assignRows() {
         Matrix a = zeros(4, 2);
@@ -460,6 +497,48 @@ class MatrixTest {
         }));
     }
 
+    @Test
+    void appendColsi() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix b = of(new double[][]{
+                {5},
+                {6}
+        });
+        Matrix val = a.appendColsi(b);
+
+        assertThat(val, sameInstance(a));
+        assertThat(val, matrixCloseTo(new double[][]{
+                {1, 2, 5},
+                {3, 4, 6}
+        }));
+    }
+
+    @Test
+    void appendColsiReserved() {
+        Matrix a = of(new double[][]{
+                {1},
+                {2}
+        });
+        for (int i = 1; i < 10; i++) {
+            a.appendColsi(of(new double[][]{
+                    {1 + i},
+                    {2 + i}
+            }));
+        }
+
+        assertThat(a, matrixCloseTo(new double[][]{
+                {1, 2, 3, 4, 5, 6, 7, 8, 9, 10},
+                {2, 3, 4, 5, 6, 7, 8, 9, 10, 11}
+        }));
+        assertThat(a.extractCols(9, 0), matrixCloseTo(new double[][]{
+                {10, 1},
+                {11, 2}
+        }));
+    }
+
     @Test
     void hstack() {
         Matrix a = of(new double[][]{
@@ -537,6 +616,38 @@ class MatrixTest {
         }));
     }
 
+    @Test
+    void mapiAsDouble() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix val = a.mapiAsDouble((v, i, j) -> i == j ? 1.0 : 0.0);
+
+        assertThat(val, sameInstance(a));
+        assertThat(val, matrixCloseTo(new double[][]{
+                {1, 0},
+                {0, 1}
+        }));
+    }
+
+    @Test
+    void mapiAsDoubleMat() {
+        Matrix a = of(new double[][]{
+                {1, 2, 3},
+                {4, 5, 6},
+                {7, 8, 9}
+        });
+        Matrix val = a.mapiAsDouble(1, 2, 1, 2, (v, i, j) -> i == j ? v + 1 : v - 1);
+
+        assertThat(val, sameInstance(a));
+        assertThat(val, matrixCloseTo(new double[][]{
+                {1, 2, 3},
+                {4, 6, 5},
+                {7, 7, 10}
+        }));
+    }
+
     @Test
     void mapiCols() {
         Matrix a = of(new double[][]{
@@ -557,6 +668,26 @@ class MatrixTest {
         }));
     }
 
+    @Test
+    void mapiColsAsDouble() {
+        Matrix a = of(new double[][]{
+                {1, 2, 3},
+                {4, 5, 6}
+        });
+        Matrix b = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix val = a.mapiColsAsDouble((v, i, j, k) -> v + b.get(i, j) * k,
+                0, 2);
+
+        assertThat(val, sameInstance(a));
+        assertThat(val, matrixCloseTo(new double[][]{
+                {1, 2, 7},
+                {4, 5, 14}
+        }));
+    }
+
     @Test
     void mapiMat() {
         Matrix a = of(new double[][]{
@@ -613,6 +744,28 @@ class MatrixTest {
         }));
     }
 
+    @Test
+    void mapiRowsAsDouble() {
+        Matrix a = of(new double[][]{
+                {1, 2},
+                {3, 4},
+                {5, 6}
+        });
+        Matrix b = of(new double[][]{
+                {1, 2},
+                {3, 4}
+        });
+        Matrix val = a.mapiRowsAsDouble((v, i, j, k) -> v + b.get(i, j) * k,
+                0, 2);
+
+        assertThat(val, sameInstance(a));
+        assertThat(val, matrixCloseTo(new double[][]{
+                {1, 2},
+                {3, 4},
+                {11, 14}
+        }));
+    }
+
     @Test
     void maxi() {
         Matrix a = of(new double[][]{
@@ -642,6 +795,18 @@ class MatrixTest {
         }));
     }
 
+    @Test
+    void minColsNoRows() {
+        Matrix a = Matrix.zeros(0, 2);
+
+        assertThat(a.minCols(), matrixCloseTo(new double[][]{
+                {Double.MAX_VALUE, Double.MAX_VALUE}
+        }, 0));
+        assertThat(a.lazy().muli(2).minCols(), matrixCloseTo(new double[][]{
+                {Double.MAX_VALUE, Double.MAX_VALUE}
+        }, 0));
+    }
+
     @Test
     void mini() {
         Matrix a = of(new double[][]{
@@ -849,6 +1014,30 @@ class MatrixTest {
         }));
     }
 
+    @Test
+    void retainColsi() {
+        Matrix a = of(new double[][]{
+                {1, 2, 3, 4},
+                {5, 6, 7, 8}
+        });
+        Matrix val = a.retainColsi(0, 2, 3);
+
+        assertThat(val, sameInstance(a));
+        assertThat(val, matrixCloseTo(new double[][]{
+                {1, 3, 4},
+                {5, 7, 8}
+        }));
+
+        val.appendColsi(of(new double[][]{
+                {9},
+                {10}
+        }));
+        assertThat(val, matrixCloseTo(new double[][]{
+                {1, 3, 4, 9},
+                {5, 7, 8, 10}
+        }));
+    }
+
     @Test
     void rowsOf() {
         Matrix a = of(new double[][]{
@@ -0,0 +1,205 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mmarini.genesis.model3.Matrix.of;
+import static org.mmarini.genesis.model3.MatrixMatchers.matrixCloseTo;
+
+class MatrixViewTest {
+    private static Matrix source() {
+        return of(new double[][]{
+                {1, 2, 3},
+                {4, 5, 6},
+                {7, 8, 9}
+        });
+    }
+
+    @Test
+    void column() {
+        Matrix m = source();
+        Matrix view = m.viewColumn(1);
+        assertThat(view, matrixCloseTo(new double[][]{
+                {2},
+                {5},
+                {8}
+        }));
+        m.set(1, 1, 10);
+        assertThat(view.get(1, 0), equalTo(10.0));
+    }
+
+    @Test
+    void columnWritable() {
+        Matrix m = source();
+        m.viewColumni(2).muli(of(1, 2, 3)).negi();
+        assertThat(m, matrixCloseTo(new double[][]{
+                {1, 2, -3},
+                {4, 5, -12},
+                {7, 8, -27}
+        }));
+    }
+
+    @Test
+    void lazy() {
+        Matrix m = source();
+        Matrix result = m.viewRow(1).lazyi().muli(2).addi(of(new double[][]{{1, 2, 3}})).eval();
+        assertThat(result, matrixCloseTo(new double[][]{
+                {9, 12, 15}
+        }));
+        assertThat(m, matrixCloseTo(source()));
+
+        Matrix min = m.viewRange(1, 2, 0, 2).lazy().negi().minCols();
+        assertThat(min, matrixCloseTo(new double[][]{
+                {-7, -8, -9}
+        }));
+
+        m.viewRowi(0).lazyi().addi(1).eval();
+        assertThat(m.extractRow(0), matrixCloseTo(new double[][]{
+                {2, 3, 4}
+        }));
+    }
+
+    @Test
+    void operand() {
+        Matrix m = source();
+        Matrix a = of(new double[][]{
+                {1, 1, 1},
+                {2, 2, 2}
+        });
+        a.addi(m.viewRow(2)).muli(m.viewRange(0, 1, 0, 0));
+        assertThat(a, matrixCloseTo(new double[][]{
+                {8, 9, 10},
+                {36, 40, 44}
+        }));
+        Matrix b = of(new double[][]{
+                {1, 1},
+                {1, 1}
+        }).subi(m.viewRange(1, 2, 1, 2));
+        assertThat(b, matrixCloseTo(new double[][]{
+                {-4, -5},
+                {-7, -8}
+        }));
+    }
+
+    @Test
+    void range() {
+        Matrix m = source();
+        Matrix view = m.viewRange(1, 2, 1, 2);
+        assertThat(view.getNumRows(), equalTo(2));
+        assertThat(view.getNumCols(), equalTo(2));
+        assertThat(view, matrixCloseTo(new double[][]{
+                {5, 6},
+                {8, 9}
+        }));
+        assertThat(view.sumCols(), matrixCloseTo(new double[][]{
+                {13, 15}
+        }));
+        assertThat(view.minCols(), matrixCloseTo(new double[][]{
+                {5, 6}
+        }));
+        assertThat(view.max(), equalTo(9.0));
+        assertThat(view.min(), equalTo(5.0));
+        assertThat(view.cellsOf(x -> x > 5), equalTo(new int[]{1, 2, 3}));
+        assertThat(view.extractRow(1), matrixCloseTo(new double[][]{
+                {8, 9}
+        }));
+        assertThat(view.viewColumn(0), matrixCloseTo(new double[][]{
+                {5},
+                {8}
+        }));
+    }
+
+    @Test
+    void rangeWritable() {
+        Matrix m = source();
+        m.viewRangei(0, 1, 1, 2)
+                .addi(of(new double[][]{
+                        {10, 20},
+                        {30, 40}
+                }))
+                .set(0, 0, 0);
+        assertThat(m, matrixCloseTo(new double[][]{
+                {1, 0, 23},
+                {4, 35, 46},
+                {7, 8, 9}
+        }));
+    }
+
+    @Test
+    void readOnly() {
+        Matrix view = source().viewRow(0);
+        assertThrows(UnsupportedOperationException.class, () -> view.addi(1));
+        assertThrows(UnsupportedOperationException.class, () -> view.set(0, 0, 1));
+        assertThrows(UnsupportedOperationException.class, () -> view.viewRowi(0));
+
+        Matrix copy = view.copy().addi(1);
+        assertThat(copy, matrixCloseTo(new double[][]{
+                {2, 3, 4}
+        }));
+    }
+
+    @Test
+    void row() {
+        Matrix m = source();
+        Matrix view = m.viewRow(1);
+        assertThat(view, matrixCloseTo(new double[][]{
+                {4, 5, 6}
+        }));
+        m.set(1, 2, 10);
+        assertThat(view.get(0, 2), equalTo(10.0));
+    }
+
+    @Test
+    void rowWritable() {
+        Matrix m = source();
+        m.viewRowi(1).subi(of(new double[][]{{5, 5, 5}})).maxi(0);
+        assertThat(m, matrixCloseTo(new double[][]{
+                {1, 2, 3},
+                {0, 0, 1},
+                {7, 8, 9}
+        }));
+    }
+
+    @Test
+    void trasposei() {
+        Matrix m = source();
+        Matrix view = m.viewRange(0, 1, 0, 2).trasposei();
+        assertThat(view, matrixCloseTo(new double[][]{
+                {1, 4},
+                {2, 5},
+                {3, 6}
+        }));
+        assertThat(m, matrixCloseTo(source()));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class PhaseProfilerTest {
+
+    static final int STEPS = 3;
+    static final double DT = 0.1;
+    static final long SEED = 1234L;
+
+    @Test
+    void histogram() {
+        /*
+         * Given a profiler with a window of 4 samples
+         */
+        final PhaseProfiler profiler = PhaseProfiler.create(4);
+
+        /*
+         * When recording more samples than the window
+         */
+        for (long i = 1; i <= 6; i++) {
+            profiler.record(SimPhase.DIFFUSE, i * 10);
+        }
+
+        /*
+         * Then the histogram should contain the last samples
+         */
+        final PhaseProfiler.Histogram result = profiler.getHistogram(SimPhase.DIFFUSE);
+        assertThat(result.getCount(), equalTo(4));
+        assertThat(result.getMean(), equalTo(45.0));
+        assertThat(result.getMax(), equalTo(60L));
+        assertThat(result.getPercentile(0), equalTo(30L));
+        assertThat(result.getPercentile(0.5), equalTo(40L));
+        assertThat(result.getPercentile(0.95), equalTo(60L));
+        assertThat(profiler.getHistogram(SimPhase.SURVIVE).getCount(), equalTo(0));
+        assertThat(profiler.getHistogram(SimPhase.SURVIVE).getMean(), equalTo(0.0));
+    }
+
+    @Test
+    void engineProfiler() {
+        /*
+         * Given an engine with a profiler
+         */
+        final PhaseProfiler profiler = PhaseProfiler.create();
+        final SimEngine engine = SimEngine.create(SimEngineRunTest.MASSES,
+                        Topology3.create(SimEngineRunTest.WIDTH, SimEngineRunTest.HEIGHT, SimEngineRunTest.LENGTH),
+                        SimEngineRunTest.DIFFUSION, SimEngineRunTest.ENERGY_REF)
+                .withProfiler(profiler);
+
+        /*
+         * When running the simulation
+         */
+        engine.run(SimEngineRunTest.createStatus(), DT, STEPS, new Random(SEED));
+
+        /*
+         * Then the profiler should record the phased steps
+         */
+        assertThat(profiler.getHistogram(SimPhase.DIFFUSE).getCount(), equalTo(STEPS));
+        assertThat(profiler.getHistogram(SimPhase.MAINTAIN).getCount(), equalTo(STEPS));
+        assertThat(profiler.getHistogram(SimPhase.PROCESS_POPULATION_INDIVIDUALS).getCount(), equalTo(STEPS));
+        assertThat(profiler.getHistogram(SimPhase.FUSED_KERNEL).getCount(), equalTo(0));
+    }
+
+    @Test
+    void flightRecorder() throws IOException {
+        /*
+         * Given an engine and a recording of phase events
+         */
+        final SimEngine engine = SimEngine.create(SimEngineRunTest.MASSES,
+                Topology3.create(SimEngineRunTest.WIDTH, SimEngineRunTest.HEIGHT, SimEngineRunTest.LENGTH),
+                SimEngineRunTest.DIFFUSION, SimEngineRunTest.ENERGY_REF);
+        final Path file = Files.createTempFile("phases", ".jfr");
+        assertThat(PhaseEvent.isRecording(), equalTo(false));
+        try (Recording recording = new Recording()) {
+            recording.enable("org.mmarini.genesis.Phase");
+            recording.start();
+            assertThat(PhaseEvent.isRecording(), equalTo(true));
+
+            /*
+             * When running the simulation
+             */
+            engine.run(SimEngineRunTest.createStatus(), DT, STEPS, new Random(SEED));
+            recording.stop();
+            recording.dump(file);
+
+            /*
+             * Then the recording should contain an event for each phase of each step
+             */
+            final List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                    .filter(e -> e.getEventType().getName().equals("org.mmarini.genesis.Phase"))
+                    .collect(Collectors.toList());
+            assertThat(events, hasSize(STEPS * 7));
+            assertThat(events.get(0).getString("phase"), equalTo("DIFFUSE"));
+            assertThat(events.get(0).getInt("individuals"), equalTo(3));
+            assertThat(events.get(0).getInt("cells"), equalTo(SimEngineRunTest.NUM_CELLS));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.genesis.model3.Matrix.of;
+import static org.mmarini.genesis.model3.MatrixMatchers.matrixCloseTo;
+
+class PopulationAppendTest {
+
+    static final long SEED = 1234L;
+    static final int ENERGY_REF = 1;
+    static final Matrix LOCATION_PROB = of(0.25, 0.5, 0.75, 1);
+    static final Topology TOPOLOGY = Topology3.create(4, 4, 1);
+
+    static Population clone(Population pop, Random random, int... ind) {
+        return pop.cloneIndividuals(random, LOCATION_PROB, 0.5, 0.1, TOPOLOGY,
+                Matrix.values(1, ind.length, 1),
+                Matrix.values(1, ind.length, 0.5),
+                ENERGY_REF, ind);
+    }
+
+    /**
+     * Returns a population of a species with a photo process
+     */
+    static Population createPhotoPopulation() {
+        final Reaction reaction = Reaction.create(of(1, 0), of(0, 1), of(0.1, 0), of(1, 0));
+        final Species species = Species.create(0, 0.5, 1,
+                List.of(PhotoReactionProcess.create(ENERGY_REF, 1, 1, 10, reaction)),
+                List.of(), List.of(), List.of());
+        return Population.create(of(new double[][]{
+                        {1, 2, 3},
+                        {10, 20, 30}
+                }), List.of(of(new double[][]{{0.1, 0.2, 0.3}})), List.of(), List.of(), List.of(),
+                new int[]{0, 5, 2}, species);
+    }
+
+    static Population owned(Population pop) {
+        return pop.select(IntStream.range(0, pop.getLocations().length).toArray());
+    }
+
+    @Test
+    void cloneInPlace() {
+        /*
+         * Given a population owning its matrices and an equal population created from shared matrices
+         */
+        final Population shared = PopulationSortTest.createPopulation();
+        final Population owned = owned(PopulationSortTest.createPopulation());
+
+        /*
+         * When cloning the individuals with the same random sequences
+         */
+        final Population expected = clone(clone(shared, new Random(SEED), 1, 3), new Random(SEED + 1), 0, 6);
+        final Population result1 = clone(owned, new Random(SEED), 1, 3);
+        final Population result = clone(result1, new Random(SEED + 1), 0, 6);
+
+        /*
+         * Then the clones should be appended in place to the owned matrices
+         */
+        assertThat(result1.getResources(), sameInstance(owned.getResources()));
+        assertThat(result.getResources(), sameInstance(owned.getResources()));
+        assertThat(result.getPipSignals().get(0), sameInstance(result1.getPipSignals().get(0)));
+        /*
+         * And the populations should be the same
+         */
+        assertThat(result.getLocations(), equalTo(expected.getLocations()));
+        assertThat(result.getResources(), matrixCloseTo(expected.getResources(), 0));
+        assertThat(result.getPipSignals().get(0), matrixCloseTo(expected.getPipSignals().get(0), 0));
+        /*
+         * And the shared matrices should not be changed
+         */
+        assertThat(shared.getResources(), matrixCloseTo(PopulationSortTest.createPopulation().getResources(), 0));
+        assertThat(shared.getPipSignals().get(0).getNumCols(), equalTo(5));
+    }
+
+    @Test
+    void cloneSplit() {
+        /*
+         * Given a population owning its matrices
+         */
+        final Population pop = owned(PopulationSortTest.createPopulation());
+
+        /*
+         * When cloning an individual
+         */
+        final Population result = clone(pop, new Random(SEED), 2);
+
+        /*
+         * Then the parent should transfer half of resources and the energy to the clone
+         */
+        assertThat(result.getResources(), matrixCloseTo(of(new double[][]{
+                {1, 2, 1.5, 4, 5, 1.5},
+                {10, 20, 29, 40, 50, 1}
+        }), 1e-12));
+        assertThat(result.getLocations().length, equalTo(6));
+        CellIndexTest.assertSameIndex(result.getCellIndex(), CellIndex.create(result.getLocations()));
+    }
+
+    @Test
+    void copyShared() {
+        /*
+         * Given a population owning its matrices and a copy of it
+         */
+        final Population pop = owned(PopulationSortTest.createPopulation());
+        final Population copy = pop.copy();
+
+        /*
+         * When cloning the individuals of both
+         */
+        final Population result = clone(pop, new Random(SEED), 1, 3);
+        final Population copyResult = clone(copy, new Random(SEED), 1, 3);
+
+        /*
+         * Then the shared signals should not be changed in place
+         */
+        assertThat(copy.getPipSignals().get(0).getNumCols(), equalTo(5));
+        assertThat(result.getPipSignals().get(0), not(sameInstance(copyResult.getPipSignals().get(0))));
+        assertThat(copyResult.getPipSignals().get(0), matrixCloseTo(result.getPipSignals().get(0), 0));
+        assertThat(copyResult.getResources(), matrixCloseTo(result.getResources(), 0));
+    }
+
+    @Test
+    void copySourceUsable() {
+        /*
+         * Given a population owning its matrices and a copy of it
+         */
+        final Population pop = owned(PopulationSortTest.createPopulation());
+        final Population copy = pop.copy();
+        final Matrix copyResources = copy.getResources().copy();
+        final Matrix copySignals = copy.getPipSignals().get(0).copy();
+
+        /*
+         * When cloning and retaining the individuals of the source
+         */
+        final Population result = clone(pop, new Random(SEED), 1, 3).retain(new int[]{0, 2, 4, 6});
+
+        /*
+         * Then the result should be the same of a population created from shared matrices
+         */
+        final Population expected = clone(PopulationSortTest.createPopulation(), new Random(SEED), 1, 3)
+                .retain(new int[]{0, 2, 4, 6});
+        assertThat(result.getLocations(), equalTo(expected.getLocations()));
+        assertThat(result.getResources(), matrixCloseTo(expected.getResources(), 0));
+        assertThat(result.getPipSignals().get(0), matrixCloseTo(expected.getPipSignals().get(0), 0));
+        /*
+         * And the copy should not be changed
+         */
+        assertThat(copy.getLocations().length, equalTo(5));
+        assertThat(copy.getResources(), matrixCloseTo(copyResources, 0));
+        assertThat(copy.getPipSignals().get(0), matrixCloseTo(copySignals, 0));
+    }
+
+    @Test
+    void clonePhotoTargetLevels() {
+        /*
+         * Given a population of a species with a photo process owning its matrices
+         */
+        final Population shared = createPhotoPopulation();
+        final Population owned = owned(createPhotoPopulation());
+
+        /*
+         * When cloning the individuals without mutation
+         */
+        final Population expected = shared.cloneIndividuals(new Random(SEED), LOCATION_PROB, 0, 0.1, TOPOLOGY,
+                Matrix.values(1, 2, 1), Matrix.values(1, 2, 0.5), ENERGY_REF, 0, 2);
+        final Population result = owned.cloneIndividuals(new Random(SEED), LOCATION_PROB, 0, 0.1, TOPOLOGY,
+                Matrix.values(1, 2, 1), Matrix.values(1, 2, 0.5), ENERGY_REF, 0, 2);
+
+        /*
+         * Then the photo target levels of parents should be appended to the clones
+         */
+        final Matrix levels = of(new double[][]{{0.1, 0.2, 0.3, 0.1, 0.3}});
+        assertThat(result.getPhotoTargetLevels().get(0), matrixCloseTo(levels, 0));
+        assertThat(expected.getPhotoTargetLevels().get(0), matrixCloseTo(levels, 0));
+        assertThat(shared.getPhotoTargetLevels().get(0).getNumCols(), equalTo(3));
+
+        /*
+         * And the photo process should apply to all the individuals
+         */
+        final Matrix masses = of(1, 0);
+        final Population photo = result.processPhotos(0.1, result.getTotalSurface(masses, 16), masses);
+        assertThat(photo.getResources().getNumCols(), equalTo(5));
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.genesis.model3.Matrix.of;
+import static org.mmarini.genesis.model3.MatrixMatchers.matrixCloseTo;
+
+class PopulationRetainTest {
+
+    static final int ENERGY_ROW = 1;
+    static final Matrix MASSES = of(1, 0);
+
+    static Matrix envResources() {
+        return Matrix.zeros(2, 16);
+    }
+
+    @Test
+    void surviveAll() {
+        /*
+         * Given a population with living individuals
+         */
+        final Population pop = PopulationSortTest.createPopulation();
+        final Matrix env = envResources();
+
+        /*
+         * When survive
+         */
+        final Population result = pop.survive(ENERGY_ROW, MASSES, env);
+
+        /*
+         * Then the population should not change
+         */
+        assertThat(result, sameInstance(pop));
+        assertThat(env, matrixCloseTo(envResources(), 0));
+    }
+
+    @Test
+    void surviveInPlace() {
+        /*
+         * Given a population owning its matrices with dying individuals
+         */
+        final Population pop = PopulationAppendTest.owned(PopulationSortTest.createPopulation());
+        final Matrix resources = pop.getResources();
+        final Matrix signals = pop.getPipSignals().get(0);
+        resources.set(ENERGY_ROW, 1, 0);
+        resources.set(ENERGY_ROW, 3, 0);
+        pop.invalidate();
+        final Matrix env = envResources();
+
+        /*
+         * When survive
+         */
+        final Population result = pop.survive(ENERGY_ROW, MASSES, env);
+
+        /*
+         * Then the matrices should be compacted in place keeping the order of individuals
+         */
+        assertThat(result.getResources(), sameInstance(resources));
+        assertThat(result.getPipSignals().get(0), sameInstance(signals));
+        assertThat(result.getResources(), matrixCloseTo(of(new double[][]{
+                {1, 3, 5},
+                {10, 30, 50}
+        }), 0));
+        assertThat(result.getPipSignals().get(0), matrixCloseTo(of(new double[][]{{0.1, 0.3, 0.5}}), 0));
+        assertThat(result.getLocations(), equalTo(new int[]{5, 4, 2}));
+        CellIndexTest.assertSameIndex(result.getCellIndex(), CellIndex.create(result.getLocations()));
+        /*
+         * And the resources of dead individuals should be released
+         */
+        assertThat(env.get(0, 0), equalTo(6.0));
+    }
+
+    @Test
+    void surviveShared() {
+        /*
+         * Given a population created from shared matrices with dying individuals
+         */
+        final Population pop = PopulationSortTest.createPopulation();
+        pop.getResources().set(ENERGY_ROW, 0, 0);
+        pop.invalidate();
+
+        /*
+         * When survive
+         */
+        final Population result = pop.survive(ENERGY_ROW, MASSES, envResources());
+
+        /*
+         * Then the shared matrices should not change
+         */
+        assertThat(result.getResources(), not(sameInstance(pop.getResources())));
+        assertThat(pop.getResources().getNumCols(), equalTo(5));
+        assertThat(pop.getPipSignals().get(0).getNumCols(), equalTo(5));
+        assertThat(result.getResources(), matrixCloseTo(of(new double[][]{
+                {2, 3, 4, 5},
+                {20, 30, 40, 50}
+        }), 0));
+    }
+
+    @Test
+    void surviveAfterClone() {
+        /*
+         * Given a population of a species with a photo process after a clone
+         */
+        final Population pop = PopulationAppendTest.owned(PopulationAppendTest.createPhotoPopulation())
+                .cloneIndividuals(new Random(PopulationAppendTest.SEED), PopulationAppendTest.LOCATION_PROB, 0, 0.1,
+                        PopulationAppendTest.TOPOLOGY, of(1.0), of(0.5), ENERGY_ROW, 2);
+        final Matrix photoLevels = pop.getPhotoTargetLevels().get(0);
+        pop.getResources().set(ENERGY_ROW, 0, 0);
+        pop.invalidate();
+
+        /*
+         * When survive
+         */
+        final Population result = pop.survive(ENERGY_ROW, MASSES, envResources());
+
+        /*
+         * Then the individuals and the photo target levels should be compacted
+         */
+        assertThat(result.getLocations().length, equalTo(3));
+        assertThat(result.getResources(), matrixCloseTo(of(new double[][]{
+                {2, 1.5, 1.5},
+                {20, 29, 1}
+        }), 1e-12));
+        assertThat(result.getPhotoTargetLevels().get(0), sameInstance(photoLevels));
+        assertThat(result.getPhotoTargetLevels().get(0), matrixCloseTo(of(new double[][]{{0.2, 0.3, 0.3}}), 0));
+    }
+}
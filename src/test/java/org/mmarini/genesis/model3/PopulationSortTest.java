@@ -0,0 +1,186 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.genesis.model3.Matrix.of;
+import static org.mmarini.genesis.model3.MatrixMatchers.matrixCloseTo;
+
+class PopulationSortTest {
+
+    static final int WIDTH = 4;
+    static final int HEIGHT = 4;
+    static final double LENGTH = 1;
+    static final long SEED = 1234L;
+    static final double DT = 0.1;
+    static final int STEPS = 5;
+
+    /**
+     * Returns the index of the source individual equal to an individual of the result
+     *
+     * @param resources       the source resources
+     * @param locations       the source locations
+     * @param resultResources the result resources
+     * @param resultLocations the result locations
+     * @param j               the result individual
+     */
+    static int indexOf(Matrix resources, int[] locations, Matrix resultResources, int[] resultLocations, int j) {
+        for (int k = 0; k < locations.length; k++) {
+            if (locations[k] == resultLocations[j]
+                    && resources.get(0, k) == resultResources.get(0, j)
+                    && resources.get(1, k) == resultResources.get(1, j)) {
+                return k;
+            }
+        }
+        throw new AssertionError(String.format("individual %d not found", j));
+    }
+
+    static int[] ranks(int[] cellOrder) {
+        final int[] result = new int[cellOrder.length];
+        for (int i = 0; i < cellOrder.length; i++) {
+            result[cellOrder[i]] = i;
+        }
+        return result;
+    }
+
+    static double sumRow(Matrix m, int row) {
+        double result = 0;
+        for (int j = 0; j < m.getNumCols(); j++) {
+            result += m.get(row, j);
+        }
+        return result;
+    }
+
+    static Population createPopulation() {
+        final Species species = Species.create(1, 0, 2,
+                List.of(), List.of(), List.of(), List.of());
+        return Population.create(of(new double[][]{
+                {1, 2, 3, 4, 5},
+                {10, 20, 30, 40, 50}
+        }), List.of(), List.of(), List.of(), List.of(of(new double[][]{{0.1, 0.2, 0.3, 0.4, 0.5}})),
+                new int[]{5, 0, 4, 0, 2}, species);
+    }
+
+    @Test
+    void getDisorder() {
+        final int[] cellOrder = Topology3.createCellOrder(WIDTH, HEIGHT);
+        final Population pop = createPopulation();
+
+        // ranks 3, 0, 2, 0, 4
+        assertThat(pop.getDisorder(ranks(cellOrder)), equalTo(0.5));
+        assertThat(pop.sortByCell(cellOrder).getDisorder(ranks(cellOrder)), equalTo(0.0));
+    }
+
+    @Test
+    void sortByCell() {
+        /*
+         * Given a population in birth order
+         */
+        final int[] cellOrder = Topology3.createCellOrder(WIDTH, HEIGHT);
+        final Population pop = createPopulation();
+
+        /*
+         * When sorting by cell
+         */
+        final Population result = pop.sortByCell(cellOrder);
+
+        /*
+         * Then the individuals should be sorted in cell order keeping the relative order in the cells
+         */
+        assertThat(result.getLocations(), equalTo(new int[]{0, 0, 4, 5, 2}));
+        assertThat(result.getResources(), matrixCloseTo(of(new double[][]{
+                {2, 4, 3, 1, 5},
+                {20, 40, 30, 10, 50}
+        }), 0));
+        assertThat(result.getPipSignals().get(0), matrixCloseTo(of(new double[][]{{0.2, 0.4, 0.3, 0.1, 0.5}}), 0));
+        CellIndexTest.assertSameIndex(result.getCellIndex(), CellIndex.create(result.getLocations()));
+    }
+
+    @Test
+    void engineSort() {
+        /*
+         * Given an engine sorting the populations
+         */
+        final Topology3 topology = Topology3.create(WIDTH, HEIGHT, LENGTH);
+        final SimEngine engine = SimEngine.create(SimEngineRunTest.MASSES, topology,
+                SimEngineRunTest.DIFFUSION, SimEngineRunTest.ENERGY_REF).withSortThreshold(0);
+        final SimStatus status0 = SimStatus.create(0, Matrix.zeros(2, WIDTH * HEIGHT), List.of(createPopulation()));
+        final double mass0 = sumRow(status0.getPopulations().get(0).getResources(), 0);
+
+        /*
+         * When running the simulation
+         */
+        final SimStatus result = engine.run(status0, DT, STEPS, new Random(SEED));
+
+        /*
+         * Then the populations should be sorted by cell
+         */
+        final Population pop = result.getPopulations().get(0);
+        assertThat(pop.getDisorder(ranks(topology.getCellOrder())), equalTo(0.0));
+        assertThat(sumRow(pop.getResources(), 0), closeTo(mass0, 1e-9));
+    }
+
+    @Test
+    void sortAfterClone() {
+        /*
+         * Given a population of a species with a photo process after a clone
+         */
+        final int[] cellOrder = Topology3.createCellOrder(WIDTH, HEIGHT);
+        final Population pop = PopulationAppendTest.owned(PopulationAppendTest.createPhotoPopulation())
+                .cloneIndividuals(new Random(SEED), PopulationAppendTest.LOCATION_PROB, 0, 0.1,
+                        PopulationAppendTest.TOPOLOGY, of(1.0), of(0.5), PopulationAppendTest.ENERGY_REF, 0);
+        final Matrix resources = pop.getResources().copy();
+        final Matrix levels = pop.getPhotoTargetLevels().get(0).copy();
+        final int[] locations = pop.getLocations().clone();
+
+        /*
+         * When sorting by cell
+         */
+        final Population result = pop.sortByCell(cellOrder);
+
+        /*
+         * Then the photo target levels should be permuted with the individuals
+         */
+        final int n = locations.length;
+        assertThat(result.getLocations().length, equalTo(n));
+        assertThat(result.getPhotoTargetLevels().get(0).getNumCols(), equalTo(n));
+        assertThat(result.getDisorder(ranks(cellOrder)), equalTo(0.0));
+        for (int j = 0; j < n; j++) {
+            final int k = indexOf(resources, locations, result.getResources(), result.getLocations(), j);
+            assertThat(result.getPhotoTargetLevels().get(0).get(0, j), equalTo(levels.get(0, k)));
+        }
+    }
+}
@@ -120,6 +120,35 @@ class PopulationTest {
         }));
     }
 
+    @ParameterizedTest
+    @MethodSource("qtieAndMasses")
+    void getMassesInvalidate(double q11, double q12, double q21, double q22, double m1, double m2) {
+        // Given a population with individual quantities
+        // And molecular mass
+        population = population(of(new double[][]{
+                {q11, q12},
+                {q21, q22}
+        }));
+        Matrix masses = of(m1, m2);
+        // And the memoized masses
+        population.getMasses(masses);
+
+        // When changing the resources and invalidating the masses
+        population.getResources().muli(2);
+        Matrix m = population.invalidate().getMasses(masses);
+
+        // Then should return the masses of changed resources
+        assertThat(m, matrixCloseTo(new double[][]{{
+                2 * (q11 * m1 + q21 * m2),
+                2 * (q12 * m1 + q22 * m2)
+        }}, 1e-12));
+        // And the surfaces of changed resources
+        assertThat(population.getIndividualSurface(masses), matrixCloseTo(new double[][]{{
+                Math.pow(2 * (q11 * m1 + q21 * m2), AREAS_BY_MASS / 3),
+                Math.pow(2 * (q12 * m1 + q22 * m2), AREAS_BY_MASS / 3)
+        }}, 1e-12));
+    }
+
     @BeforeEach
     void init() {
         population = population(QUANTITIES);
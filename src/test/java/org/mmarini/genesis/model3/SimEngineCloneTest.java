@@ -0,0 +1,110 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static java.lang.Math.log;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mmarini.genesis.model3.Matrix.of;
+import static org.mmarini.genesis.model3.Matrix.zeros;
+import static org.mmarini.genesis.model3.MatrixMatchers.matrixCloseTo;
+
+class SimEngineCloneTest {
+
+    public static final int WIDTH = 2;
+    public static final int HEIGHT = 2;
+    public static final int NUM_RESOURCES = 2;
+    public static final int ENERGY_REF = 1;
+    public static final long SEED = 1234L;
+    public static final double LENGTH = 2;
+    public static final double DT = 1;
+    public static final double MASS = 10;
+    public static final double ERG = 10;
+
+    /**
+     * Returns the status with a population having environment-individual genes and a clone gene
+     * whose signals have different shapes
+     */
+    static SimStatus createStatus(final Topology topology) {
+        final CloneGene gene = CloneGene.create(0.1, 10, 0.2, 20,
+                0.1, 1, 0.1, 1,
+                ENERGY_REF, 0.1, 0.2, 0, 0.1);
+        final ExchangeResourceGene exchange = new ExchangeResourceGene(of(0.5, 1), of(log(20), log(2)), of(0, 0));
+        final Species species = new Species(0, 0.5, 1,
+                List.of(), List.of(), List.of(exchange), List.of(gene));
+        // Signals of minimum thresholds and maximum clone probabilities
+        final Matrix pipSignals = of(new double[][]{
+                {0, 0},
+                {0, 0},
+                {1, 1},
+                {1, 1}
+        });
+        final Matrix eipSignals = zeros(2, 2);
+        final Population population = new Population(of(new double[][]{
+                {MASS, MASS},
+                {ERG, ERG}
+        }), List.of(), List.of(), List.of(eipSignals), List.of(pipSignals), new int[]{0, 3}, species);
+        return new SimStatus(0, zeros(NUM_RESOURCES, topology.getNoCells()), List.of(population));
+    }
+
+    @Test
+    void processPopulationIndividuals() {
+        /*
+         * Given an engine and a status with a population cloning its individuals
+         */
+        final Topology topology = Topology3.create(WIDTH, HEIGHT, LENGTH);
+        final SimEngine engine = new SimEngine(of(1, 0), topology, zeros(NUM_RESOURCES, 1), ENERGY_REF);
+        final SimStatus status = createStatus(topology);
+
+        /*
+         * When processing the population-individual genes
+         */
+        final SimStatus result = engine.processPopulationIndividuals(status, DT, new Random(SEED));
+
+        /*
+         * Then the individuals should be cloned with the pip signals of parents
+         */
+        final Population pop = result.getPopulations().get(0);
+        assertThat(pop.getLocations().length, equalTo(4));
+        assertThat(pop.getResources().getNumCols(), equalTo(4));
+        assertThat(pop.getEipSignals().get(0).getNumCols(), equalTo(4));
+        assertThat(pop.getPipSignals().get(0), matrixCloseTo(of(new double[][]{
+                {0, 0, 0, 0},
+                {0, 0, 0, 0},
+                {1, 1, 1, 1},
+                {1, 1, 1, 1}
+        }), 0));
+    }
+}
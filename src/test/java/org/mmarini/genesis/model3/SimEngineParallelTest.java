@@ -0,0 +1,349 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static java.lang.Math.log;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.genesis.model3.Matrix.of;
+import static org.mmarini.genesis.model3.Matrix.ones;
+import static org.mmarini.genesis.model3.MatrixMatchers.matrixCloseTo;
+
+class SimEngineParallelTest {
+
+    static final int NUM_POPULATIONS = 5;
+    static final int NUM_STEPS = 10;
+    static final int WIDTH = 4;
+    static final int HEIGHT = 2;
+    static final int NUM_CELLS = WIDTH * HEIGHT;
+    static final int ENERGY_REF = 1;
+    static final long SEED = 1234L;
+    static final double LENGTH = 2;
+    static final double DT = 0.1;
+    static final double ENV_ORG = 5;
+    static final double BASAL_METABOLIC_RATE = 1;
+    static final double SURVIVING_MASS = 0.5;
+    static final double AREAS_BY_MASS = 1;
+    static final Matrix MASSES = of(1, 0);
+    static final Matrix DIFFUSION = of(1e-3, 1e-3);
+    static final Matrix MIN_LEVELS = of(0.5, 1);
+    static final Matrix LOG_LEVELS = of(log(20), log(2));
+    static final double EPSILON = 1e-2;
+    static final int CHUNK_SIZE = 2;
+    static final Reaction REACTION = Reaction.create(of(1, 0), of(0, 1), of(0.1, 0), of(1, 0));
+
+    /**
+     * Returns the initial status with populations exchanging organic matter on shared cells.
+     * Some individuals have no energy to die in the first step
+     *
+     * @param processes true if the species have photo and reaction processes
+     */
+    static SimStatus createStatus(final boolean processes) {
+        final Random random = new Random(SEED);
+        final List<Population> pops = IntStream.range(0, NUM_POPULATIONS).mapToObj(k -> {
+            final int n = 2 + k;
+            final Matrix rates = of(1e-2 * (k + 1), 0);
+            final Species species = new Species(BASAL_METABOLIC_RATE, SURVIVING_MASS, AREAS_BY_MASS,
+                    processes ? List.of(PhotoReactionProcess.create(ENERGY_REF, 1, 1, 10, REACTION)) : List.of(),
+                    processes ? List.of(ReactionProcess.create(ENERGY_REF, 1, 10, REACTION)) : List.of(),
+                    List.of(new ExchangeResourceGene(MIN_LEVELS, LOG_LEVELS, rates)), List.of());
+            final Matrix resources = Matrix.zeros(2, n).mapiAsDouble((v, i, j) ->
+                    i == 0 ? 1 + 9 * random.nextDouble()
+                            : j == 0 ? 0 : 10);
+            final Matrix signals = Matrix.zeros(2, n).mapiAsDouble((v, i, j) -> random.nextDouble());
+            final Matrix photoTargets = Matrix.zeros(1, n).mapiAsDouble((v, i, j) -> random.nextDouble());
+            final Matrix reactionTargets = Matrix.zeros(1, n).mapiAsDouble((v, i, j) -> random.nextDouble());
+            final int[] locations = IntStream.range(0, n).map(j -> random.nextInt(NUM_CELLS)).toArray();
+            return new Population(resources,
+                    processes ? List.of(photoTargets) : List.of(),
+                    processes ? List.of(reactionTargets) : List.of(),
+                    List.of(signals), List.of(), locations, species);
+        }).collect(Collectors.toList());
+        return new SimStatus(0, of(ENV_ORG, 0).prod(ones(1, NUM_CELLS)), pops);
+    }
+
+    /**
+     * Returns the initial status with populations cloning the individuals
+     */
+    static SimStatus createCloningStatus() {
+        final SimStatus status = createStatus(false);
+        final Random random = new Random(SEED);
+        final CloneGene gene = CloneGene.create(0.1, 10, 0.2, 20,
+                0.1, 1, 0.1, 1,
+                ENERGY_REF, 0.1, 0.2, 0.5, 0.1);
+        final List<Population> pops = status.getPopulations().stream().map(pop -> {
+            final Species species = new Species(0, SURVIVING_MASS, AREAS_BY_MASS,
+                    List.of(), List.of(), pop.getSpecies().getEipGenes(), List.of(gene));
+            final int n = pop.getLocations().length;
+            final Matrix signals = Matrix.zeros(4, n).mapiAsDouble((v, i, j) -> random.nextDouble());
+            return new Population(pop.getResources(), List.of(), List.of(),
+                    pop.getEipSignals(), List.of(signals), pop.getLocations(), species);
+        }).collect(Collectors.toList());
+        return new SimStatus(0, status.getResources(), pops);
+    }
+
+    /**
+     * Returns the initial status with populations cloning the individuals without changing the environment.
+     * No individual dies so the result depends only on the random streams
+     */
+    static SimStatus createOnlyCloningStatus() {
+        final SimStatus status = createCloningStatus();
+        final List<Population> pops = status.getPopulations().stream().map(pop -> {
+            final Species species = new Species(0, 0, AREAS_BY_MASS,
+                    List.of(), List.of(), List.of(), pop.getSpecies().getPipGenes());
+            final Matrix resources = pop.getResources().copy().assignRowAsDouble(ENERGY_REF, (v, j) -> 10);
+            return new Population(resources, List.of(), List.of(),
+                    List.of(), pop.getPipSignals(), pop.getLocations(), species);
+        }).collect(Collectors.toList());
+        return new SimStatus(0, status.getResources(), pops);
+    }
+
+    /**
+     * Returns the total quantity of a resource in environment and individuals
+     *
+     * @param status   the status
+     * @param resource the resource index
+     */
+    static double totalResource(final SimStatus status, final int resource) {
+        final double env = status.getResources().viewRow(resource).sumCols().get(0, 0);
+        return env + status.getPopulations().stream()
+                .mapToDouble(pop -> pop.getResources().viewRow(resource).sumCols().get(0, 0))
+                .sum();
+    }
+
+    static SimStatus run(final SimEngine engine) {
+        SimStatus status = createStatus(false);
+        final Random random = new Random(SEED);
+        for (int i = 1; i <= NUM_STEPS; i++) {
+            status = engine.next(status, i * DT, random);
+        }
+        return status;
+    }
+
+    static SimStatus runCloning(final SimEngine engine) {
+        return engine.run(createCloningStatus(), DT, NUM_STEPS, SplitRandom.create(SEED));
+    }
+
+    @Test
+    void chunks() {
+        /*
+         * Given a serial engine and a parallel engine splitting the populations in chunks
+         */
+        final SimEngine serial = SimEngine.create(MASSES, Topology3.create(WIDTH, HEIGHT, LENGTH), DIFFUSION, ENERGY_REF);
+        final SimEngine parallel = serial.withPopulationThreads(2).withChunkSize(CHUNK_SIZE);
+        assertThat(parallel.getChunkSize(), equalTo(CHUNK_SIZE));
+        final SimStatus status0 = createStatus(true);
+        final SimStatus status1 = createStatus(true);
+
+        /*
+         * When maintaining and processing the photo and reaction processes
+         */
+        final SimStatus expected = serial.processReactions(serial.processPhotos(serial.maintain(status0, DT), DT), DT);
+        final SimStatus result = parallel.processReactions(parallel.processPhotos(parallel.maintain(status1, DT), DT), DT);
+
+        /*
+         * Then the individual resources should be the same
+         */
+        for (int i = 0; i < NUM_POPULATIONS; i++) {
+            assertThat(result.getPopulations().get(i).getResources(),
+                    matrixCloseTo(expected.getPopulations().get(i).getResources(), 0));
+        }
+    }
+
+    @Test
+    void deterministic() {
+        /*
+         * Given a parallel engine
+         */
+        final SimEngine engine = SimEngine.create(MASSES, Topology3.create(WIDTH, HEIGHT, LENGTH), DIFFUSION, ENERGY_REF)
+                .withPopulationThreads(3);
+
+        /*
+         * When running twice the simulation
+         */
+        final SimStatus result1 = run(engine);
+        final SimStatus result2 = run(engine);
+
+        /*
+         * Then the results should be the same
+         */
+        assertThat(result2.getResources(), matrixCloseTo(result1.getResources(), 0));
+        for (int i = 0; i < NUM_POPULATIONS; i++) {
+            assertThat(result2.getPopulations().get(i).getResources(),
+                    matrixCloseTo(result1.getPopulations().get(i).getResources(), 0));
+        }
+    }
+
+    @Test
+    void parallel() {
+        /*
+         * Given a serial engine and a parallel engine
+         */
+        final SimEngine serial = SimEngine.create(MASSES, Topology3.create(WIDTH, HEIGHT, LENGTH), DIFFUSION, ENERGY_REF);
+        final SimEngine parallel = serial.withPopulationThreads(2);
+        assertThat(serial.getPopulationThreads(), equalTo(1));
+        assertThat(parallel.getPopulationThreads(), equalTo(2));
+        assertThat(parallel.withPopulationThreads(2), sameInstance(parallel));
+
+        /*
+         * When running the simulation
+         */
+        final SimStatus expected = run(serial);
+        final SimStatus result = run(parallel);
+
+        /*
+         * Then the parallel result should be close to the serial one
+         * (the exchanges of each chunk read the environment resources at the phase start)
+         */
+        assertThat(result.getPopulations(), hasSize(NUM_POPULATIONS));
+        assertThat(result.getResources(), matrixCloseTo(expected.getResources(), EPSILON));
+        for (int i = 0; i < NUM_POPULATIONS; i++) {
+            final Matrix exp = expected.getPopulations().get(i).getResources();
+            final Matrix res = result.getPopulations().get(i).getResources();
+            assertThat(res.getNumCols(), equalTo(exp.getNumCols()));
+            assertThat(res.getNumCols(), lessThan(i + 2));
+            assertThat(res, matrixCloseTo(exp, EPSILON));
+        }
+        // And the organic matter should be preserved
+        assertThat(totalResource(result, 0),
+                closeTo(totalResource(expected, 0), 1e-9));
+    }
+
+    @Test
+    void scratchBuffers() {
+        /*
+         * Given two parallel engines with different numbers of threads and scratch arenas
+         */
+        final MatrixArena arena2 = MatrixArena.create(Matrix.builder, false);
+        final MatrixArena arena = MatrixArena.create(Matrix.builder, false);
+        final SimEngine engine2 = SimEngine.create(MASSES, Topology3.create(WIDTH, HEIGHT, LENGTH), DIFFUSION, ENERGY_REF)
+                .withPopulationThreads(2)
+                .withScratchArena(arena2);
+        final SimEngine engine = engine2.withPopulationThreads(3)
+                .withScratchArena(arena);
+        engine2.next(createStatus(false), DT, new Random(SEED));
+        final Random random = new Random(SEED);
+        SimStatus status = engine.next(createStatus(false), DT, random);
+        final int allocated = arena.getAllocatedCount();
+
+        /*
+         * When running the following steps
+         */
+        for (int i = 2; i <= NUM_STEPS; i++) {
+            status = engine.next(status, i * DT, random);
+        }
+
+        /*
+         * Then the change buffers of the chunks should be allocated in the arena
+         * and reused across the steps
+         */
+        assertThat(allocated, greaterThan(arena2.getAllocatedCount()));
+        assertThat(arena.getAllocatedCount(), equalTo(allocated));
+    }
+
+    @Test
+    void splitRandomThreads() {
+        /*
+         * Given a serial engine and a parallel engine
+         */
+        final SimEngine serial = SimEngine.create(MASSES, Topology3.create(WIDTH, HEIGHT, LENGTH), DIFFUSION, ENERGY_REF);
+        final SimEngine parallel = serial.withPopulationThreads(3);
+
+        /*
+         * When running the simulation of cloning populations with split random streams of the same seed
+         */
+        final SimStatus expected = serial.run(createOnlyCloningStatus(), DT, NUM_STEPS, SplitRandom.create(SEED));
+        final SimStatus result = parallel.run(createOnlyCloningStatus(), DT, NUM_STEPS, SplitRandom.create(SEED));
+
+        /*
+         * Then the individuals should be cloned
+         */
+        final int initial = createOnlyCloningStatus().getPopulations().stream()
+                .mapToInt(pop -> pop.getLocations().length)
+                .sum();
+        assertThat(expected.getPopulations().stream()
+                .mapToInt(pop -> pop.getLocations().length)
+                .sum(), greaterThan(initial));
+        /*
+         * And the results should be the same for any number of threads
+         */
+        assertThat(result.getResources(), matrixCloseTo(expected.getResources(), 0));
+        for (int i = 0; i < NUM_POPULATIONS; i++) {
+            final Population exp = expected.getPopulations().get(i);
+            final Population res = result.getPopulations().get(i);
+            assertThat(res.getLocations(), equalTo(exp.getLocations()));
+            assertThat(res.getResources(), matrixCloseTo(exp.getResources(), 0));
+            assertThat(res.getPipSignals().get(0), matrixCloseTo(exp.getPipSignals().get(0), 0));
+        }
+    }
+
+    @Test
+    void splitRandom() {
+        /*
+         * Given a parallel engine
+         */
+        final SimEngine engine = SimEngine.create(MASSES, Topology3.create(WIDTH, HEIGHT, LENGTH), DIFFUSION, ENERGY_REF)
+                .withPopulationThreads(3);
+
+        /*
+         * When running twice the simulation of cloning populations with split random streams
+         */
+        final SimStatus result1 = runCloning(engine);
+        final SimStatus result2 = runCloning(engine);
+
+        /*
+         * Then the individuals should be cloned (the first individual of each population has no energy and dies)
+         */
+        final int surviving = createCloningStatus().getPopulations().stream()
+                .mapToInt(pop -> pop.getLocations().length - 1)
+                .sum();
+        assertThat(result1.getPopulations().stream()
+                .mapToInt(pop -> pop.getLocations().length)
+                .sum(), greaterThan(surviving));
+        /*
+         * And the results should be the same
+         */
+        assertThat(result2.getResources(), matrixCloseTo(result1.getResources(), 0));
+        for (int i = 0; i < NUM_POPULATIONS; i++) {
+            final Population pop1 = result1.getPopulations().get(i);
+            final Population pop2 = result2.getPopulations().get(i);
+            assertThat(pop2.getLocations(), equalTo(pop1.getLocations()));
+            assertThat(pop2.getResources(), matrixCloseTo(pop1.getResources(), 0));
+            assertThat(pop2.getPipSignals().get(0), matrixCloseTo(pop1.getPipSignals().get(0), 0));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.mmarini.genesis.model3.Matrix.of;
+import static org.mmarini.genesis.model3.MatrixMatchers.matrixCloseTo;
+
+class SimEngineRunTest {
+
+    static final int WIDTH = 4;
+    static final int HEIGHT = 2;
+    static final int NUM_CELLS = WIDTH * HEIGHT;
+    static final int ENERGY_REF = 1;
+    static final long SEED = 1234L;
+    static final double LENGTH = 2;
+    static final double DT = 0.1;
+    static final int STEPS = 10;
+    static final Matrix MASSES = of(1, 0);
+    static final Matrix DIFFUSION = of(1e-2, 1e-2);
+    static final double BASAL_METABOLIC_RATE = 1;
+
+    static SimStatus createStatus() {
+        final Species species = Species.create(BASAL_METABOLIC_RATE, 0, 2,
+                List.of(), List.of(), List.of(), List.of());
+        final Population population = Population.create(of(new double[][]{
+                {1, 2, 3},
+                {0.5, 2, 10}
+        }), List.of(), List.of(), List.of(), List.of(), new int[]{0, 3, 5}, species);
+        final Matrix resources = Matrix.zeros(2, NUM_CELLS).mapiAsDouble((v, i, j) -> i + j);
+        return SimStatus.create(0, resources, List.of(population));
+    }
+
+    @Test
+    void run() {
+        /*
+         * Given an engine and a status
+         */
+        final SimEngine engine = SimEngine.create(MASSES, Topology3.create(WIDTH, HEIGHT, LENGTH), DIFFUSION, ENERGY_REF);
+        final SimStatus status0 = createStatus();
+        final Matrix resources0 = status0.getResources().copy();
+        final Matrix indResources0 = status0.getPopulations().get(0).getResources().copy();
+        SimStatus expected = createStatus();
+        final Random random = new Random(SEED);
+        for (int i = 0; i < STEPS; i++) {
+            expected = engine.next(expected, expected.getT() + DT, random);
+        }
+
+        /*
+         * When running the steps
+         */
+        final SimStatus result = engine.run(status0, DT, STEPS, new Random(SEED));
+
+        /*
+         * Then the result should be the same of the single steps
+         */
+        assertThat(result.getT(), closeTo(STEPS * DT, 1e-9));
+        assertThat(result.getResources(), matrixCloseTo(expected.getResources(), 0));
+        assertThat(result.getPopulations().get(0).getResources(),
+                matrixCloseTo(expected.getPopulations().get(0).getResources(), 0));
+        // And the start status should not be changed
+        assertThat(status0.getResources(), matrixCloseTo(resources0, 0));
+        assertThat(status0.getPopulations().get(0).getResources(), matrixCloseTo(indResources0, 0));
+    }
+
+    @Test
+    void runUntil() {
+        /*
+         * Given an engine and a status
+         */
+        final SimEngine engine = SimEngine.create(MASSES, Topology3.create(WIDTH, HEIGHT, LENGTH), DIFFUSION, ENERGY_REF);
+        final SimStatus status0 = createStatus();
+
+        /*
+         * When running the steps until the extinction of the individuals
+         */
+        final SimStatus result = engine.run(status0, DT, 1000, new Random(SEED),
+                s -> s.getIndividualCount() == 0);
+
+        /*
+         * Then the result should have no individuals before the maximum number of steps
+         */
+        assertThat(result.getIndividualCount(), equalTo(0));
+        assertThat(result.getT(), lessThan(1000 * DT));
+    }
+}
@@ -64,6 +64,59 @@ class SimStatusTest {
         assertThat(result.getResources(), matrixCloseTo(status.getResources()));
     }
 
+    @Test
+    void copyBuffer() {
+        /*
+         * Given a simulation status with a population
+         * and a buffer status with the same sizes
+         */
+        final Species species = Species.create(0, 0, 0, List.of(), List.of(), List.of(), List.of());
+        final Population pop = Population.create(of(new double[][]{
+                {1, 2},
+                {3, 4}
+        }), List.of(), List.of(), List.of(), List.of(), new int[]{0, 3}, species);
+        final SimStatus status = new SimStatus(0, createQuantities(), List.of(pop));
+        final SimStatus buffer = status.copy();
+        buffer.getResources().muli(0);
+        buffer.getPopulations().get(0).getResources().muli(0);
+
+        /*
+         * When copy with the buffer
+         */
+        final SimStatus result = status.copy(buffer);
+
+        /*
+         * Then should return the status with the resources written in the buffer
+         */
+        assertThat(result.getResources(), sameInstance(buffer.getResources()));
+        assertThat(result.getResources(), matrixCloseTo(status.getResources()));
+        final Population resultPop = result.getPopulations().get(0);
+        assertThat(resultPop.getResources(), sameInstance(buffer.getPopulations().get(0).getResources()));
+        assertThat(resultPop.getResources(), matrixCloseTo(pop.getResources()));
+        // And the locations should be shared
+        assertThat(resultPop.getLocations(), sameInstance(pop.getLocations()));
+    }
+
+    @Test
+    void copyBufferSize() {
+        /*
+         * Given a simulation status and a buffer status with different size
+         */
+        final SimStatus buffer = new SimStatus(0, of(1, 2), List.of());
+
+        /*
+         * When copy with the buffer
+         */
+        final SimStatus result = status.copy(buffer);
+
+        /*
+         * Then should return a new copy
+         */
+        assertThat(result.getResources(), not(sameInstance(buffer.getResources())));
+        assertThat(result.getResources(), not(sameInstance(status.getResources())));
+        assertThat(result.getResources(), matrixCloseTo(status.getResources()));
+    }
+
     private Matrix createQuantities() {
         return of(new double[][]{
                 {1, 2, 3, 4},
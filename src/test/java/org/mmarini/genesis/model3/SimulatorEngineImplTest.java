@@ -0,0 +1,271 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import org.junit.jupiter.api.Test;
+import org.mmarini.Tuple2;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SimulatorEngineImplTest {
+
+    static final long RUN_MILLIS = 500;
+    static final Duration STEP_INTERVAL = Duration.ofMillis(10);
+    static final Duration EVENT_INTERVAL = Duration.ofMillis(50);
+    static final double SPEED = 1;
+
+    static SimulatorEngineImpl<Double, Double> create(AtomicInteger steps) {
+        return SimulatorEngineImpl.create(0.0,
+                        (Double t, Double dt) -> {
+                            steps.incrementAndGet();
+                            return Tuple2.of(t + dt, dt);
+                        },
+                        t -> t)
+                .setEventInterval(EVENT_INTERVAL);
+    }
+
+    @Test
+    void paced() throws InterruptedException {
+        AtomicInteger steps = new AtomicInteger();
+        AtomicInteger events = new AtomicInteger();
+        SimulatorEngineImpl<Double, Double> sim = create(steps)
+                .setStepInterval(STEP_INTERVAL)
+                .setMaxStep(0.1)
+                .setPacing(SimulatorEngine.Pacing.PACED)
+                .setOnEvent(t -> events.incrementAndGet());
+        sim.setSpeed(SPEED);
+        sim.start().blockingGet();
+        Thread.sleep(RUN_MILLIS);
+        double t = sim.stop().blockingGet();
+
+        // about 50 steps of 10 ms, the greedy cycle would compute millions of steps
+        assertThat(steps.get(), allOf(greaterThan(10), lessThan(200)));
+        assertThat(t, closeTo(RUN_MILLIS * 1e-3 * SPEED, 0.25));
+        assertThat(events.get(), greaterThan(2));
+    }
+
+    @Test
+    void pacedSpeedUp() throws InterruptedException {
+        SimulatorEngineImpl<Double, Double> sim = create(new AtomicInteger())
+                .setStepInterval(STEP_INTERVAL)
+                .setMaxStepInterval(STEP_INTERVAL.multipliedBy(2))
+                .setPacing(SimulatorEngine.Pacing.PACED);
+        sim.setSpeed(SPEED);
+        sim.start().blockingGet();
+        double t0 = sim.setSpeed(100 * SPEED).blockingGet();
+        Thread.sleep(RUN_MILLIS);
+        double t = sim.stop().blockingGet();
+
+        // the maximum step follows the speed so the steps keep up with the faster speed
+        assertThat(t - t0, closeTo(RUN_MILLIS * 1e-3 * 100 * SPEED, 12.5));
+    }
+
+    @Test
+    void pacedRequest() {
+        SimulatorEngineImpl<Double, Double> sim = create(new AtomicInteger())
+                .setStepInterval(Duration.ofSeconds(10))
+                .setPacing(SimulatorEngine.Pacing.PACED);
+        sim.setSpeed(SPEED);
+        sim.start().blockingGet();
+        // the parked cycle wakes up to process the requests
+        double t = sim.pushSeed(100.0).timeout(1, TimeUnit.SECONDS).blockingGet();
+        sim.stop().timeout(1, TimeUnit.SECONDS).blockingGet();
+
+        assertThat(t, equalTo(100.0));
+    }
+
+    @Test
+    void slowSubscription() throws InterruptedException {
+        /*
+         * Given a paced simulator with a slow subscription and a latest subscription
+         */
+        AtomicInteger steps = new AtomicInteger();
+        AtomicInteger slowEvents = new AtomicInteger();
+        AtomicInteger latestEvents = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        SimulatorEngineImpl<Double, Double> sim = create(steps)
+                .setStepInterval(STEP_INTERVAL)
+                .setPacing(SimulatorEngine.Pacing.PACED);
+        sim.subscribe(EventRing.Policy.every(), executor, t -> {
+            slowEvents.incrementAndGet();
+            try {
+                Thread.sleep(RUN_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        sim.subscribe(EventRing.Policy.latest(), executor, t -> latestEvents.incrementAndGet());
+        sim.setSpeed(SPEED);
+
+        /*
+         * When running the simulation
+         */
+        sim.start().blockingGet();
+        Thread.sleep(RUN_MILLIS);
+        double t = sim.stop().blockingGet();
+        int slow = slowEvents.get();
+        executor.shutdownNow();
+
+        /*
+         * Then the simulation should stay on schedule
+         */
+        assertThat(t, closeTo(RUN_MILLIS * 1e-3 * SPEED, 0.25));
+        assertThat(slow, lessThanOrEqualTo(2));
+        assertThat(latestEvents.get(), greaterThan(2));
+    }
+
+    @Test
+    void flowables() throws InterruptedException {
+        /*
+         * Given a paced simulator with event and speed flows observed on other schedulers
+         */
+        SimulatorEngineImpl<Double, Double> sim = create(new AtomicInteger())
+                .setStepInterval(STEP_INTERVAL)
+                .setPacing(SimulatorEngine.Pacing.PACED);
+        TestSubscriber<Double> events = sim.getEventFlowable(Backpressure.latest(), Schedulers.single()).test();
+        TestSubscriber<Double> speeds = sim.getSpeedFlowable(Backpressure.sample(EVENT_INTERVAL), Schedulers.computation()).test();
+        sim.setSpeed(SPEED);
+
+        /*
+         * When running the simulation
+         */
+        sim.start().blockingGet();
+        Thread.sleep(RUN_MILLIS);
+        sim.stop().blockingGet();
+        events.cancel();
+        speeds.cancel();
+
+        /*
+         * Then the flows should emit the events and the speeds
+         */
+        events.assertNoErrors();
+        speeds.assertNoErrors();
+        assertThat(events.values().size(), greaterThan(2));
+        assertThat(speeds.values().size(), greaterThan(2));
+        assertThat(speeds.values().get(speeds.values().size() - 1), closeTo(SPEED, 0.5));
+    }
+
+    @Test
+    void coalesce() {
+        /*
+         * Given an active simulator whose cycle is not running
+         */
+        List<Runnable> tasks = new ArrayList<>();
+        AtomicInteger keyed = new AtomicInteger();
+        SimulatorEngineImpl<Double, Double> sim = new SimulatorEngineImpl<>(Schedulers.from(tasks::add).createWorker(),
+                0.0, (t, dt) -> Tuple2.of(t + dt, dt), t -> t);
+        sim.start();
+        sim.request(t -> t).blockingGet();
+
+        /*
+         * When queueing a burst of requests
+         */
+        List<Double> results = new ArrayList<>();
+        sim.setSpeed(2).subscribe(result -> results.add(result));
+        sim.request(t -> t + 1).subscribe(result -> results.add(result));
+        sim.pushSeed(10.0).subscribe(result -> results.add(result));
+        sim.request("key", t -> {
+            keyed.incrementAndGet();
+            return t;
+        }).subscribe(result -> results.add(result));
+        sim.request(t -> t * 2).subscribe(result -> results.add(result));
+        sim.pushSeed(20.0).subscribe(result -> results.add(result));
+        sim.request("key", t -> {
+            keyed.incrementAndGet();
+            return t + 1;
+        }).subscribe(result -> results.add(result));
+        sim.setSpeed(3).subscribe(result -> results.add(result));
+        assertThat(results, empty());
+        sim.deque();
+
+        /*
+         * Then only the newest request of each key should be applied,
+         * the applied requests should complete with the seed after their transitions
+         * and the superseded requests with the seed of the newest request with the same key
+         */
+        assertThat(keyed.get(), equalTo(1));
+        assertThat(results, contains(21.0, 1.0, 20.0, 21.0, 2.0, 20.0, 21.0, 21.0));
+    }
+
+    @Test
+    void superseded() {
+        /*
+         * Given an active simulator whose cycle is not running
+         */
+        List<Runnable> tasks = new ArrayList<>();
+        SimulatorEngineImpl<Double, Double> sim = new SimulatorEngineImpl<>(Schedulers.from(tasks::add).createWorker(),
+                0.0, (t, dt) -> Tuple2.of(t + dt, dt), t -> t);
+        sim.start();
+        sim.request(t -> t).blockingGet();
+
+        /*
+         * When queueing a keyed request superseded by a newer one with the same key
+         */
+        List<Double> superseded = new ArrayList<>();
+        List<Double> newest = new ArrayList<>();
+        sim.request("key", t -> t + 100).subscribe(result -> superseded.add(result));
+        sim.request(t -> t + 1);
+        sim.request("key", t -> t * 10).subscribe(result -> newest.add(result));
+        sim.deque();
+
+        /*
+         * Then the superseded transition should not be applied
+         * and the superseded caller should observe the seed of the newest request
+         */
+        assertThat(newest, contains(10.0));
+        assertThat(superseded, contains(10.0));
+    }
+
+    @Test
+    void invalidIntervals() {
+        SimulatorEngineImpl<Double, Double> sim = create(new AtomicInteger());
+
+        // a non-positive interval would busy-spin the paced cycle
+        assertThrows(IllegalArgumentException.class, () -> sim.setEventInterval(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> sim.setEventInterval(Duration.ofMillis(-1)));
+        assertThrows(IllegalArgumentException.class, () -> sim.setStepInterval(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> sim.setStepInterval(Duration.ofMillis(-1)));
+        assertThrows(IllegalArgumentException.class, () -> sim.setMaxStepInterval(Duration.ZERO));
+        assertThrows(IllegalArgumentException.class, () -> sim.setMaxStep(0));
+        assertThrows(IllegalArgumentException.class, () -> sim.setMaxStep(-1));
+    }
+}
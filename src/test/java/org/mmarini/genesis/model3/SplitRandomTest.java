@@ -0,0 +1,126 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.stream.DoubleStream;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class SplitRandomTest {
+
+    static final long SEED = 1234L;
+    static final int SIZE = 10000;
+
+    static double[] doubles(Random random) {
+        return DoubleStream.generate(random::nextDouble).limit(SIZE).toArray();
+    }
+
+    @Test
+    void create() {
+        /*
+         * Given two generators with the same seed
+         */
+        final SplitRandom random1 = SplitRandom.create(SEED);
+        final SplitRandom random2 = SplitRandom.create(SEED);
+
+        /*
+         * Then they should generate the same sequences
+         */
+        assertThat(doubles(random2), equalTo(doubles(random1)));
+        assertThat(random2.nextGaussian(), equalTo(random1.nextGaussian()));
+        assertThat(random2.nextInt(10), equalTo(random1.nextInt(10)));
+        assertThat(doubles(SplitRandom.create(SEED + 1)), not(equalTo(doubles(SplitRandom.create(SEED)))));
+    }
+
+    @Test
+    void nextGaussian() {
+        final SplitRandom random = SplitRandom.create(SEED);
+        final double[] values = DoubleStream.generate(random::nextGaussian).limit(SIZE).toArray();
+        final double mean = DoubleStream.of(values).average().orElseThrow();
+        final double var = DoubleStream.of(values).map(v -> (v - mean) * (v - mean)).average().orElseThrow();
+
+        assertThat(mean, closeTo(0, 0.05));
+        assertThat(var, closeTo(1, 0.05));
+    }
+
+    @Test
+    void setSeed() {
+        /*
+         * Given a generator reseeded after generating values
+         */
+        final SplitRandom random = SplitRandom.create(SEED + 1);
+        random.nextGaussian();
+        random.setSeed(SEED);
+
+        /*
+         * Then it should generate the sequences of a generator created with the seed
+         */
+        final SplitRandom expected = SplitRandom.create(SEED);
+        assertThat(random.nextGaussian(), equalTo(expected.nextGaussian()));
+        assertThat(doubles(random), equalTo(doubles(expected)));
+    }
+
+    @Test
+    void split() {
+        /*
+         * Given two generators with the same seed
+         */
+        final SplitRandom random1 = SplitRandom.create(SEED);
+        final SplitRandom random2 = SplitRandom.create(SEED);
+
+        /*
+         * When splitting the substreams in the same order
+         */
+        final Random stream11 = random1.split();
+        final Random stream12 = random1.split();
+        final Random stream21 = SplitRandom.split(random2);
+        final Random stream22 = SplitRandom.split(random2);
+
+        /*
+         * Then the substreams should be independent and reproducible
+         */
+        final double[] values12 = doubles(stream12);
+        final double[] values11 = doubles(stream11);
+        assertThat(doubles(stream21), equalTo(values11));
+        assertThat(doubles(stream22), equalTo(values12));
+        assertThat(values12, not(equalTo(values11)));
+    }
+
+    @Test
+    void splitShared() {
+        final Random random = new Random(SEED);
+
+        assertThat(SplitRandom.split(random), sameInstance(random));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mmarini.genesis.model3.Matrix.of;
+
+class StatusSnapshotTest {
+
+    static final int NUM_CELLS = 8;
+
+    static Population createPopulation(double[][] resources, int[] locations) {
+        final Species species = Species.create(1, 0, 2,
+                List.of(), List.of(), List.of(), List.of());
+        return Population.create(of(resources), List.of(), List.of(), List.of(), List.of(), locations, species);
+    }
+
+    @Test
+    void create() {
+        /*
+         * Given two populations sharing a cell
+         */
+        final Population pop1 = createPopulation(new double[][]{
+                {1, 2, 3},
+                {0.5, 2, 10}
+        }, new int[]{0, 3, 5});
+        final Population pop2 = createPopulation(new double[][]{
+                {4, 5},
+                {1, 1}
+        }, new int[]{3, 7});
+        final SimStatus status = SimStatus.create(2.5, Matrix.zeros(2, NUM_CELLS), List.of(pop1, pop2));
+
+        /*
+         * When creating the snapshot of second resource
+         */
+        final StatusSnapshot result = StatusSnapshot.create(status, 1);
+
+        /*
+         * Then the quantities should be aggregated by cell
+         */
+        assertThat(result.getT(), equalTo(2.5));
+        assertThat(result.getNoCells(), equalTo(NUM_CELLS));
+        assertThat(result.getIndividualCount(), equalTo(5));
+        assertThat(result.getValue(0), equalTo(0.5));
+        assertThat(result.getValue(3), equalTo(3.0));
+        assertThat(result.getValue(5), equalTo(10.0));
+        assertThat(result.getValue(7), equalTo(1.0));
+        assertThat(result.getCount(3), equalTo(2));
+        assertThat(result.isOccupied(1), equalTo(false));
+        assertThat(result.isOccupied(7), equalTo(true));
+        assertThat(result.getMinimum(), equalTo(0.5));
+        assertThat(result.getMaximum(), equalTo(10.0));
+
+        /*
+         * And should not change with the status
+         */
+        pop1.getResources().set(1, 0, 100);
+        assertThat(result.getValue(0), equalTo(0.5));
+    }
+
+    @Test
+    void createEmpty() {
+        final Population pop = createPopulation(new double[][]{{}, {}}, new int[0]);
+        final SimStatus status = SimStatus.create(0, Matrix.zeros(2, NUM_CELLS), List.of(pop));
+
+        final StatusSnapshot result = StatusSnapshot.create(status, 0);
+
+        assertThat(result.getIndividualCount(), equalTo(0));
+        assertThat(result.isOccupied(0), equalTo(false));
+        assertThat(result.getMinimum(), equalTo(0.0));
+        assertThat(result.getMaximum(), equalTo(0.0));
+    }
+}
@@ -36,7 +36,9 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -163,6 +165,29 @@ class Topology3Test {
      *     x---x---x
      * </pre>
      */
+    @Test
+    void createCellOrder() {
+        /*
+         * Given a grid of 4 x 4 cells
+         * When creating the cell order
+         */
+        final int[] result = Topology3.createCellOrder(4, 4);
+
+        /*
+         * Then the cells should be in Z-order of row and column
+         */
+        assertThat(result.length, equalTo(16));
+        assertThat(result[0], equalTo(0));
+        assertThat(result[1], equalTo(1));
+        assertThat(result[2], equalTo(4));
+        assertThat(result[3], equalTo(5));
+        assertThat(result[4], equalTo(2));
+        assertThat(result[5], equalTo(3));
+        assertThat(result[8], equalTo(8));
+        assertThat(result[15], equalTo(15));
+        assertThat(Arrays.stream(result).sorted().toArray(), equalTo(IntStream.range(0, 16).toArray()));
+    }
+
     @Test
     void getAdjacents() {
         Topology3 top = Topology3.create(4, 4, 2);
@@ -0,0 +1,68 @@
+/*
+ *
+ * Copyright (c) 2021 Marco Marini, marco.marini@mmarini.org
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ *
+ *    END OF TERMS AND CONDITIONS
+ *
+ */
+
+package org.mmarini.genesis.model3;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+class WorkerPoolsTest {
+
+    @Test
+    void get() {
+        assertThat(WorkerPools.get(2), sameInstance(WorkerPools.get(2)));
+        assertThat(WorkerPools.get(2).getParallelism(), equalTo(2));
+        assertThat(WorkerPools.get(3), not(sameInstance(WorkerPools.get(2))));
+    }
+
+    @Test
+    void sharedByEngines() {
+        /*
+         * Given an engine
+         */
+        final SimEngine engine = SimEngine.create(SimEngineRunTest.MASSES, Topology3.create(2, 2, 1),
+                SimEngineRunTest.DIFFUSION, SimEngineRunTest.ENERGY_REF);
+
+        /*
+         * When chaining the builders changing the number of threads
+         */
+        final SimEngine result = engine.withPopulationThreads(2)
+                .withChunkSize(4)
+                .withPopulationThreads(1)
+                .withPopulationThreads(2);
+
+        /*
+         * Then the engines should share the pool of threads
+         */
+        assertThat(result.getPopulationThreads(), equalTo(2));
+        assertThat(result.getPopulationPool(), sameInstance(engine.withPopulationThreads(2).getPopulationPool()));
+    }
+}
@@ -34,6 +34,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.mmarini.genesis.model3.ExplicitDiffusion;
+import org.mmarini.genesis.model3.ImplicitDiffusion;
+import org.mmarini.genesis.model3.Matrix;
+import org.mmarini.genesis.model3.Topology3;
 
 import java.awt.*;
 import java.io.IOException;
@@ -42,6 +46,7 @@ import java.util.stream.Stream;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.isA;
 import static org.hamcrest.Matchers.matchesPattern;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mmarini.genesis.model3.MatrixMatchers.matrixCloseTo;
@@ -214,6 +219,28 @@ class EnvironTest {
                         "    B: 0.2",
                         "    A: 0.1"
                 ), "/height must be an even integer \\(3\\)"
+        ), Arguments.of(text(
+                        "#14",
+                        "  width: 4",
+                        "  height: 8",
+                        "  length: 2",
+                        "  resources:",
+                        "    A: 1.0",
+                        "  diffusion:",
+                        "    A: 0.1",
+                        "  diffusionMethod: euler"
+                ), "/diffusionMethod must match a value in \\[explicit, backwardEuler, crankNicolson\\] \\(euler\\)"
+        ), Arguments.of(text(
+                        "#15",
+                        "  width: 4",
+                        "  height: 8",
+                        "  length: 2",
+                        "  resources:",
+                        "    A: 1.0",
+                        "  diffusion:",
+                        "    A: 0.1",
+                        "  diffusionTolerance: 0"
+                ), "/diffusionTolerance must be > 0.0 \\(0.0\\)"
         ));
     }
 
@@ -243,6 +270,32 @@ class EnvironTest {
         assertThat(Parsers.dimension(root), equalTo(new Dimension(4, 8)));
     }
 
+    @Test
+    void validateDiffusionMethod() throws IOException {
+        JsonNode root = fromText(text(
+                "---",
+                "width: 4",
+                "height: 8",
+                "length: 2",
+                "resources:",
+                "  A: 1.0",
+                "diffusion:",
+                "  B: 0.2",
+                "  A: 0.1",
+                "diffusionMethod: crankNicolson",
+                "diffusionTolerance: 1e-6",
+                "diffusionMaxIterations: 20"
+        ));
+        SchemaValidators.environ().apply(root())
+                .andThen(CrossValidators.environ(KEYS).apply(root()))
+                .accept(root);
+
+        Topology3 topology = Topology3.create(4, 8, 2);
+        Matrix diffusion = Parsers.resources(root.path("diffusion"), KEYS);
+        assertThat(Parsers.diffusionSolver(root, topology, diffusion), isA(ImplicitDiffusion.class));
+        assertThat(Parsers.diffusionSolver(fromText("width: 4"), topology, diffusion), isA(ExplicitDiffusion.class));
+    }
+
     @ParameterizedTest
     @MethodSource("argsForError")
     void validateErrors(String text, String expectedPattern) {
@@ -72,7 +72,7 @@ class PopulationTest {
     static final double AREA_BY_MASS = 1.4;
     static final EIPGene EIP_GENE = new EIPGene() {
         @Override
-        public Population execute(Population population, Matrix signals, double dt, Matrix envResources, Matrix areas, Matrix masses) {
+        public Population execute(Population population, Matrix signals, double dt, Matrix envResources, Matrix envChanges, Matrix areas, Matrix masses) {
             return null;
         }
 